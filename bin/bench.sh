@@ -0,0 +1,6 @@
+# JMH microbenchmarks (src/bench/java); arguments are passed to JMH, e.g.
+#   bin/bench.sh ItemsetBenchmarks -f 1 -wi 3 -i 5 -p arrayTree=true
+#   bin/bench.sh -l
+# JMH's annotation processor can't recompile incrementally, hence the clean.
+mvn -q -Pbench clean test-compile dependency:copy-dependencies -DoutputDirectory=target/bench/lib || exit 1
+java -cp "src/main/resources/:target/bench/test-classes:target/bench/classes:target/bench/lib/*" org.openjdk.jmh.Main "$@"
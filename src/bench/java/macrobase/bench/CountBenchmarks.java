@@ -0,0 +1,155 @@
+package macrobase.bench;
+
+import macrobase.analysis.summary.count.DirectCountWithThreshold;
+import macrobase.analysis.summary.count.ExactCount;
+import macrobase.analysis.summary.count.SpaceSaving;
+import macrobase.datamodel.DatumBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class CountBenchmarks {
+    private static final int STREAM_LENGTH = 1 << 20;
+    private static final int NUM_ATTRIBUTES = 4;
+    private static final int DECAY_PERIOD = 10000;
+
+    @State(Scope.Benchmark)
+    public static class Items {
+        @Param({"10000", "1000000"})
+        public int cardinality;
+
+        int[] items;
+        int next;
+
+        @Setup
+        public void setupItems() {
+            items = SyntheticData.items(SyntheticData.DEFAULT_SEED, STREAM_LENGTH, NUM_ATTRIBUTES, cardinality);
+        }
+
+        int nextItem() {
+            int ret = items[next];
+            next = (next + 1) & (STREAM_LENGTH - 1);
+            return ret;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SpaceSavingState extends Items {
+        @Param({"100", "1000"})
+        public int maxSize;
+
+        SpaceSaving spaceSaving;
+
+        @Setup(Level.Iteration)
+        public void setupCounter() {
+            spaceSaving = new SpaceSaving(maxSize);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void spaceSavingObserve(SpaceSavingState state) {
+        state.spaceSaving.observe(state.nextItem(), 1);
+    }
+
+    // as in the streaming summarizer, where counts are decayed every period
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void spaceSavingObserveDecaying(SpaceSavingState state) {
+        if(state.next % DECAY_PERIOD == 0) {
+            state.spaceSaving.multiplyAllCounts(.99);
+        }
+        state.spaceSaving.observe(state.nextItem(), 1);
+    }
+
+    private static final int OBSERVE_BATCH = 1024;
+
+    @State(Scope.Benchmark)
+    public static class SpaceSavingBatchState extends SpaceSavingState {
+        int[] batch = new int[OBSERVE_BATCH];
+        double[] weights = new double[OBSERVE_BATCH];
+
+        @Setup
+        public void setupWeights() {
+            Arrays.fill(weights, 1);
+        }
+    }
+
+    // per item: OperationsPerInvocation
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(OBSERVE_BATCH)
+    public void spaceSavingObserveBatch(SpaceSavingBatchState state) {
+        for(int i = 0; i < OBSERVE_BATCH; ++i) {
+            state.batch[i] = state.nextItem();
+        }
+        state.spaceSaving.observe(state.batch, state.weights);
+    }
+
+    // a counter that has already seen the whole stream, decayed repeatedly
+    @State(Scope.Benchmark)
+    public static class DirectCountState extends Items {
+        @Param({".001"})
+        public double threshold;
+
+        DirectCountWithThreshold counter;
+
+        @Setup(Level.Iteration)
+        public void setupCounter() {
+            counter = new DirectCountWithThreshold(threshold);
+            for(int item : items) {
+                counter.observe(item, 1);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void directCountMultiplyAllCounts(DirectCountState state) {
+        state.counter.multiplyAllCounts(.99);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void directCountObserve(DirectCountState state) {
+        state.counter.observe(state.nextItem(), 1);
+    }
+
+    @State(Scope.Benchmark)
+    public static class BatchState {
+        @Param({"100000"})
+        public int numRows;
+
+        @Param({"10000", "1000000"})
+        public int cardinality;
+
+        DatumBatch batch;
+
+        @Setup
+        public void setupBatch() {
+            batch = SyntheticData.batch(SyntheticData.DEFAULT_SEED, numRows, NUM_ATTRIBUTES, cardinality, 1);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ExactCount exactCountBatch(BatchState state) {
+        return new ExactCount().count(state.batch);
+    }
+}
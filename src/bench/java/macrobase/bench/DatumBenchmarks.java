@@ -0,0 +1,74 @@
+package macrobase.bench;
+
+import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building numRows rows as a List<Datum> versus a presized DatumBatch.
+ * Nothing built is garbage, so with -prof gc, gc.alloc.rate.norm is the
+ * footprint of each representation (~150 vs 16 bytes/row for two
+ * attributes and one metric). 10M rows of Datums need about 1.5GB live,
+ * so run with e.g. -jvmArgs -Xmx4g.
+ */
+public class DatumBenchmarks {
+    private static final int NUM_ATTRIBUTES = 2;
+    private static final int NUM_METRICS = 1;
+    private static final int CARDINALITY = 100000;
+
+    @State(Scope.Benchmark)
+    public static class RowsState {
+        @Param({"1000000", "10000000"})
+        public int numRows;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Datum> buildDatumList(RowsState state) {
+        Random random = new Random(SyntheticData.DEFAULT_SEED);
+        List<Datum> ret = new ArrayList<>(state.numRows);
+        for(int r = 0; r < state.numRows; ++r) {
+            List<Integer> attributes = new ArrayList<>(NUM_ATTRIBUTES);
+            for(int i = 0; i < NUM_ATTRIBUTES; ++i) {
+                attributes.add(random.nextInt(CARDINALITY));
+            }
+            ArrayRealVector metrics = new ArrayRealVector(NUM_METRICS);
+            for(int i = 0; i < NUM_METRICS; ++i) {
+                metrics.setEntry(i, random.nextGaussian());
+            }
+            ret.add(new Datum(attributes, metrics));
+        }
+        return ret;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public DatumBatch buildDatumBatch(RowsState state) {
+        Random random = new Random(SyntheticData.DEFAULT_SEED);
+        DatumBatch ret = new DatumBatch(NUM_ATTRIBUTES, NUM_METRICS, state.numRows);
+        for(int r = 0; r < state.numRows; ++r) {
+            int row = ret.addRow();
+            for(int i = 0; i < NUM_ATTRIBUTES; ++i) {
+                ret.setAttribute(row, i, random.nextInt(CARDINALITY));
+            }
+            for(int i = 0; i < NUM_METRICS; ++i) {
+                ret.setMetric(row, i, random.nextGaussian());
+            }
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,88 @@
+package macrobase.bench;
+
+import macrobase.ingest.DatumEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Encoding a mostly-seen column, as in a long load: after setup, nearly
+ * every lookup hits an existing id. getIntegerEncodingInsert is the other
+ * extreme, a column whose every value is new (e.g. a fresh userid column).
+ * Run with -t to vary the number of concurrent loaders sharing the encoder.
+ */
+public class EncoderBenchmarks {
+    private static final int STREAM_LENGTH = 1 << 20;
+
+    @State(Scope.Benchmark)
+    public static class EncoderState {
+        @Param({"50", "1000000"})
+        public int cardinality;
+
+        String[] values;
+        DatumEncoder encoder;
+
+        @Setup
+        public void setup() {
+            values = SyntheticData.values(SyntheticData.DEFAULT_SEED, STREAM_LENGTH, "v", cardinality);
+            encoder = new DatumEncoder();
+            encoder.recordAttributeName(0, "column");
+            for(String value : values) {
+                encoder.getIntegerEncoding(0, value);
+            }
+        }
+    }
+
+    // each thread walks the stream from its own position
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int getIntegerEncoding(EncoderState state, Cursor cursor) {
+        int ret = state.encoder.getIntegerEncoding(0, state.values[cursor.next]);
+        cursor.next = (cursor.next + 1) & (STREAM_LENGTH - 1);
+        return ret;
+    }
+
+    // a fresh encoder every iteration
+    @State(Scope.Benchmark)
+    public static class FreshEncoderState {
+        DatumEncoder encoder;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            encoder = new DatumEncoder();
+            encoder.recordAttributeName(0, "column");
+        }
+    }
+
+    // values no other thread (or earlier call) has encoded
+    @State(Scope.Thread)
+    public static class NewValues {
+        private static final AtomicInteger nextThread = new AtomicInteger();
+
+        final String prefix = "t" + nextThread.getAndIncrement() + "-";
+        int next;
+    }
+
+    // includes building each value string, as reading it from a ResultSet would
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int getIntegerEncodingInsert(FreshEncoderState state, NewValues values) {
+        return state.encoder.getIntegerEncoding(0, values.prefix + values.next++);
+    }
+}
@@ -0,0 +1,102 @@
+package macrobase.bench;
+
+import macrobase.analysis.summary.itemset.Apriori;
+import macrobase.analysis.summary.itemset.FPGrowth;
+import macrobase.analysis.summary.itemset.StreamingFPGrowth;
+import macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class ItemsetBenchmarks {
+    @State(Scope.Benchmark)
+    public static class Transactions {
+        @Param({"100000"})
+        public int numTransactions;
+
+        @Param({"4"})
+        public int numAttributes;
+
+        @Param({"1000"})
+        public int cardinality;
+
+        @Param({".001"})
+        public double support;
+
+        List<Set<Integer>> transactions;
+
+        @Setup
+        public void setup() {
+            transactions = SyntheticData.transactions(SyntheticData.DEFAULT_SEED,
+                                                      numTransactions,
+                                                      numAttributes,
+                                                      cardinality);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FPGrowthState extends Transactions {
+        @Param({"false", "true"})
+        public boolean arrayTree;
+
+        FPGrowth fpGrowth;
+
+        @Setup
+        public void setupFPGrowth() {
+            fpGrowth = new FPGrowth();
+            fpGrowth.setUseArrayTree(arrayTree);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<ItemsetWithCount> fpGrowthGetItemsets(FPGrowthState state) {
+        return state.fpGrowth.getItemsets(state.transactions, state.support);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Set<ItemsetWithCount> aprioriGetItemsets(Transactions state) {
+        return new Apriori().getItemsets(state.transactions, state.support);
+    }
+
+    // a tree built from the first half of the data; the second half is streamed in
+    @State(Scope.Benchmark)
+    public static class StreamingState extends Transactions {
+        StreamingFPGrowth streamingFPGrowth;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setupTree() {
+            streamingFPGrowth = new StreamingFPGrowth(support);
+            streamingFPGrowth.buildTree(transactions.subList(0, numTransactions / 2));
+            next = numTransactions / 2;
+        }
+
+        Set<Integer> nextTransaction() {
+            if(next == transactions.size()) {
+                next = numTransactions / 2;
+            }
+            return transactions.get(next++);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void streamingFPGrowthInsert(StreamingState state) {
+        state.streamingFPGrowth.insertTransactionStreamingFalseNegative(state.nextTransaction());
+    }
+}
@@ -0,0 +1,37 @@
+package macrobase.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The original ArrayList-backed ExponentiallyBiasedAChao, kept as a
+ * baseline: each replacement shifts up to capacity elements.
+ */
+class ListAChao<T> {
+    private final List<T> reservoir = new ArrayList<>();
+    private final int reservoirCapacity;
+    private final double bias;
+    private final Random random = new Random();
+    private double runningCount;
+
+    ListAChao(int capacity, double bias) {
+        this.reservoirCapacity = capacity;
+        this.bias = bias;
+    }
+
+    void insert(T ele) {
+        runningCount += 1;
+
+        if(reservoir.size() < reservoirCapacity) {
+            reservoir.add(ele);
+        } else if(random.nextDouble() < 1 / runningCount) {
+            reservoir.remove(random.nextInt(reservoirCapacity));
+            reservoir.add(ele);
+        }
+    }
+
+    void advancePeriod() {
+        runningCount *= 1 - bias;
+    }
+}
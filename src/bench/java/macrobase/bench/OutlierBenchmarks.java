@@ -0,0 +1,98 @@
+package macrobase.bench;
+
+import macrobase.analysis.outlier.MAD;
+import macrobase.analysis.outlier.MinCovDet;
+import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class OutlierBenchmarks {
+    private static final int NUM_ATTRIBUTES = 2;
+    private static final int CARDINALITY = 100;
+
+    @State(Scope.Benchmark)
+    public static class UnivariateState {
+        @Param({"100000"})
+        public int numRows;
+
+        List<Datum> data;
+        DatumBatch batch;
+
+        @Setup
+        public void setup() {
+            data = SyntheticData.datums(SyntheticData.DEFAULT_SEED, numRows, NUM_ATTRIBUTES, CARDINALITY, 1);
+            batch = DatumBatch.fromDatums(data);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MAD madTrain(UnivariateState state) {
+        MAD mad = new MAD();
+        mad.train(state.data);
+        return mad;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MAD madTrainColumnar(UnivariateState state) {
+        MAD mad = new MAD();
+        mad.train(state.batch);
+        return mad;
+    }
+
+    @State(Scope.Benchmark)
+    public static class MultivariateState {
+        @Param({"10000"})
+        public int numRows;
+
+        @Param({"2", "8"})
+        public int numMetrics;
+
+        List<Datum> data;
+        MinCovDet trained;
+        int next;
+
+        @Setup
+        public void setup() {
+            data = SyntheticData.datums(SyntheticData.DEFAULT_SEED, numRows, NUM_ATTRIBUTES, CARDINALITY, numMetrics);
+            trained = new MinCovDet(numMetrics);
+            trained.train(data);
+        }
+
+        Datum nextDatum() {
+            if(next == data.size()) {
+                next = 0;
+            }
+            return data.get(next++);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MinCovDet minCovDetTrain(MultivariateState state) {
+        MinCovDet mcd = new MinCovDet(state.numMetrics);
+        mcd.train(state.data);
+        return mcd;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double minCovDetScore(MultivariateState state) {
+        return state.trained.score(state.nextDatum());
+    }
+}
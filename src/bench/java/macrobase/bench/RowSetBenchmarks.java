@@ -0,0 +1,91 @@
+package macrobase.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Requests to a running server's /api/rows endpoint, for the connection
+ * pool under concurrent load; not run against anything local, so point
+ * it at a server and database and pick the load with -t, e.g.
+ *
+ *   bin/bench.sh RowSetBenchmarks -t 16 -p server=http://localhost:8080 \
+ *       -p pgUrl=postgres -p baseQuery="SELECT * FROM sf_datasets"
+ *
+ * Sample mode reports the latency percentiles; throughput is threads
+ * over mean latency.
+ */
+public class RowSetBenchmarks {
+    private static final int LIMIT = 10;
+
+    @State(Scope.Benchmark)
+    public static class ServerState {
+        @Param({"http://localhost:8080"})
+        public String server;
+
+        @Param({"postgres"})
+        public String pgUrl;
+
+        @Param({"SELECT * FROM sf_datasets"})
+        public String baseQuery;
+
+        URL url;
+        byte[] body;
+
+        @Setup
+        public void setup() throws IOException {
+            url = new URL(server + "/api/rows");
+            body = String.format("{\"pgUrl\": \"%s\", \"baseQuery\": \"%s\", " +
+                                 "\"columnValues\": [], \"limit\": %d, \"offset\": 0}",
+                                 pgUrl, baseQuery.replace("\"", "\\\""), LIMIT)
+                    .getBytes(StandardCharsets.UTF_8);
+            // fail here, not in every sample, if the server isn't there
+            post(url, body);
+        }
+    }
+
+    private static int post(URL url, byte[] body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setDoOutput(true);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body);
+        }
+
+        if(conn.getResponseCode() != 200) {
+            throw new IOException("Request failed: HTTP " + conn.getResponseCode());
+        }
+
+        // drain so the connection can be kept alive
+        int read = 0;
+        byte[] buf = new byte[8192];
+        try (InputStream in = conn.getInputStream()) {
+            int n;
+            while((n = in.read(buf)) >= 0) {
+                read += n;
+            }
+        }
+        return read;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int getRows(ServerState state) throws IOException {
+        return post(state.url, state.body);
+    }
+}
@@ -0,0 +1,129 @@
+package macrobase.bench;
+
+import macrobase.analysis.sample.ExponentiallyBiasedAChao;
+import macrobase.analysis.sample.ExponentiallyBiasedDoubleAChao;
+import macrobase.datamodel.Datum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reservoir inserts once the reservoir is full, comparing the array-backed
+ * samplers to the original ArrayList one (ListAChao). The *Decaying
+ * variants advance a period (bias .5) after every insert, which keeps
+ * about half of all inserts replacing an element: the worst case for the
+ * list's remove-and-shift.
+ */
+public class SampleBenchmarks {
+    private static final int STREAM_LENGTH = 1 << 16;
+
+    @State(Scope.Benchmark)
+    public static class ReservoirState {
+        @Param({"1000", "10000", "100000", "1000000"})
+        public int capacity;
+
+        @Param({".5"})
+        public double bias;
+
+        List<Datum> data;
+        double[] scores;
+        ExponentiallyBiasedAChao<Datum> reservoir;
+        ListAChao<Datum> listReservoir;
+        ExponentiallyBiasedDoubleAChao doubleReservoir;
+        ExponentiallyBiasedDoubleAChao trackedReservoir;
+        ExponentiallyBiasedAChao<Double> boxedReservoir;
+        int next;
+
+        @Setup
+        public void setupData() {
+            data = SyntheticData.datums(SyntheticData.DEFAULT_SEED, STREAM_LENGTH, 2, 100, 1);
+            scores = new double[STREAM_LENGTH];
+            for(int i = 0; i < STREAM_LENGTH; ++i) {
+                scores[i] = data.get(i).getMetrics().getEntry(0);
+            }
+        }
+
+        // start each iteration with full reservoirs
+        @Setup(Level.Iteration)
+        public void setupReservoirs() {
+            reservoir = new ExponentiallyBiasedAChao<>(capacity, bias);
+            listReservoir = new ListAChao<>(capacity, bias);
+            doubleReservoir = new ExponentiallyBiasedDoubleAChao(capacity, bias);
+            trackedReservoir = new ExponentiallyBiasedDoubleAChao(capacity, bias);
+            trackedReservoir.trackPercentile(.01);
+            boxedReservoir = new ExponentiallyBiasedAChao<>(capacity, bias);
+            for(int i = 0; i < capacity; ++i) {
+                int idx = i & (STREAM_LENGTH - 1);
+                reservoir.insert(data.get(idx));
+                listReservoir.insert(data.get(idx));
+                doubleReservoir.insert(scores[idx]);
+                trackedReservoir.insert(scores[idx]);
+                boxedReservoir.insert(scores[idx]);
+            }
+        }
+
+        int nextIndex() {
+            int ret = next;
+            next = (next + 1) & (STREAM_LENGTH - 1);
+            return ret;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void aChaoInsert(ReservoirState state) {
+        state.reservoir.insert(state.data.get(state.nextIndex()));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void aChaoInsertDecaying(ReservoirState state) {
+        state.reservoir.insert(state.data.get(state.nextIndex()));
+        state.reservoir.advancePeriod();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void listAChaoInsertDecaying(ReservoirState state) {
+        state.listReservoir.insert(state.data.get(state.nextIndex()));
+        state.listReservoir.advancePeriod();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void doubleAChaoInsertDecaying(ReservoirState state) {
+        state.doubleReservoir.insert(state.scores[state.nextIndex()]);
+        state.doubleReservoir.advancePeriod();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void boxedDoubleAChaoInsertDecaying(ReservoirState state) {
+        state.boxedReservoir.insert(state.scores[state.nextIndex()]);
+        state.boxedReservoir.advancePeriod();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean percentileOutlierDecaying(ReservoirState state) {
+        double score = state.scores[state.nextIndex()];
+        state.trackedReservoir.insert(score);
+        state.trackedReservoir.advancePeriod();
+        return state.trackedReservoir.isPercentileOutlier(score);
+    }
+}
@@ -0,0 +1,98 @@
+package macrobase.bench;
+
+import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
+import org.apache.commons.math3.linear.ArrayRealVector;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Seeded generators for the benchmark inputs, so that every run (and
+ * every implementation being compared) sees the same data.
+ *
+ * Attribute values are skewed (a few values per column are common and
+ * the rest are rare), which is what gives the itemset miners and heavy
+ * hitter counters something to find. Metrics are standard normal.
+ */
+public class SyntheticData {
+    public static final long DEFAULT_SEED = 0;
+
+    // value in [0, cardinality), with P(value < cardinality * x) = x^(1/3)
+    private static int skewed(Random random, int cardinality) {
+        double u = random.nextDouble();
+        return (int) (cardinality * u * u * u);
+    }
+
+    /**
+     * numAttributes items per transaction; items in different columns
+     * never collide.
+     */
+    public static List<Set<Integer>> transactions(long seed,
+                                                  int numTransactions,
+                                                  int numAttributes,
+                                                  int cardinality) {
+        Random random = new Random(seed);
+        List<Set<Integer>> ret = new ArrayList<>(numTransactions);
+        for(int i = 0; i < numTransactions; ++i) {
+            Set<Integer> txn = new HashSet<>();
+            for(int c = 0; c < numAttributes; ++c) {
+                txn.add(c * cardinality + skewed(random, cardinality));
+            }
+            ret.add(txn);
+        }
+        return ret;
+    }
+
+    // a stream of single items drawn from numAttributes * cardinality ids
+    public static int[] items(long seed, int count, int numAttributes, int cardinality) {
+        Random random = new Random(seed);
+        int[] ret = new int[count];
+        for(int i = 0; i < count; ++i) {
+            ret[i] = random.nextInt(numAttributes) * cardinality + skewed(random, cardinality);
+        }
+        return ret;
+    }
+
+    public static List<Datum> datums(long seed,
+                                     int numRows,
+                                     int numAttributes,
+                                     int cardinality,
+                                     int numMetrics) {
+        Random random = new Random(seed);
+        List<Datum> ret = new ArrayList<>(numRows);
+        for(int i = 0; i < numRows; ++i) {
+            List<Integer> attributes = new ArrayList<>(numAttributes);
+            for(int c = 0; c < numAttributes; ++c) {
+                attributes.add(c * cardinality + skewed(random, cardinality));
+            }
+            double[] metrics = new double[numMetrics];
+            for(int m = 0; m < numMetrics; ++m) {
+                metrics[m] = random.nextGaussian();
+            }
+            ret.add(new Datum(attributes, new ArrayRealVector(metrics, false)));
+        }
+        return ret;
+    }
+
+    public static DatumBatch batch(long seed,
+                                   int numRows,
+                                   int numAttributes,
+                                   int cardinality,
+                                   int numMetrics) {
+        return DatumBatch.fromDatums(datums(seed, numRows, numAttributes, cardinality, numMetrics));
+    }
+
+    // raw column values as they would come out of the loader, e.g. "v17"
+    public static String[] values(long seed, int count, String prefix, int cardinality) {
+        Random random = new Random(seed);
+        String[] ret = new String[count];
+        for(int i = 0; i < count; ++i) {
+            ret[i] = prefix + skewed(random, cardinality);
+        }
+        return ret;
+    }
+}
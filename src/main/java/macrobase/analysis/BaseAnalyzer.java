@@ -1,5 +1,14 @@
 package macrobase.analysis;
 
+import macrobase.analysis.outlier.MAD;
+import macrobase.analysis.outlier.MinCovDet;
+import macrobase.analysis.outlier.OutlierDetector;
+import macrobase.ingest.DatumEncoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.function.Consumer;
+
 abstract public class BaseAnalyzer {
     protected double ZSCORE = 3;
     protected double TARGET_PERCENTILE = 0.01;
@@ -9,6 +18,17 @@ abstract public class BaseAnalyzer {
     protected boolean forceUsePercentile = false;
     protected boolean forceUseZScore = false;
 
+    // if set, encodings are loaded from and saved to this file across runs
+    protected File encoderDictionary = null;
+
+    // train multivariate detectors with FAST-MCD
+    protected boolean useFastMCD = false;
+    // threads used to score batches (and to train, where supported)
+    protected int detectorParallelism = 1;
+
+    // notified as the analysis moves through loading, classification, etc.
+    protected Consumer<String> stageListener = null;
+
     public void forceUsePercentile(boolean force) {
         forceUsePercentile = force;
     }
@@ -32,4 +52,53 @@ abstract public class BaseAnalyzer {
     public void setMinInlierRatio(double minInlierRatio) {
         MIN_INLIER_RATIO = minInlierRatio;
     }
+
+    public void setEncoderDictionary(File encoderDictionary) {
+        this.encoderDictionary = encoderDictionary;
+    }
+
+    public void setUseFastMCD(boolean useFastMCD) {
+        this.useFastMCD = useFastMCD;
+    }
+
+    public void setDetectorParallelism(int detectorParallelism) {
+        this.detectorParallelism = detectorParallelism;
+    }
+
+    public void setStageListener(Consumer<String> stageListener) {
+        this.stageListener = stageListener;
+    }
+
+    protected void enterStage(String stage) {
+        if(stageListener != null) {
+            stageListener.accept(stage);
+        }
+    }
+
+    protected OutlierDetector createDetector(int metricsDimensions) {
+        OutlierDetector detector;
+        if(metricsDimensions == 1) {
+            detector = new MAD();
+        } else {
+            MinCovDet mcd = new MinCovDet(metricsDimensions);
+            mcd.setUseFastMCD(useFastMCD);
+            detector = mcd;
+        }
+
+        detector.setParallelism(detectorParallelism);
+        return detector;
+    }
+
+    protected DatumEncoder createEncoder() throws IOException {
+        if(encoderDictionary == null) {
+            return new DatumEncoder();
+        }
+        return new DatumEncoder(encoderDictionary);
+    }
+
+    protected void saveEncoder(DatumEncoder encoder) throws IOException {
+        if(encoderDictionary != null) {
+            encoder.save(encoderDictionary);
+        }
+    }
 }
@@ -2,19 +2,19 @@ package macrobase.analysis;
 
 import com.google.common.base.Stopwatch;
 
-import macrobase.analysis.outlier.MAD;
-import macrobase.analysis.outlier.MinCovDet;
 import macrobase.analysis.outlier.OutlierDetector;
 import macrobase.analysis.result.AnalysisResult;
 import macrobase.analysis.summary.itemset.FPGrowthEmerging;
 import macrobase.analysis.summary.itemset.result.ItemsetResult;
-import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 import macrobase.ingest.DatumEncoder;
 import macrobase.ingest.SQLLoader;
+import macrobase.ingest.SnapshotCache;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
@@ -22,24 +22,63 @@ import java.util.concurrent.TimeUnit;
 public class BatchAnalyzer extends BaseAnalyzer {
     private static final Logger log = LoggerFactory.getLogger(BatchAnalyzer.class);
 
+    private SnapshotCache snapshotCache;
+
+    private int miningParallelism = 1;
+
+    private boolean useArrayFPTree = false;
+
+    public void setMiningParallelism(int miningParallelism) {
+        this.miningParallelism = miningParallelism;
+    }
+
+    public void setUseArrayFPTree(boolean useArrayFPTree) {
+        this.useArrayFPTree = useArrayFPTree;
+    }
+
+    // if set, query results are loaded from and saved to this cache
+    public void setSnapshotCache(SnapshotCache snapshotCache) {
+        this.snapshotCache = snapshotCache;
+    }
+
     public AnalysisResult analyze(SQLLoader loader,
                                   List<String> attributes,
                                   List<String> lowMetrics,
                                   List<String> highMetrics,
-                                  String baseQuery) throws SQLException {
-        DatumEncoder encoder = new DatumEncoder();
+                                  String baseQuery) throws SQLException, IOException {
+        DatumEncoder encoder;
+        DatumBatch data;
 
         Stopwatch sw = Stopwatch.createUnstarted();
 
         // OUTLIER ANALYSIS
 
+        enterStage("loading");
         log.debug("Starting loading...");
         sw.start();
-        List<Datum> data = loader.getData(encoder,
-                                          attributes,
-                                          lowMetrics,
-                                          highMetrics,
-                                          baseQuery);
+        String cacheKey = null;
+        SnapshotCache.Snapshot snapshot = null;
+        if(snapshotCache != null) {
+            cacheKey = SnapshotCache.key(loader.getDbUrl(), baseQuery, attributes, lowMetrics, highMetrics);
+            snapshot = snapshotCache.get(cacheKey);
+        }
+
+        if(snapshot != null) {
+            log.debug("Loading from snapshot {}", cacheKey);
+            encoder = snapshot.getEncoder();
+            data = snapshot.getBatch();
+        } else {
+            encoder = createEncoder();
+            data = loader.getDataBatch(encoder,
+                                       attributes,
+                                       lowMetrics,
+                                       highMetrics,
+                                       baseQuery);
+            saveEncoder(encoder);
+            if(snapshotCache != null) {
+                snapshotCache.put(cacheKey, encoder, data);
+            }
+        }
         sw.stop();
 
         long loadTime = sw.elapsed(TimeUnit.MILLISECONDS);
@@ -47,17 +86,13 @@ public class BatchAnalyzer extends BaseAnalyzer {
 
         log.debug("...ended loading (time: {}ms)!", loadTime);
 
+        enterStage("classifying");
         log.debug("Starting classification...");
         sw.start();
-        OutlierDetector detector;
         int metricsDimensions = lowMetrics.size() + highMetrics.size();
-        if(metricsDimensions == 1) {
-            detector = new MAD();
-        } else {
-            detector = new MinCovDet(metricsDimensions);
-        }
+        OutlierDetector detector = createDetector(metricsDimensions);
 
-        OutlierDetector.BatchResult or;
+        OutlierDetector.ColumnarBatchResult or;
         if(forceUsePercentile || (!forceUseZScore && TARGET_PERCENTILE > 0)) {
             or = detector.classifyBatchByPercentile(data, TARGET_PERCENTILE);
         } else {
@@ -78,10 +113,13 @@ public class BatchAnalyzer extends BaseAnalyzer {
         final int inlierSize = or.getInliers().size();
         final int outlierSize = or.getOutliers().size();
 
+        enterStage("summarizing");
         log.debug("Starting summarization...");
 
         sw.start();
         FPGrowthEmerging fpg = new FPGrowthEmerging();
+        fpg.setParallelism(miningParallelism);
+        fpg.setUseArrayTree(useArrayFPTree);
         List<ItemsetResult> isr = fpg.getEmergingItemsetsWithMinSupport(or.getInliers(),
                                                                         or.getOutliers(),
                                                                         MIN_SUPPORT,
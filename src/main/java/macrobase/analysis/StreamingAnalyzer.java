@@ -1,13 +1,18 @@
 package macrobase.analysis;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.google.common.base.Stopwatch;
 
-import macrobase.analysis.outlier.MAD;
-import macrobase.analysis.outlier.MinCovDet;
+import macrobase.MacroBase;
+import macrobase.analysis.outlier.IncrementalOutlierDetector;
 import macrobase.analysis.outlier.OutlierDetector;
+import macrobase.analysis.outlier.StreamingMAD;
 import macrobase.analysis.result.AnalysisResult;
 import macrobase.analysis.sample.ExponentiallyBiasedAChao;
+import macrobase.analysis.sample.ExponentiallyBiasedDoubleAChao;
 import macrobase.analysis.periodic.AbstractPeriodicUpdater;
+import macrobase.analysis.periodic.BackgroundRetrainer;
 import macrobase.analysis.periodic.TupleBasedRetrainer;
 import macrobase.analysis.periodic.TupleAnalysisDecayer;
 import macrobase.analysis.periodic.WallClockRetrainer;
@@ -16,14 +21,31 @@ import macrobase.analysis.summary.itemset.ExponentiallyDecayingEmergingItemsets;
 import macrobase.analysis.summary.itemset.result.ItemsetResult;
 import macrobase.datamodel.Datum;
 import macrobase.ingest.DatumEncoder;
+import macrobase.ingest.DatumStream;
 import macrobase.ingest.SQLLoader;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
 
 public class StreamingAnalyzer extends BaseAnalyzer {
     private static final Logger log = LoggerFactory.getLogger(StreamingAnalyzer.class);
@@ -43,6 +65,56 @@ public class StreamingAnalyzer extends BaseAnalyzer {
     private Integer outlierItemSummarySize;
     private Integer inlierItemSummarySize;
 
+    private boolean useStreamingMAD = false;
+    private int scoringThreads = 1;
+    private boolean backgroundRetraining = false;
+    private boolean useSpaceSavingItemSummaries = false;
+    private boolean useInlierSketch = false;
+    private Long seed = null;
+
+    private static final int PIPELINE_CHUNK_SIZE = 1024;
+    private static final int PIPELINE_QUEUE_CHUNKS = 64;
+
+    private static final Meter ingestedTuples = MacroBase.metrics.meter(name(StreamingAnalyzer.class, "ingestedTuples"));
+    private static final Meter scoredTuples = MacroBase.metrics.meter(name(StreamingAnalyzer.class, "scoredTuples"));
+    private static final Meter summarizedTuples = MacroBase.metrics.meter(name(StreamingAnalyzer.class, "summarizedTuples"));
+    // producer found its output queue full
+    private static final Meter scoreQueueStalls = MacroBase.metrics.meter(name(StreamingAnalyzer.class, "scoreQueueStalls"));
+    private static final Meter summaryQueueStalls = MacroBase.metrics.meter(name(StreamingAnalyzer.class, "summaryQueueStalls"));
+    // in chunks, sampled as each chunk is enqueued
+    private static final Histogram scoreQueueDepth = MacroBase.metrics.histogram(name(StreamingAnalyzer.class, "scoreQueueDepth"));
+    private static final Histogram summaryQueueDepth = MacroBase.metrics.histogram(name(StreamingAnalyzer.class, "summaryQueueDepth"));
+
+    // maintain the univariate model incrementally (see StreamingMAD)
+    public void setUseStreamingMAD(boolean useStreamingMAD) {
+        this.useStreamingMAD = useStreamingMAD;
+    }
+
+    // if > 1, score on this many threads in a pipeline (see runPipeline)
+    public void setScoringThreads(int scoringThreads) {
+        this.scoringThreads = scoringThreads;
+    }
+
+    // retrain on a background thread, scoring with the previous model meanwhile
+    public void setBackgroundRetraining(boolean backgroundRetraining) {
+        this.backgroundRetraining = backgroundRetraining;
+    }
+
+    // count single items with SpaceSaving, in inlier/outlierItemSummarySize counters
+    public void setUseSpaceSavingItemSummaries(boolean useSpaceSavingItemSummaries) {
+        this.useSpaceSavingItemSummaries = useSpaceSavingItemSummaries;
+    }
+
+    // summarize inliers in fixed-size Count-Min sketches rather than exactly
+    public void setUseInlierSketch(boolean useInlierSketch) {
+        this.useInlierSketch = useInlierSketch;
+    }
+
+    // seed the input and score reservoirs, so runs are reproducible
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
     public void setModelRefreshPeriod(Integer modelRefreshPeriod) {
         this.modelRefreshPeriod = modelRefreshPeriod;
     }
@@ -91,120 +163,355 @@ public class StreamingAnalyzer extends BaseAnalyzer {
                                               List<String> attributes,
                                               List<String> lowMetrics,
                                               List<String> highMetrics,
-                                              String baseQuery) throws SQLException {
-        DatumEncoder encoder = new DatumEncoder();
+                                              String baseQuery) throws SQLException, IOException {
+        DatumEncoder encoder = createEncoder();
 
         Stopwatch sw = Stopwatch.createUnstarted();
 
         // OUTLIER ANALYSIS
 
+        // tuples are pulled from the cursor one at a time, so this only
+        // measures the time to start the query
         log.debug("Starting loading...");
         sw.start();
-        List<Datum> data = loader.getData(encoder,
-                                          attributes,
-                                          lowMetrics,
-                                          highMetrics,
-                                          baseQuery);
-        sw.stop();
+        AnalysisResult result;
+        try (DatumStream data = loader.getDataStream(encoder,
+                                                     attributes,
+                                                     lowMetrics,
+                                                     highMetrics,
+                                                     baseQuery)) {
+            sw.stop();
 
-        long loadTime = sw.elapsed(TimeUnit.MILLISECONDS);
-        sw.reset();
+            long loadTime = sw.elapsed(TimeUnit.MILLISECONDS);
+            sw.reset();
+
+            log.debug("...started streaming (time: {}ms)!", loadTime);
+
+            //System.console().readLine("waiting to start (press a key)");
+
+            // closing the stream releases its cursor even if analysis fails
+            result = analyzeStream(data, lowMetrics.size() + highMetrics.size(), encoder);
+        }
+        saveEncoder(encoder);
 
-        log.debug("...ended loading (time: {}ms)!", loadTime);
+        //System.console().readLine("Finished! Press any key to continue");
 
-        //System.console().readLine("waiting to start (press a key)");
+        return result;
+    }
 
-        OutlierDetector detector;
-        int metricsDimensions = lowMetrics.size() + highMetrics.size();
-        if(metricsDimensions == 1) {
-            detector = new MAD();
+    public AnalysisResult analyzeStream(Iterator<Datum> data,
+                                        int metricsDimensions,
+                                        DatumEncoder encoder) {
+        Supplier<OutlierDetector> detectorFactory = () -> createDetector(metricsDimensions);
+        AtomicReference<OutlierDetector> detector = new AtomicReference<>();
+        if(useStreamingMAD && metricsDimensions == 1) {
+            detector.set(new StreamingMAD(decayRate));
         } else {
-            detector = new MinCovDet(metricsDimensions);
+            detector.set(detectorFactory.get());
         }
 
-        ExponentiallyBiasedAChao<Datum> inputReservoir =
-                new ExponentiallyBiasedAChao<>(inputReservoirSize, decayRate);
+        ExecutorService retrainExecutor = backgroundRetraining ? Executors.newSingleThreadExecutor() : null;
+        BackgroundRetrainer backgroundRetrainer =
+                retrainExecutor != null ? new BackgroundRetrainer(retrainExecutor) : null;
+        StreamState state = new StreamState(detector, detectorFactory, backgroundRetrainer);
+
+        try {
+            long tupleNo = 0;
+
+            while(data.hasNext()) {
+                if(scoringThreads > 1 && tupleNo > warmupCount) {
+                    runPipeline(data, state, tupleNo);
+                    break;
+                }
 
-        ExponentiallyBiasedAChao<Double> scoreReservoir = null;
+                Datum d = data.next();
+                if(tupleNo == warmupCount) {
+                    state.inputReservoir.insert(d);
+                    detector.get().train(state.inputReservoir.getReservoir());
+                } else if(tupleNo >= warmupCount) {
+                    state.observe(d, tupleNo);
 
-        if(forceUsePercentile) {
-            new ExponentiallyBiasedAChao<>(scoreReservoirSize, decayRate);
+                    // classify, then insert into tree, etc.
+                    OutlierDetector current = detector.get();
+                    state.classify(d, current.score(d), current);
+                } else {
+                    state.inputReservoir.insert(d);
+                }
+
+                tupleNo += 1;
+            }
+        } finally {
+            if(retrainExecutor != null) {
+                retrainExecutor.shutdownNow();
+            }
         }
 
-        ExponentiallyDecayingEmergingItemsets streamingSummarizer =
-                new ExponentiallyDecayingEmergingItemsets(inlierItemSummarySize,
-                                                          outlierItemSummarySize,
-                                                          minSupportOutlier,
-                                                          minRatio,
-                                                          decayRate);
-
-        AbstractPeriodicUpdater analysisUpdater;
-        if(useRealTimePeriod) {
-            analysisUpdater = new WallClockAnalysisDecayer(System.currentTimeMillis(),
-                                                                 summaryPeriod,
-                                                                 inputReservoir,
-                                                                 scoreReservoir,
-                                                                 detector,
-                                                                 streamingSummarizer);
-        } else {
-            analysisUpdater = new TupleAnalysisDecayer(summaryPeriod,
-                                                             inputReservoir,
-                                                             scoreReservoir,
-                                                             detector,
-                                                             streamingSummarizer);
+        List<ItemsetResult> isr = state.streamingSummarizer.getItemsets(encoder);
+
+        return new AnalysisResult(0, 0, 0, 0, 0, isr);
+    }
+
+    /**
+     * Everything downstream of scoring: the reservoirs, the periodic
+     * decay and retraining, and the summarizer. Used from one thread at
+     * a time.
+     */
+    private class StreamState {
+        private final AtomicReference<OutlierDetector> detector;
+        private final ExponentiallyBiasedAChao<Datum> inputReservoir;
+        private final ExponentiallyBiasedDoubleAChao scoreReservoir;
+        private final ExponentiallyDecayingEmergingItemsets streamingSummarizer;
+        private final AbstractPeriodicUpdater analysisUpdater;
+        private final AbstractPeriodicUpdater modelUpdater;
+
+        StreamState(AtomicReference<OutlierDetector> detector,
+                    Supplier<OutlierDetector> detectorFactory,
+                    BackgroundRetrainer backgroundRetrainer) {
+            this.detector = detector;
+
+            inputReservoir = seed != null ?
+                             new ExponentiallyBiasedAChao<>(inputReservoirSize, decayRate, seed) :
+                             new ExponentiallyBiasedAChao<>(inputReservoirSize, decayRate);
+
+            if(forceUsePercentile) {
+                scoreReservoir = seed != null ?
+                                 new ExponentiallyBiasedDoubleAChao(scoreReservoirSize, decayRate, seed) :
+                                 new ExponentiallyBiasedDoubleAChao(scoreReservoirSize, decayRate);
+                scoreReservoir.trackPercentile(TARGET_PERCENTILE);
+            } else {
+                scoreReservoir = null;
+            }
+
+            streamingSummarizer = new ExponentiallyDecayingEmergingItemsets(inlierItemSummarySize,
+                                                                            outlierItemSummarySize,
+                                                                            minSupportOutlier,
+                                                                            minRatio,
+                                                                            decayRate,
+                                                                            useSpaceSavingItemSummaries,
+                                                                            useInlierSketch);
+
+            if(useRealTimePeriod) {
+                analysisUpdater = new WallClockAnalysisDecayer(System.currentTimeMillis(),
+                                                               summaryPeriod,
+                                                               inputReservoir,
+                                                               scoreReservoir,
+                                                               detector,
+                                                               streamingSummarizer);
+            } else {
+                analysisUpdater = new TupleAnalysisDecayer(summaryPeriod,
+                                                           inputReservoir,
+                                                           scoreReservoir,
+                                                           detector,
+                                                           streamingSummarizer);
+            }
+
+            if(useRealTimePeriod) {
+                modelUpdater = new WallClockRetrainer(System.currentTimeMillis(),
+                                                      modelRefreshPeriod,
+                                                      inputReservoir,
+                                                      detector,
+                                                      detectorFactory,
+                                                      streamingSummarizer,
+                                                      backgroundRetrainer);
+            } else {
+                modelUpdater = new TupleBasedRetrainer(modelRefreshPeriod,
+                                                       inputReservoir,
+                                                       detector,
+                                                       detectorFactory,
+                                                       streamingSummarizer,
+                                                       backgroundRetrainer);
+            }
         }
 
-        AbstractPeriodicUpdater modelUpdater;
-        if(useRealTimePeriod) {
-            modelUpdater = new WallClockRetrainer(System.currentTimeMillis(),
-                                                        modelRefreshPeriod,
-                                                        inputReservoir,
-                                                        detector,
-                                                        streamingSummarizer);
-        } else {
-            modelUpdater = new TupleBasedRetrainer(modelRefreshPeriod,
-                                                         inputReservoir,
-                                                         detector,
-                                                         streamingSummarizer);
+        // sample d and run any periodic updates that are due
+        void observe(Datum d, long tupleNo) {
+            inputReservoir.insert(d);
+
+            // todo: calling curtime so frequently might be bad...
+            long now = System.currentTimeMillis();
+            analysisUpdater.updateIfNecessary(now, tupleNo);
+            modelUpdater.updateIfNecessary(now, tupleNo);
         }
 
-        int tupleNo = 0;
+        void classify(Datum d, double score, OutlierDetector scoredBy) {
+            if(scoredBy instanceof IncrementalOutlierDetector) {
+                ((IncrementalOutlierDetector) scoredBy).update(d);
+            }
+            if(scoreReservoir != null) {
+                scoreReservoir.insert(score);
+            }
 
-        for(Datum d: data) {
-            inputReservoir.insert(d);
+            if((forceUseZScore && scoredBy.isZScoreOutlier(score, ZSCORE)) ||
+               (forceUsePercentile && scoreReservoir.isPercentileOutlier(score))) {
+                streamingSummarizer.markOutlier(d);
+            } else {
+                streamingSummarizer.markInlier(d);
+            }
+        }
+    }
 
-            if(tupleNo == warmupCount) {
-                detector.train(inputReservoir.getReservoir());
-            } else if(tupleNo >= warmupCount) {
-                // todo: calling curtime so frequently might be bad...
-                long now = System.currentTimeMillis();
-                analysisUpdater.updateIfNecessary(now, tupleNo);
-                modelUpdater.updateIfNecessary(now, tupleNo);
-
-                // classify, then insert into tree, etc.
-                double score = detector.score(d);
-                if(scoreReservoir != null) {
-                    scoreReservoir.insert(score);
-                }
+    private static class Chunk {
+        // position in the stream, in chunks
+        private final long seq;
+        private final List<Datum> data;
 
-                if((forceUseZScore && detector.isZScoreOutlier(score, ZSCORE)) ||
-                   forceUsePercentile && detector.isPercentileOutlier(score,
-                                                                      TARGET_PERCENTILE,
-                                                                      scoreReservoir.getReservoir())) {
-                    streamingSummarizer.markOutlier(d);
-                } else {
-                    streamingSummarizer.markInlier(d);
+        Chunk(long seq, List<Datum> data) {
+            this.seq = seq;
+            this.data = data;
+        }
+    }
+
+    private static class ScoredChunk {
+        private final Chunk chunk;
+        private final double[] scores;
+        private final OutlierDetector scoredBy;
+
+        ScoredChunk(Chunk chunk, double[] scores, OutlierDetector scoredBy) {
+            this.chunk = chunk;
+            this.scores = scores;
+            this.scoredBy = scoredBy;
+        }
+    }
+
+    // compared by identity
+    private static final Chunk END_OF_STREAM = new Chunk(-1, new ArrayList<>(0));
+    private static final ScoredChunk END_OF_SCORES = new ScoredChunk(END_OF_STREAM, new double[0], null);
+
+    /**
+     * Runs the rest of the stream through three stages joined by bounded
+     * queues of PIPELINE_CHUNK_SIZE tuples: this thread pulls and decodes
+     * tuples; scoringThreads workers score them against whatever detector
+     * is currently published; and one summarizer thread does the rest (see
+     * StreamState), including the retraining that publishes new detectors.
+     * A full queue blocks its producer, so the slowest stage sets the pace.
+     *
+     * Chunks carry their position in the stream, and the summarizer holds
+     * back any that are scored early until those before them are done, so
+     * tuples are summarized in stream order. Tuples scored by a detector
+     * that a retrain has since replaced are rescored with the new one.
+     * The result is then the same as the single-threaded loop's, unless
+     * retraining runs in the background (which publishes detectors
+     * whenever training finishes) or the detector is incremental (whose
+     * model moves under tuples already scored).
+     */
+    private void runPipeline(Iterator<Datum> data, StreamState state, long firstTupleNo) {
+        BlockingQueue<Chunk> toScore = new ArrayBlockingQueue<>(PIPELINE_QUEUE_CHUNKS);
+        BlockingQueue<ScoredChunk> toSummarize = new ArrayBlockingQueue<>(PIPELINE_QUEUE_CHUNKS);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        ExecutorService pool = Executors.newFixedThreadPool(scoringThreads + 1);
+        CompletionService<Void> stages = new ExecutorCompletionService<>(pool);
+        try {
+            for(int i = 0; i < scoringThreads; ++i) {
+                stages.submit(() -> {
+                    try {
+                        while(true) {
+                            Chunk chunk = toScore.take();
+                            if(chunk == END_OF_STREAM) {
+                                enqueue(toSummarize, END_OF_SCORES, summaryQueueStalls, failure);
+                                return null;
+                            }
+
+                            OutlierDetector current = state.detector.get();
+                            double[] scores = new double[chunk.data.size()];
+                            for(int j = 0; j < scores.length; ++j) {
+                                scores[j] = current.score(chunk.data.get(j));
+                            }
+                            scoredTuples.mark(scores.length);
+                            summaryQueueDepth.update(toSummarize.size());
+                            enqueue(toSummarize, new ScoredChunk(chunk, scores, current), summaryQueueStalls, failure);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                        throw t;
+                    }
+                });
+            }
+
+            stages.submit(() -> {
+                try {
+                    long tupleNo = firstTupleNo;
+                    long nextSeq = 0;
+                    // chunks scored ahead of nextSeq; at most the chunks in flight
+                    Map<Long, ScoredChunk> early = new HashMap<>();
+                    int scorersDone = 0;
+                    while(scorersDone < scoringThreads) {
+                        ScoredChunk scored = toSummarize.take();
+                        if(scored == END_OF_SCORES) {
+                            scorersDone++;
+                            continue;
+                        }
+
+                        early.put(scored.chunk.seq, scored);
+                        while((scored = early.remove(nextSeq)) != null) {
+                            for(int j = 0; j < scored.scores.length; ++j) {
+                                Datum d = scored.chunk.data.get(j);
+                                state.observe(d, tupleNo);
+
+                                OutlierDetector current = state.detector.get();
+                                double score = current == scored.scoredBy ? scored.scores[j] : current.score(d);
+                                state.classify(d, score, current);
+                                tupleNo++;
+                            }
+                            summarizedTuples.mark(scored.scores.length);
+                            nextSeq++;
+                        }
+                    }
+                    return null;
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                    throw t;
+                }
+            });
+
+            long seq = 0;
+            List<Datum> chunk = new ArrayList<>(PIPELINE_CHUNK_SIZE);
+            while(data.hasNext()) {
+                chunk.add(data.next());
+                if(chunk.size() == PIPELINE_CHUNK_SIZE) {
+                    ingestedTuples.mark(chunk.size());
+                    scoreQueueDepth.update(toScore.size());
+                    enqueue(toScore, new Chunk(seq++, chunk), scoreQueueStalls, failure);
+                    chunk = new ArrayList<>(PIPELINE_CHUNK_SIZE);
                 }
             }
+            if(!chunk.isEmpty()) {
+                ingestedTuples.mark(chunk.size());
+                enqueue(toScore, new Chunk(seq, chunk), scoreQueueStalls, failure);
+            }
+            for(int i = 0; i < scoringThreads; ++i) {
+                enqueue(toScore, END_OF_STREAM, scoreQueueStalls, failure);
+            }
 
-            tupleNo += 1;
+            for(int i = 0; i < scoringThreads + 1; ++i) {
+                stages.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
         }
+    }
 
-        List<ItemsetResult> isr = streamingSummarizer.getItemsets(encoder);
-
-        //System.console().readLine("Finished! Press any key to continue");
+    // put, counting a stall if the queue is full; gives up if another
+    // stage has failed (and so may never drain the queue)
+    private static <T> void enqueue(BlockingQueue<T> queue,
+                                    T item,
+                                    Meter stalls,
+                                    AtomicReference<Throwable> failure) throws InterruptedException {
+        if(queue.offer(item)) {
+            return;
+        }
 
-        return new AnalysisResult(0, 0, 0, 0, 0, isr);
+        stalls.mark();
+        while(!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if(failure.get() != null) {
+                throw new RuntimeException("Streaming pipeline stage failed", failure.get());
+            }
+        }
     }
 
     public void setWarmupCount(Integer warmupCount) {
@@ -0,0 +1,395 @@
+package macrobase.analysis.outlier;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * FAST-MCD (Rousseeuw and Van Driessen, 1999) over metric columns.
+ *
+ * Many random (p+1)-point starts each take two C-steps on one of up to
+ * five disjoint subsamples of SUBSET_SIZE rows; the best starts per
+ * subsample take two more C-steps on the union of the subsamples; the
+ * best few of those are iterated to convergence on the full data. Only
+ * the final stage touches every row, so the cost on large inputs is a
+ * handful of O(n p^2) passes, which run in chunks on the pool if one is
+ * given.
+ *
+ * The h closest rows are found with a selection of the h-th smallest
+ * distance rather than a sort.
+ */
+class FastMCD {
+    private static final Logger log = LoggerFactory.getLogger(FastMCD.class);
+
+    private static final int SUBSET_SIZE = 300;
+    private static final int MAX_SUBSETS = 5;
+    private static final int INITIAL_C_STEPS = 2;
+    private static final int CANDIDATES_PER_SUBSET = 10;
+    private static final int FULL_DATA_CANDIDATES = 3;
+    private static final int MAX_C_STEPS = 100;
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    static class Estimate {
+        final double[] mean;
+        // row-major p x p
+        final double[] cov;
+        final double[] inverseCov;
+        final double det;
+
+        private Estimate(double[] mean, double[] cov, double[] inverseCov, double det) {
+            this.mean = mean;
+            this.cov = cov;
+            this.inverseCov = inverseCov;
+            this.det = det;
+        }
+    }
+
+    private final double[][] columns;
+    private final int n;
+    private final int p;
+    private final int h;
+    private final double stoppingDelta;
+    private final ForkJoinPool pool;
+
+    /**
+     * columns[j][i] is metric j of row i; pool may be null to run on the
+     * calling thread.
+     */
+    FastMCD(double[][] columns, int n, int h, double stoppingDelta, ForkJoinPool pool) {
+        this.columns = columns;
+        this.n = n;
+        this.p = columns.length;
+        this.h = h;
+        this.stoppingDelta = stoppingDelta;
+        this.pool = pool;
+    }
+
+    private static class StartTask {
+        private final int[] rows;
+        private final int numStarts;
+        private final long seed;
+
+        private StartTask(int[] rows, int numStarts, long seed) {
+            this.rows = rows;
+            this.numStarts = numStarts;
+            this.seed = seed;
+        }
+    }
+
+    Estimate fit(int numStarts, long seed) {
+        Random random = new Random(seed);
+
+        List<StartTask> tasks = new ArrayList<>();
+        int[] merged;
+        if(n <= 2 * SUBSET_SIZE) {
+            // too small to subsample: spread the starts over the whole input
+            merged = null;
+            int[] all = IntStream.range(0, n).toArray();
+            for(int t = 0; t < MAX_SUBSETS; ++t) {
+                tasks.add(new StartTask(all, Math.max(1, numStarts / MAX_SUBSETS), random.nextLong()));
+            }
+        } else {
+            int numSubsets = Math.min(MAX_SUBSETS, n / SUBSET_SIZE);
+            merged = chooseDistinct(random, n, numSubsets * SUBSET_SIZE);
+            for(int s = 0; s < numSubsets; ++s) {
+                int[] subset = new int[SUBSET_SIZE];
+                System.arraycopy(merged, s * SUBSET_SIZE, subset, 0, SUBSET_SIZE);
+                tasks.add(new StartTask(subset, Math.max(1, numStarts / numSubsets), random.nextLong()));
+            }
+        }
+
+        List<Estimate> candidates = flatten(map(tasks, true, this::runStarts));
+        log.trace("{} candidates from {} starts", candidates.size(), numStarts);
+
+        if(merged != null) {
+            int mergedH = scaledH(merged.length);
+            List<Estimate> refined = new ArrayList<>();
+            for(Estimate candidate : candidates) {
+                Estimate est = candidate;
+                for(int step = 0; step < INITIAL_C_STEPS && est != null; ++step) {
+                    est = cStep(merged, merged.length, mergedH, est, false);
+                }
+                if(est != null) {
+                    refined.add(est);
+                }
+            }
+            candidates = best(refined, FULL_DATA_CANDIDATES);
+        } else {
+            candidates = best(candidates, CANDIDATES_PER_SUBSET);
+        }
+
+        Estimate ret = null;
+        for(Estimate candidate : candidates) {
+            Estimate est = converge(candidate);
+            if(ret == null || est.det < ret.det) {
+                ret = est;
+            }
+        }
+
+        if(ret == null) {
+            throw new RuntimeException("FAST-MCD found no non-singular covariance estimate");
+        }
+        return ret;
+    }
+
+    // h for a sample, in proportion to h for the full data
+    private int scaledH(int sampleSize) {
+        return Math.max(p + 1, (int) Math.ceil((double) sampleSize * h / n));
+    }
+
+    private List<Estimate> runStarts(StartTask task) {
+        Random random = new Random(task.seed);
+        int taskH = task.rows.length == n ? h : scaledH(task.rows.length);
+
+        List<Estimate> ret = new ArrayList<>();
+        for(int start = 0; start < task.numStarts; ++start) {
+            Estimate est = randomStart(task.rows, random);
+            for(int step = 0; step < INITIAL_C_STEPS && est != null; ++step) {
+                est = cStep(task.rows, task.rows.length, taskH, est, false);
+            }
+            if(est != null) {
+                ret.add(est);
+            }
+        }
+        return best(ret, CANDIDATES_PER_SUBSET);
+    }
+
+    // p+1 random rows, grown one row at a time while their covariance is singular
+    private Estimate randomStart(int[] rows, Random random) {
+        int[] order = chooseDistinct(random, rows.length, rows.length);
+        for(int size = p + 1; size <= rows.length; ++size) {
+            int[] chosen = new int[size];
+            for(int i = 0; i < size; ++i) {
+                chosen[i] = rows[order[i]];
+            }
+            Estimate est = estimate(chosen, size, false);
+            if(est != null) {
+                return est;
+            }
+        }
+        return null;
+    }
+
+    private Estimate converge(Estimate est) {
+        for(int step = 0; step < MAX_C_STEPS; ++step) {
+            Estimate next = cStep(null, n, h, est, true);
+            if(next == null) {
+                break;
+            }
+
+            double delta = est.det - next.det;
+            est = next;
+            log.trace("Iteration {}: delta = {}; det = {}", step, delta, next.det);
+            if(delta < stoppingDelta) {
+                break;
+            }
+        }
+        return est;
+    }
+
+    /**
+     * One C-step: the estimate from the numH rows (of rows, or of all rows
+     * if rows is null) closest to est. Returns null if that covariance is
+     * singular.
+     */
+    private Estimate cStep(int[] rows, int numRows, int numH, Estimate est, boolean chunked) {
+        double[] distances = new double[numRows];
+        forEachChunk(numRows, chunked, (lo, hi) -> {
+            double[] diff = new double[p];
+            for(int i = lo; i < hi; ++i) {
+                distances[i] = squaredMahalanobis(rows == null ? i : rows[i], est, diff);
+            }
+            return null;
+        });
+
+        double threshold = QuickSelect.select(distances.clone(), numRows, numH - 1);
+
+        // all rows strictly closer than the h-th distance, then ties in row order
+        int numBelow = 0;
+        for(double d : distances) {
+            if(d < threshold) {
+                numBelow++;
+            }
+        }
+
+        int[] selected = new int[numH];
+        int numSelected = 0;
+        int tiesRemaining = numH - numBelow;
+        for(int i = 0; i < numRows; ++i) {
+            double d = distances[i];
+            if(d < threshold || (d == threshold && tiesRemaining-- > 0)) {
+                selected[numSelected++] = rows == null ? i : rows[i];
+            }
+        }
+
+        return estimate(selected, numSelected, chunked);
+    }
+
+    private double squaredMahalanobis(int row, Estimate est, double[] diff) {
+        for(int j = 0; j < p; ++j) {
+            diff[j] = columns[j][row] - est.mean[j];
+        }
+
+        double ret = 0;
+        for(int i = 0; i < p; ++i) {
+            double rowSum = 0;
+            for(int j = 0; j < p; ++j) {
+                rowSum += est.inverseCov[i * p + j] * diff[j];
+            }
+            ret += diff[i] * rowSum;
+        }
+        return ret;
+    }
+
+    // mean and (unbiased) covariance of the given rows; null if singular
+    private Estimate estimate(int[] rows, int numRows, boolean chunked) {
+        double[] mean = new double[p];
+        for(double[] partial : forEachChunk(numRows, chunked, (lo, hi) -> {
+            double[] sums = new double[p];
+            for(int i = lo; i < hi; ++i) {
+                for(int j = 0; j < p; ++j) {
+                    sums[j] += columns[j][rows[i]];
+                }
+            }
+            return sums;
+        })) {
+            for(int j = 0; j < p; ++j) {
+                mean[j] += partial[j];
+            }
+        }
+        for(int j = 0; j < p; ++j) {
+            mean[j] /= numRows;
+        }
+
+        double[] cov = new double[p * p];
+        for(double[] partial : forEachChunk(numRows, chunked, (lo, hi) -> {
+            double[] sums = new double[p * p];
+            double[] diff = new double[p];
+            for(int i = lo; i < hi; ++i) {
+                for(int j = 0; j < p; ++j) {
+                    diff[j] = columns[j][rows[i]] - mean[j];
+                }
+                for(int j = 0; j < p; ++j) {
+                    for(int k = j; k < p; ++k) {
+                        sums[j * p + k] += diff[j] * diff[k];
+                    }
+                }
+            }
+            return sums;
+        })) {
+            for(int j = 0; j < p * p; ++j) {
+                cov[j] += partial[j];
+            }
+        }
+        for(int j = 0; j < p; ++j) {
+            for(int k = j; k < p; ++k) {
+                cov[j * p + k] /= numRows - 1;
+                cov[k * p + j] = cov[j * p + k];
+            }
+        }
+
+        RealMatrix covMatrix = new Array2DRowRealMatrix(p, p);
+        for(int j = 0; j < p; ++j) {
+            for(int k = 0; k < p; ++k) {
+                covMatrix.setEntry(j, k, cov[j * p + k]);
+            }
+        }
+
+        LUDecomposition lu = new LUDecomposition(covMatrix);
+        DecompositionSolver solver = lu.getSolver();
+        if(!solver.isNonSingular()) {
+            return null;
+        }
+
+        RealMatrix inverse = solver.getInverse();
+        double[] inverseCov = new double[p * p];
+        for(int j = 0; j < p; ++j) {
+            for(int k = 0; k < p; ++k) {
+                inverseCov[j * p + k] = inverse.getEntry(j, k);
+            }
+        }
+        return new Estimate(mean, cov, inverseCov, lu.getDeterminant());
+    }
+
+    private interface ChunkFunction<T> {
+        T apply(int lo, int hi);
+    }
+
+    // applies f to [lo, hi) chunks of [0, numRows), in parallel on the pool if chunked
+    private <T> List<T> forEachChunk(int numRows, boolean chunked, ChunkFunction<T> f) {
+        int numChunks = (numRows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        List<Integer> chunks = IntStream.range(0, numChunks).boxed().collect(Collectors.toList());
+        return map(chunks, chunked, c -> f.apply(c * CHUNK_SIZE, Math.min(numRows, (c + 1) * CHUNK_SIZE)));
+    }
+
+    private <S, T> List<T> map(List<S> inputs, boolean parallel, Function<S, T> f) {
+        if(pool == null || !parallel || inputs.size() <= 1) {
+            return inputs.stream().map(f).collect(Collectors.toList());
+        }
+
+        try {
+            return pool.submit(() -> inputs.parallelStream().map(f).collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static <T> List<T> flatten(List<List<T>> lists) {
+        List<T> ret = new ArrayList<>();
+        lists.forEach(ret::addAll);
+        return ret;
+    }
+
+    private static List<Estimate> best(List<Estimate> estimates, int k) {
+        return estimates.stream()
+                .sorted(Comparator.comparingDouble(e -> e.det))
+                .limit(k)
+                .collect(Collectors.toList());
+    }
+
+    // k distinct values from [0, bound) in random order
+    private static int[] chooseDistinct(Random random, int bound, int k) {
+        if(k * 4 > bound) {
+            // partial Fisher-Yates shuffle
+            int[] all = IntStream.range(0, bound).toArray();
+            for(int i = 0; i < k; ++i) {
+                int j = i + random.nextInt(bound - i);
+                int tmp = all[i];
+                all[i] = all[j];
+                all[j] = tmp;
+            }
+            int[] ret = new int[k];
+            System.arraycopy(all, 0, ret, 0, k);
+            return ret;
+        }
+
+        Set<Integer> chosen = new HashSet<>();
+        int[] ret = new int[k];
+        int numChosen = 0;
+        while(numChosen < k) {
+            int idx = random.nextInt(bound);
+            if(chosen.add(idx)) {
+                ret[numChosen++] = idx;
+            }
+        }
+        return ret;
+    }
+}
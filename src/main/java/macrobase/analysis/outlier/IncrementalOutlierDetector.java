@@ -0,0 +1,19 @@
+package macrobase.analysis.outlier;
+
+import macrobase.datamodel.Datum;
+
+/**
+ * A detector whose model is maintained tuple by tuple rather than
+ * retrained from the input reservoir. The streaming analyzer calls
+ * update for every scored tuple, advancePeriod wherever it decays its
+ * reservoirs, and updateModel instead of train on each model refresh.
+ */
+public interface IncrementalOutlierDetector {
+    void update(Datum datum);
+
+    // decay what has been seen so far, as for the exponentially biased reservoirs
+    void advancePeriod();
+
+    // make updates since the last call visible to score
+    void updateModel();
+}
@@ -1,9 +1,10 @@
 package macrobase.analysis.outlier;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,28 +21,43 @@ public class MAD extends OutlierDetector {
     @Override
     public void train(List<Datum> data) {
         assert (data.get(0).getMetrics().getDimension() == 1);
-        data.sort((x, y) -> Double.compare(x.getMetrics().getEntry(0),
-                                           y.getMetrics().getEntry(0)));
 
-        if (data.size() % 2 == 0) {
-            median = (data.get(data.size() / 2 - 1).getMetrics().getEntry(0) +
-                      data.get(data.size() / 2 + 1).getMetrics().getEntry(0)) / 2;
+        double[] values = new double[data.size()];
+        for (int i = 0; i < data.size(); ++i) {
+            values[i] = data.get(i).getMetrics().getEntry(0);
+        }
+
+        train(values);
+    }
+
+    @Override
+    public void train(DatumBatch data) {
+        assert (data.getNumMetrics() == 1);
+        train(Arrays.copyOf(data.getMetricColumn(0), data.size()));
+    }
+
+    // sorts values in place
+    private void train(double[] values) {
+        Arrays.sort(values);
+
+        if (values.length % 2 == 0) {
+            median = (values[values.length / 2 - 1] +
+                      values[values.length / 2 + 1]) / 2;
         } else {
-            median = data.get((int) Math.ceil(data.size() / 2)).getMetrics().getEntry(0);
+            median = values[(int) Math.ceil(values.length / 2)];
         }
 
-        List<Double> residuals = new ArrayList<>(data.size());
-        for (Datum d : data) {
-            residuals.add(Math.abs(d.getMetrics().getEntry(0) - median));
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = Math.abs(values[i] - median);
         }
 
-        residuals.sort((a, b) -> Double.compare(a, b));
+        Arrays.sort(values);
 
-        if (data.size() % 2 == 0) {
-            MAD = (residuals.get(data.size() / 2 - 1) +
-                   residuals.get(data.size() / 2 + 1)) / 2;
+        if (values.length % 2 == 0) {
+            MAD = (values[values.length / 2 - 1] +
+                   values[values.length / 2 + 1]) / 2;
         } else {
-            MAD = residuals.get((int) Math.ceil(data.size() / 2));
+            MAD = values[(int) Math.ceil(values.length / 2)];
         }
 
         log.trace("trained! median is {}, MAD is {}", median, MAD);
@@ -53,6 +69,11 @@ public class MAD extends OutlierDetector {
         return Math.abs(point - median) / (MAD);
     }
 
+    @Override
+    public double score(DatumBatch data, int row) {
+        return Math.abs(data.getMetric(row, 0) - median) / (MAD);
+    }
+
     @Override
     public double getZScoreEquivalent(double zscore) {
         double ret = zscore/MAD_TO_ZSCORE_COEFFICIENT;
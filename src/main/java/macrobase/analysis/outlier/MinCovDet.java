@@ -7,11 +7,13 @@ import java.util.Random;
 import java.util.Set;
 
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 import macrobase.datamodel.HasMetrics;
 
 import org.apache.commons.math3.distribution.ChiSquaredDistribution;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.LUDecomposition;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
@@ -23,32 +25,6 @@ import org.slf4j.LoggerFactory;
 public class MinCovDet extends OutlierDetector  {
     private static final Logger log = LoggerFactory.getLogger(MinCovDet.class);
 
-    class MetricsWithScore implements HasMetrics {
-        private RealVector metrics;
-        private Double score;
-        private Integer originalPosition;
-
-        public MetricsWithScore(RealVector metrics,
-                                double score,
-                                Integer originalPosition) {
-            this.metrics = metrics;
-            this.score = score;
-            this.originalPosition = originalPosition;
-        }
-
-        public RealVector getMetrics() {
-            return metrics;
-        }
-
-        public Double getScore() {
-            return score;
-        }
-
-        public Integer getOriginalPosition() {
-            return originalPosition;
-        }
-    }
-
     // p == dataset dimension
     private final int p;
     // H = alpha*(n+p+1)
@@ -56,9 +32,42 @@ public class MinCovDet extends OutlierDetector  {
     private Random random = new Random();
     private double stoppingDelta = 1e-3;
 
+    private boolean useFastMCD = false;
+    private int numStarts = 500;
+
     private RealMatrix cov;
     private RealVector mean;
 
+    // mean and inverse covariance as primitive arrays, recomputed whenever
+    // the model changes so that scoring neither inverts nor allocates
+    private static class Model {
+        private final double[] mean;
+        // row-major p x p
+        private final double[] inverseCov;
+
+        private Model(double[] mean, double[] inverseCov) {
+            this.mean = mean;
+            this.inverseCov = inverseCov;
+        }
+
+        private Model(RealVector mean, RealMatrix cov) {
+            this.mean = mean.toArray();
+
+            int p = this.mean.length;
+            RealMatrix inverse = new LUDecomposition(cov).getSolver().getInverse();
+            inverseCov = new double[p * p];
+            for(int i = 0; i < p; ++i) {
+                for(int j = 0; j < p; ++j) {
+                    inverseCov[i * p + j] = inverse.getEntry(i, j);
+                }
+            }
+        }
+    }
+
+    // replaced wholesale on retraining, so concurrent scorers see a
+    // consistent model
+    private volatile Model model;
+
     // efficient only when k << allData.size()
     private List<Datum> chooseKRandom(List<Datum> allData, final int k) {
         assert(k < allData.size());
@@ -88,18 +97,60 @@ public class MinCovDet extends OutlierDetector  {
         this.alpha = alpha;
     }
 
+    /**
+     * Train with FAST-MCD (many random starts on subsamples, see FastMCD)
+     * instead of C-steps on the full data from a single random start.
+     */
+    public void setUseFastMCD(boolean useFastMCD) {
+        this.useFastMCD = useFastMCD;
+    }
+
+    // number of random starts FAST-MCD tries
+    public void setNumStarts(int numStarts) {
+        this.numStarts = numStarts;
+    }
+
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+
     public static double getMahalanobis(RealVector mean,
                                         RealMatrix cov,
                                         RealVector vec) {
-        // sqrt((vec-mean)^T S^-1 (vec-mean))
-        RealMatrix vecT = new Array2DRowRealMatrix(vec.toArray());
-        RealMatrix meanT = new Array2DRowRealMatrix(mean.toArray());
-        RealMatrix vecSubtractMean = vecT.subtract(meanT);
+        return getMahalanobis(new Model(mean, cov), vec);
+    }
+
+    // sqrt((vec-mean)^T S^-1 (vec-mean))
+    private static double getMahalanobis(Model model, RealVector vec) {
+        double[] mean = model.mean;
+        double[] inverseCov = model.inverseCov;
+        int p = mean.length;
+
+        double ret = 0;
+        for(int i = 0; i < p; ++i) {
+            double rowSum = 0;
+            for(int j = 0; j < p; ++j) {
+                rowSum += inverseCov[i * p + j] * (vec.getEntry(j) - mean[j]);
+            }
+            ret += (vec.getEntry(i) - mean[i]) * rowSum;
+        }
+        return Math.sqrt(ret);
+    }
 
-        RealMatrix covInverse = new LUDecomposition(cov).getSolver().getInverse();
-        return Math.sqrt(vecSubtractMean.transpose()
-                                 .multiply(covInverse)
-                                 .multiply(vecSubtractMean).getEntry(0, 0));
+    private static double getMahalanobis(Model model, DatumBatch data, int row) {
+        double[] mean = model.mean;
+        double[] inverseCov = model.inverseCov;
+        int p = mean.length;
+
+        double ret = 0;
+        for(int i = 0; i < p; ++i) {
+            double rowSum = 0;
+            for(int j = 0; j < p; ++j) {
+                rowSum += inverseCov[i * p + j] * (data.getMetric(row, j) - mean[j]);
+            }
+            ret += (data.getMetric(row, i) - mean[i]) * rowSum;
+        }
+        return Math.sqrt(ret);
     }
 
     private RealVector getMean(List<? extends HasMetrics> data) {
@@ -129,23 +180,32 @@ public class MinCovDet extends OutlierDetector  {
         return (new Covariance(ret)).getCovarianceMatrix();
     }
 
-    private List<MetricsWithScore> findKClosest(int k,
+    private List<HasMetrics> findKClosest(int k,
                                           List<? extends HasMetrics> data,
-                                          RealVector mean,
-                                          RealMatrix cov) {
-        // todo: change back to guava priority queue
-        List<MetricsWithScore> scores = new ArrayList<>();
-
+                                          Model model) {
+        double[] scores = new double[data.size()];
         for(int i = 0; i < data.size(); ++i) {
-            HasMetrics d = data.get(i);
-            scores.add(new MetricsWithScore(d.getMetrics(),
-                                            getMahalanobis(mean, cov, d.getMetrics()),
-                                            i));
+            scores[i] = getMahalanobis(model, data.get(i).getMetrics());
         }
 
-        scores.sort((a, b) -> a.getScore().compareTo(b.getScore()));
+        // select the k-th smallest score instead of sorting, then take
+        // everything closer plus as many ties as needed
+        double threshold = QuickSelect.select(scores.clone(), scores.length, k - 1);
+        int numBelow = 0;
+        for(double score : scores) {
+            if(score < threshold) {
+                numBelow++;
+            }
+        }
 
-        return scores.subList(0, k);
+        List<HasMetrics> ret = new ArrayList<>(k);
+        int tiesRemaining = k - numBelow;
+        for(int i = 0; i < scores.length; ++i) {
+            if(scores[i] < threshold || (scores[i] == threshold && tiesRemaining-- > 0)) {
+                ret.add(data.get(i));
+            }
+        }
+        return ret;
     }
 
     // helper method
@@ -159,21 +219,35 @@ public class MinCovDet extends OutlierDetector  {
         assert(data.iterator().next().getMetrics().getDimension() == p);
         assert(p > 1);
 
+        if(useFastMCD) {
+            double[][] columns = new double[p][data.size()];
+            for(int i = 0; i < data.size(); ++i) {
+                RealVector metrics = data.get(i).getMetrics();
+                for(int j = 0; j < p; ++j) {
+                    columns[j][i] = metrics.getEntry(j);
+                }
+            }
+            trainFastMCD(columns, data.size());
+            return;
+        }
+
         int h = (int)Math.floor((data.size() + p + 1)*alpha);
 
         // select initial dataset
         List<? extends HasMetrics> initialSubset = chooseKRandom(data, p + 1);
         mean = getMean(initialSubset);
         cov = getCovariance(initialSubset);
+        model = new Model(mean, cov);
         double det = getDeterminant(cov);
 
         int stepNo = 1;
 
         // now take C-steps
         while(true) {
-            List<? extends HasMetrics> newH = findKClosest(h, data, mean, cov);
+            List<? extends HasMetrics> newH = findKClosest(h, data, model);
             mean = getMean(newH);
             cov = getCovariance(newH);
+            model = new Model(mean, cov);
 
             double newDet = getDeterminant(cov);
             double delta = det - newDet;
@@ -191,9 +265,47 @@ public class MinCovDet extends OutlierDetector  {
         log.trace("cov: {}", cov);
     }
 
+    @Override
+    public void train(DatumBatch data) {
+        if(!useFastMCD) {
+            super.train(data);
+            return;
+        }
+
+        assert(data.getNumMetrics() == p);
+        double[][] columns = new double[p][];
+        for(int j = 0; j < p; ++j) {
+            columns[j] = data.getMetricColumn(j);
+        }
+        trainFastMCD(columns, data.size());
+    }
+
+    private void trainFastMCD(double[][] columns, int n) {
+        int h = (int)Math.floor((n + p + 1)*alpha);
+
+        FastMCD.Estimate est = new FastMCD(columns, n, h, stoppingDelta, getPool()).fit(numStarts, random.nextLong());
+
+        mean = new ArrayRealVector(est.mean);
+        cov = new Array2DRowRealMatrix(p, p);
+        for(int i = 0; i < p; ++i) {
+            for(int j = 0; j < p; ++j) {
+                cov.setEntry(i, j, est.cov[i * p + j]);
+            }
+        }
+        model = new Model(est.mean, est.inverseCov);
+
+        log.trace("mean: {}", mean);
+        log.trace("cov: {}", cov);
+    }
+
     @Override
     public double score(Datum datum) {
-        return getMahalanobis(mean, cov, datum.getMetrics());
+        return getMahalanobis(model, datum.getMetrics());
+    }
+
+    @Override
+    public double score(DatumBatch data, int row) {
+        return getMahalanobis(model, data, row);
     }
 
     @Override
@@ -2,11 +2,17 @@ package macrobase.analysis.outlier;
 
 import macrobase.analysis.summary.result.DatumWithScore;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
+import macrobase.util.ForkJoinPools;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
 
 /**
  * Created by pbailis on 12/14/15.
@@ -30,10 +36,52 @@ public abstract class OutlierDetector {
         }
     }
 
+    public class ColumnarBatchResult {
+        private DatumBatch inliers;
+        private DatumBatch outliers;
+
+        public ColumnarBatchResult(DatumBatch inliers, DatumBatch outliers) {
+            this.inliers = inliers;
+            this.outliers = outliers;
+        }
+
+        public DatumBatch getInliers() {
+            return inliers;
+        }
+
+        public DatumBatch getOutliers() {
+            return outliers;
+        }
+    }
+
+    private static final int SCORE_CHUNK_SIZE = 1 << 14;
+
+    // threads used to score batches (and by some detectors to train)
+    protected int parallelism = 1;
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    // the pool to run parallel work on, or null if parallelism <= 1
+    protected ForkJoinPool getPool() {
+        return ForkJoinPools.shared(parallelism);
+    }
+
     public abstract void train(List<Datum> data);
     public abstract double score(Datum datum);
     public abstract double getZScoreEquivalent(double zscore);
 
+    // detectors that can read primitive columns directly should override
+    // these; by default, we materialize Datums
+    public void train(DatumBatch data) {
+        train(data.toDatums());
+    }
+
+    public double score(DatumBatch data, int row) {
+        return score(data.getDatum(row));
+    }
+
     private Map<Double, Double> cachedZScoreEquivalents = new HashMap<>();
 
     public boolean isZScoreOutlier(double score, double zscore) {
@@ -41,44 +89,91 @@ public abstract class OutlierDetector {
         return score >= thresh;
     }
 
-    private Map<Double, Double> cachedPercentileEquivalents = new HashMap<>();
+    // score rows [0, numRows) into an array, in chunks on a fork-join pool
+    // if parallelism > 1; score must then be safe to call concurrently
+    private double[] scoreBatch(int numRows, IntToDoubleFunction score) {
+        double[] ret = new double[numRows];
+        if(parallelism <= 1 || numRows <= SCORE_CHUNK_SIZE) {
+            for(int i = 0; i < numRows; ++i) {
+                ret[i] = score.applyAsDouble(i);
+            }
+            return ret;
+        }
 
-    public void clearScorePercentileCache() {
-        cachedPercentileEquivalents.clear();
+        int numChunks = (numRows + SCORE_CHUNK_SIZE - 1) / SCORE_CHUNK_SIZE;
+        try {
+            getPool().submit(() -> IntStream.range(0, numChunks).parallel().forEach(c -> {
+                int end = Math.min(numRows, (c + 1) * SCORE_CHUNK_SIZE);
+                for(int i = c * SCORE_CHUNK_SIZE; i < end; ++i) {
+                    ret[i] = score.applyAsDouble(i);
+                }
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return ret;
     }
 
-    public boolean isPercentileOutlier(double score,
-                                       double targetPercentile,
-                                       List<Double> recentScores) {
-        Double thresh = cachedPercentileEquivalents.get(score);
-        if(thresh == null) {
-            recentScores.sort((a, b) -> a.compareTo(b));
-            thresh = recentScores.get((int)targetPercentile*recentScores.size());
-            cachedPercentileEquivalents.put(score, thresh);
-        }
+    private double[] scoreBatch(List<Datum> data) {
+        return scoreBatch(data.size(), i -> score(data.get(i)));
+    }
 
-        return score >= thresh;
+    private double[] scoreBatch(DatumBatch data) {
+        return scoreBatch(data.size(), i -> score(data, i));
     }
 
-    private List<DatumWithScore> scoreBatch(List<Datum> data) {
-        List<DatumWithScore> ret = new ArrayList<>();
-        for(Datum d : data) {
-            ret.add(new DatumWithScore(d, score(d)));
+    /**
+     * Marks the rows that a stable sort by score would place at or after
+     * splitPoint: everything above the splitPoint-th smallest score, plus
+     * rows tied with it beyond those needed to fill the inliers, in row
+     * order. Found by selection rather than sorting.
+     */
+    private static boolean[] splitAtRank(double[] scores, int splitPoint) {
+        boolean[] ret = new boolean[scores.length];
+        if(splitPoint >= scores.length) {
+            return ret;
+        }
+
+        double thresh = QuickSelect.select(scores.clone(), scores.length, splitPoint);
+
+        int tiesToInliers = splitPoint;
+        for(double score : scores) {
+            if(Double.compare(score, thresh) < 0) {
+                tiesToInliers--;
+            }
+        }
+
+        for(int i = 0; i < scores.length; ++i) {
+            int cmp = Double.compare(scores[i], thresh);
+            ret[i] = cmp > 0 || (cmp == 0 && tiesToInliers-- <= 0);
         }
         return ret;
     }
 
+    /**
+     * Splits data at the given percentile of scores. Outliers are returned
+     * in score order; inliers are returned in input order, not score order.
+     * No caller depends on the order of the inliers (BatchAnalyzer only
+     * counts them and mines itemsets from them).
+     */
     public BatchResult classifyBatchByPercentile(List<Datum> data,
                                                  double percentile) {
         train(data);
         int splitPoint = (int)(data.size()-data.size()*percentile);
-        List<DatumWithScore> scoredData = scoreBatch(data);
-
-        scoredData.sort((a, b) -> a.getScore().compareTo(b.getScore()));
+        double[] scores = scoreBatch(data);
+        boolean[] isOutlier = splitAtRank(scores, splitPoint);
 
-        return new BatchResult(scoredData.subList(0, splitPoint),
-                               scoredData.subList(splitPoint, scoredData.size()));
+        List<DatumWithScore> inliers = new ArrayList<>(splitPoint);
+        List<DatumWithScore> outliers = new ArrayList<>(data.size() - splitPoint);
+        for(int i = 0; i < scores.length; ++i) {
+            (isOutlier[i] ? outliers : inliers).add(new DatumWithScore(data.get(i), scores[i]));
+        }
 
+        outliers.sort((a, b) -> a.getScore().compareTo(b.getScore()));
+        return new BatchResult(inliers, outliers);
     }
 
     public BatchResult classifyBatchByZScoreEquivalent(List<Datum> data,
@@ -91,11 +186,10 @@ public abstract class OutlierDetector {
 
         double thresh = cachedZScoreEquivalents.computeIfAbsent(zscore, k -> getZScoreEquivalent(zscore));
 
-        // take an efficiency hit for modularity :(
-        for (Datum d : data) {
-            double dScore = score(d);
-            DatumWithScore dws = new DatumWithScore(d, dScore);
-            if (dScore >= thresh) {
+        double[] scores = scoreBatch(data);
+        for (int i = 0; i < scores.length; ++i) {
+            DatumWithScore dws = new DatumWithScore(data.get(i), scores[i]);
+            if (scores[i] >= thresh) {
                 outliers.add(dws);
             } else {
                 inliers.add(dws);
@@ -103,4 +197,51 @@ public abstract class OutlierDetector {
         }
         return new BatchResult(inliers, outliers);
     }
+
+    public ColumnarBatchResult classifyBatchByPercentile(DatumBatch data,
+                                                         double percentile) {
+        train(data);
+        int splitPoint = (int)(data.size()-data.size()*percentile);
+        double[] scores = scoreBatch(data);
+        boolean[] isOutlier = splitAtRank(scores, splitPoint);
+
+        int[] inlierRows = new int[splitPoint];
+        int[] outlierRows = new int[data.size() - splitPoint];
+        int numInliers = 0;
+        int numOutliers = 0;
+        for(int i = 0; i < scores.length; ++i) {
+            if(isOutlier[i]) {
+                outlierRows[numOutliers++] = i;
+            } else {
+                inlierRows[numInliers++] = i;
+            }
+        }
+
+        return new ColumnarBatchResult(data.select(inlierRows, numInliers),
+                                       data.select(outlierRows, numOutliers));
+    }
+
+    public ColumnarBatchResult classifyBatchByZScoreEquivalent(DatumBatch data,
+                                                               double zscore) {
+        train(data);
+
+        double thresh = cachedZScoreEquivalents.computeIfAbsent(zscore, k -> getZScoreEquivalent(zscore));
+
+        double[] scores = scoreBatch(data);
+        int[] inlierRows = new int[data.size()];
+        int[] outlierRows = new int[data.size()];
+        int numInliers = 0;
+        int numOutliers = 0;
+
+        for(int i = 0; i < scores.length; ++i) {
+            if(scores[i] >= thresh) {
+                outlierRows[numOutliers++] = i;
+            } else {
+                inlierRows[numInliers++] = i;
+            }
+        }
+
+        return new ColumnarBatchResult(data.select(inlierRows, numInliers),
+                                       data.select(outlierRows, numOutliers));
+    }
 }
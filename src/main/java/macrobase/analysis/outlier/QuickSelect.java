@@ -0,0 +1,65 @@
+package macrobase.analysis.outlier;
+
+/**
+ * In-place selection of order statistics in expected linear time. Values
+ * are ordered as by Double.compare (and so Arrays.sort): -0.0 before 0.0,
+ * NaN last.
+ */
+class QuickSelect {
+    private QuickSelect() {}
+
+    // Returns the k-th smallest (0-indexed) of values[0..length); partially
+    // reorders values so that everything before k is <= it and everything
+    // after is >= it.
+    static double select(double[] values, int length, int k) {
+        assert (k >= 0 && k < length);
+
+        int lo = 0;
+        int hi = length - 1;
+        while(hi > lo) {
+            // median-of-three pivot keeps sorted and reverse-sorted input linear
+            int mid = (lo + hi) >>> 1;
+            if(Double.compare(values[mid], values[lo]) < 0) {
+                swap(values, mid, lo);
+            }
+            if(Double.compare(values[hi], values[lo]) < 0) {
+                swap(values, hi, lo);
+            }
+            if(Double.compare(values[hi], values[mid]) < 0) {
+                swap(values, hi, mid);
+            }
+            double pivot = values[mid];
+
+            int i = lo;
+            int j = hi;
+            while(i <= j) {
+                while(Double.compare(values[i], pivot) < 0) {
+                    i++;
+                }
+                while(Double.compare(values[j], pivot) > 0) {
+                    j--;
+                }
+                if(i <= j) {
+                    swap(values, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if(k <= j) {
+                hi = j;
+            } else if(k >= i) {
+                lo = i;
+            } else {
+                return values[k];
+            }
+        }
+        return values[k];
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
+    }
+}
@@ -0,0 +1,103 @@
+package macrobase.analysis.outlier;
+
+import macrobase.analysis.summary.quantile.TDigest;
+import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * MAD over an exponentially decaying TDigest of the metric, updated per
+ * tuple; median and MAD are re-derived from the sketch (not the data) in
+ * updateModel.
+ */
+public class StreamingMAD extends OutlierDetector implements IncrementalOutlierDetector {
+    private static final Logger log = LoggerFactory.getLogger(StreamingMAD.class);
+
+    // https://en.wikipedia.org/wiki/Median_absolute_deviation#Relation_to_standard_deviation
+    private final double MAD_TO_ZSCORE_COEFFICIENT = 1.4826;
+
+    private final double decayRate;
+    private TDigest digest = new TDigest();
+
+    // replaced whole by updateModel, so scorers on other threads always
+    // see a consistent median and MAD
+    private static class Model {
+        private final double median;
+        private final double MAD;
+
+        Model(double median, double MAD) {
+            this.median = median;
+            this.MAD = MAD;
+        }
+    }
+
+    private volatile Model model = new Model(0, 0);
+
+    public StreamingMAD(double decayRate) {
+        this.decayRate = decayRate;
+    }
+
+    @Override
+    public void train(List<Datum> data) {
+        assert (data.get(0).getMetrics().getDimension() == 1);
+
+        digest = new TDigest();
+        for(Datum d : data) {
+            digest.add(d.getMetrics().getEntry(0));
+        }
+        updateModel();
+    }
+
+    @Override
+    public void train(DatumBatch data) {
+        assert (data.getNumMetrics() == 1);
+
+        digest = new TDigest();
+        double[] values = data.getMetricColumn(0);
+        for(int i = 0; i < data.size(); ++i) {
+            digest.add(values[i]);
+        }
+        updateModel();
+    }
+
+    @Override
+    public void update(Datum datum) {
+        digest.add(datum.getMetrics().getEntry(0));
+    }
+
+    @Override
+    public void advancePeriod() {
+        digest.decay(1 - decayRate);
+    }
+
+    @Override
+    public void updateModel() {
+        double median = digest.quantile(.5);
+        double MAD = digest.deviations(median).quantile(.5);
+        model = new Model(median, MAD);
+        log.trace("updated! median is {}, MAD is {}", median, MAD);
+    }
+
+    @Override
+    public double score(Datum datum) {
+        Model m = model;
+        double point = datum.getMetrics().getEntry(0);
+        return Math.abs(point - m.median) / (m.MAD);
+    }
+
+    @Override
+    public double score(DatumBatch data, int row) {
+        Model m = model;
+        return Math.abs(data.getMetric(row, 0) - m.median) / (m.MAD);
+    }
+
+    @Override
+    public double getZScoreEquivalent(double zscore) {
+        double ret = zscore/MAD_TO_ZSCORE_COEFFICIENT;
+        log.trace("setting zscore of {} threshold to {}", zscore, ret);
+        return ret;
+    }
+}
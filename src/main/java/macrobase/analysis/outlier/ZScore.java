@@ -3,6 +3,7 @@ package macrobase.analysis.outlier;
 import java.util.List;
 
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 
 public class ZScore extends OutlierDetector {
     private double mean;
@@ -25,12 +26,35 @@ public class ZScore extends OutlierDetector {
         std = Math.sqrt(ss / data.size());
     }
 
+    @Override
+    public void train(DatumBatch data) {
+        assert(data.getNumMetrics() == 1);
+        double[] values = data.getMetricColumn(0);
+
+        double sum = 0;
+        for(int i = 0; i < data.size(); ++i) {
+            sum += values[i];
+        }
+        mean = sum/data.size();
+
+        double ss = 0;
+        for(int i = 0; i < data.size(); ++i) {
+            ss += Math.pow(mean - values[i], 2);
+        }
+        std = Math.sqrt(ss / data.size());
+    }
+
     @Override
     public double score(Datum datum) {
         double point = datum.getMetrics().getEntry(0);
         return Math.abs(point-mean)/std;
     }
 
+    @Override
+    public double score(DatumBatch data, int row) {
+        return Math.abs(data.getMetric(row, 0)-mean)/std;
+    }
+
     @Override
     public double getZScoreEquivalent(double zscore) {
         // z-score is identity since we're literally calculating the z-score
@@ -1,13 +1,17 @@
 package macrobase.analysis.periodic;
 
 import macrobase.MacroBase;
+import macrobase.analysis.outlier.IncrementalOutlierDetector;
 import macrobase.analysis.outlier.OutlierDetector;
 import macrobase.analysis.sample.ExponentiallyBiasedAChao;
+import macrobase.analysis.sample.ExponentiallyBiasedDoubleAChao;
 import macrobase.analysis.summary.itemset.ExponentiallyDecayingEmergingItemsets;
 import macrobase.datamodel.Datum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import com.codahale.metrics.Timer;
 import static com.codahale.metrics.MetricRegistry.name;
 
@@ -21,17 +25,21 @@ class AnalysisDecayProcedure {
     private static final Timer itemsetTimer = MacroBase.metrics.timer(name(AnalysisDecayProcedure.class, "itemsetAdvanceTime"));
 
     public static void updatePeriod(ExponentiallyBiasedAChao<Datum> inputReservoir,
-                                    ExponentiallyBiasedAChao<Double> scoreReservoir,
-                                    OutlierDetector detector,
+                                    ExponentiallyBiasedDoubleAChao scoreReservoir,
+                                    AtomicReference<OutlierDetector> detector,
                                     ExponentiallyDecayingEmergingItemsets itemsets) {
         log.trace("Updating analysis.");
 
         Timer.Context rt = reservoirTimer.time();
         inputReservoir.advancePeriod();
 
+        OutlierDetector current = detector.get();
+        if(current instanceof IncrementalOutlierDetector) {
+            ((IncrementalOutlierDetector) current).advancePeriod();
+        }
+
         if(scoreReservoir != null) {
             scoreReservoir.advancePeriod();
-            detector.clearScorePercentileCache();
         }
         rt.stop();
 
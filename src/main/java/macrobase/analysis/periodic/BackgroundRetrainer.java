@@ -0,0 +1,73 @@
+package macrobase.analysis.periodic;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import macrobase.MacroBase;
+import macrobase.analysis.outlier.OutlierDetector;
+import macrobase.datamodel.Datum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Trains replacement detectors on an executor, so that the tuple path
+ * only pays for copying the input reservoir. Scoring continues against
+ * the previous detector until the retrained one is published.
+ *
+ * At most one retrain is in flight: a retrain requested while the
+ * previous one is still running is skipped (the next period will use a
+ * fresher sample anyway).
+ */
+public class BackgroundRetrainer {
+    private static final Logger log = LoggerFactory.getLogger(BackgroundRetrainer.class);
+
+    private static final Timer trainingTimer = MacroBase.metrics.timer(name(BackgroundRetrainer.class, "modelTrainingTime"));
+    private static final Meter skippedRetrains = MacroBase.metrics.meter(name(BackgroundRetrainer.class, "skippedRetrains"));
+
+    private final ExecutorService executor;
+    private Future<?> pending = null;
+
+    public BackgroundRetrainer(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    void retrain(List<Datum> sample,
+                 AtomicReference<OutlierDetector> detector,
+                 Supplier<OutlierDetector> detectorFactory) {
+        if(pending != null) {
+            if(!pending.isDone()) {
+                log.debug("Previous retrain still running; skipping this one");
+                skippedRetrains.mark();
+                return;
+            }
+            checkFailure(pending);
+        }
+
+        pending = executor.submit(() -> {
+            Timer.Context rt = trainingTimer.time();
+            OutlierDetector retrained = detectorFactory.get();
+            retrained.train(sample);
+            detector.set(retrained);
+            rt.stop();
+        });
+    }
+
+    // a failed retrain leaves the previous detector in place
+    private static void checkFailure(Future<?> done) {
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Background retrain failed; still scoring with the previous model", e.getCause());
+        }
+    }
+}
@@ -2,6 +2,7 @@ package macrobase.analysis.periodic;
 
 import com.codahale.metrics.Timer;
 import macrobase.MacroBase;
+import macrobase.analysis.outlier.IncrementalOutlierDetector;
 import macrobase.analysis.outlier.OutlierDetector;
 import macrobase.analysis.sample.ExponentiallyBiasedAChao;
 import macrobase.analysis.summary.itemset.ExponentiallyDecayingEmergingItemsets;
@@ -9,6 +10,11 @@ import macrobase.datamodel.Datum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
 import static com.codahale.metrics.MetricRegistry.name;
 
 /**
@@ -21,16 +27,36 @@ class RetrainingProcedure {
     private static final Timer itemsetTimer = MacroBase.metrics.timer(name(RetrainingProcedure.class, "itemsetAdvanceTime"));
 
     public static void updatePeriod(ExponentiallyBiasedAChao<Datum> inputReservoir,
-                                    OutlierDetector detector,
-                                    ExponentiallyDecayingEmergingItemsets itemsets) {
+                                    AtomicReference<OutlierDetector> detector,
+                                    Supplier<OutlierDetector> detectorFactory,
+                                    ExponentiallyDecayingEmergingItemsets itemsets,
+                                    BackgroundRetrainer backgroundRetrainer) {
         log.trace("Updating models.");
 
         Timer.Context it = itemsetTimer.time();
         itemsets.updateModelsNoDecay();
         it.stop();
 
-        Timer.Context rt = trainingTimer.time();
-        detector.train(inputReservoir.getReservoir());
-        rt.stop();
+        OutlierDetector current = detector.get();
+        if(current instanceof IncrementalOutlierDetector) {
+            Timer.Context rt = trainingTimer.time();
+            ((IncrementalOutlierDetector) current).updateModel();
+            rt.stop();
+            return;
+        }
+
+        // the reservoir is a live view that later inserts overwrite
+        List<Datum> sample = new ArrayList<>(inputReservoir.getReservoir());
+        if(backgroundRetrainer != null) {
+            backgroundRetrainer.retrain(sample, detector, detectorFactory);
+        } else {
+            // train a fresh detector and publish it whole, so that
+            // concurrent scorers never see a half-trained model
+            Timer.Context rt = trainingTimer.time();
+            OutlierDetector retrained = detectorFactory.get();
+            retrained.train(sample);
+            detector.set(retrained);
+            rt.stop();
+        }
     }
 }
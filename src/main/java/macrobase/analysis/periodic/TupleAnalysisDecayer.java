@@ -2,23 +2,26 @@ package macrobase.analysis.periodic;
 
 import macrobase.analysis.outlier.OutlierDetector;
 import macrobase.analysis.sample.ExponentiallyBiasedAChao;
+import macrobase.analysis.sample.ExponentiallyBiasedDoubleAChao;
 import macrobase.analysis.summary.itemset.ExponentiallyDecayingEmergingItemsets;
 import macrobase.datamodel.Datum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 public class TupleAnalysisDecayer extends AbstractTupleBasedPeriodicUpdater {
     private static final Logger log = LoggerFactory.getLogger(TupleAnalysisDecayer.class);
 
     ExponentiallyBiasedAChao<Datum> inputReservoir;
-    ExponentiallyBiasedAChao<Double> scoreReservoir;
-    OutlierDetector detector;
+    ExponentiallyBiasedDoubleAChao scoreReservoir;
+    AtomicReference<OutlierDetector> detector;
     ExponentiallyDecayingEmergingItemsets itemsets;
 
     public TupleAnalysisDecayer(long tuplesPerPeriod,
                                 ExponentiallyBiasedAChao<Datum> inputReservoir,
-                                ExponentiallyBiasedAChao<Double> scoreReservoir,
-                                OutlierDetector detector,
+                                ExponentiallyBiasedDoubleAChao scoreReservoir,
+                                AtomicReference<OutlierDetector> detector,
                                 ExponentiallyDecayingEmergingItemsets itemsets) {
         super(tuplesPerPeriod);
         this.inputReservoir = inputReservoir;
@@ -7,6 +7,9 @@ import macrobase.datamodel.Datum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
 /**
  * Created by pbailis on 12/24/15.
  */
@@ -14,18 +17,25 @@ public class TupleBasedRetrainer extends AbstractTupleBasedPeriodicUpdater {
     private static final Logger log = LoggerFactory.getLogger(TupleBasedRetrainer.class);
 
     final ExponentiallyBiasedAChao<Datum> inputReservoir;
-    final OutlierDetector detector;
+    final AtomicReference<OutlierDetector> detector;
+    final Supplier<OutlierDetector> detectorFactory;
     final ExponentiallyDecayingEmergingItemsets itemsets;
+    // null to retrain inline
+    final BackgroundRetrainer backgroundRetrainer;
 
 
     public TupleBasedRetrainer(long tuplesPerPeriod,
                                ExponentiallyBiasedAChao<Datum> inputReservoir,
-                               OutlierDetector detector,
-                               ExponentiallyDecayingEmergingItemsets itemsets) {
+                               AtomicReference<OutlierDetector> detector,
+                               Supplier<OutlierDetector> detectorFactory,
+                               ExponentiallyDecayingEmergingItemsets itemsets,
+                               BackgroundRetrainer backgroundRetrainer) {
         super(tuplesPerPeriod);
         this.inputReservoir = inputReservoir;
         this.detector = detector;
+        this.detectorFactory = detectorFactory;
         this.itemsets = itemsets;
+        this.backgroundRetrainer = backgroundRetrainer;
     }
 
     @Override
@@ -34,6 +44,8 @@ public class TupleBasedRetrainer extends AbstractTupleBasedPeriodicUpdater {
 
         RetrainingProcedure.updatePeriod(inputReservoir,
                                          detector,
-                                         itemsets);
+                                         detectorFactory,
+                                         itemsets,
+                                         backgroundRetrainer);
     }
 }
@@ -2,24 +2,27 @@ package macrobase.analysis.periodic;
 
 import macrobase.analysis.outlier.OutlierDetector;
 import macrobase.analysis.sample.ExponentiallyBiasedAChao;
+import macrobase.analysis.sample.ExponentiallyBiasedDoubleAChao;
 import macrobase.analysis.summary.itemset.ExponentiallyDecayingEmergingItemsets;
 import macrobase.datamodel.Datum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 public class WallClockAnalysisDecayer extends AbstractWallClockPeriodicUpdater {
     private static final Logger log = LoggerFactory.getLogger(WallClockAnalysisDecayer.class);
 
     ExponentiallyBiasedAChao<Datum> inputReservoir;
-    ExponentiallyBiasedAChao<Double> scoreReservoir;
-    OutlierDetector detector;
+    ExponentiallyBiasedDoubleAChao scoreReservoir;
+    AtomicReference<OutlierDetector> detector;
     ExponentiallyDecayingEmergingItemsets itemsets;
 
     public WallClockAnalysisDecayer(long startTime,
                                     long periodMs,
                                     ExponentiallyBiasedAChao<Datum> inputReservoir,
-                                    ExponentiallyBiasedAChao<Double> scoreReservoir,
-                                    OutlierDetector detector,
+                                    ExponentiallyBiasedDoubleAChao scoreReservoir,
+                                    AtomicReference<OutlierDetector> detector,
                                     ExponentiallyDecayingEmergingItemsets itemsets) {
         super(startTime, periodMs);
         this.inputReservoir = inputReservoir;
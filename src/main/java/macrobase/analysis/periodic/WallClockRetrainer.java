@@ -7,22 +7,32 @@ import macrobase.datamodel.Datum;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
 public class WallClockRetrainer extends AbstractWallClockPeriodicUpdater {
     private static final Logger log = LoggerFactory.getLogger(WallClockRetrainer.class);
 
     final ExponentiallyBiasedAChao<Datum> inputReservoir;
-    final OutlierDetector detector;
+    final AtomicReference<OutlierDetector> detector;
+    final Supplier<OutlierDetector> detectorFactory;
     final ExponentiallyDecayingEmergingItemsets itemsets;
+    // null to retrain inline
+    final BackgroundRetrainer backgroundRetrainer;
 
     public WallClockRetrainer(long startTime,
                               long periodMs,
                               ExponentiallyBiasedAChao<Datum> inputReservoir,
-                              OutlierDetector detector,
-                              ExponentiallyDecayingEmergingItemsets itemsets) {
+                              AtomicReference<OutlierDetector> detector,
+                              Supplier<OutlierDetector> detectorFactory,
+                              ExponentiallyDecayingEmergingItemsets itemsets,
+                              BackgroundRetrainer backgroundRetrainer) {
         super(startTime, periodMs);
         this.inputReservoir = inputReservoir;
         this.detector = detector;
+        this.detectorFactory = detectorFactory;
         this.itemsets = itemsets;
+        this.backgroundRetrainer = backgroundRetrainer;
     }
 
     @Override
@@ -31,6 +41,8 @@ public class WallClockRetrainer extends AbstractWallClockPeriodicUpdater {
 
         RetrainingProcedure.updatePeriod(inputReservoir,
                                          detector,
-                                         itemsets);
+                                         detectorFactory,
+                                         itemsets,
+                                         backgroundRetrainer);
     }
 }
@@ -1,26 +1,42 @@
 package macrobase.analysis.sample;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Random;
 
 /**
  * See http://arxiv.org/pdf/1012.0256.pdf
+ *
+ * The reservoir is a fixed-size array; a replacement overwrites a random
+ * slot in place.
  */
 class AChao<T> {
-    private final List<T> reservoir;
+    private final Object[] reservoir;
+    private int size = 0;
     double runningCount;
-    private final int reservoirCapacity;
-    private final Random random = new Random();
+    private final Random random;
 
     public AChao(int capacity) {
-        reservoir = new ArrayList<>();
-        reservoirCapacity = capacity;
+        this(capacity, new Random());
     }
 
+    public AChao(int capacity, long seed) {
+        this(capacity, new Random(seed));
+    }
+
+    private AChao(int capacity, Random random) {
+        reservoir = new Object[capacity];
+        this.random = random;
+    }
+
+    /**
+     * A view of the current sample; inserts after this call may overwrite
+     * its elements.
+     */
+    @SuppressWarnings("unchecked")
     public final List<T> getReservoir() {
-        return reservoir;
+        return (List<T>) Arrays.asList(reservoir).subList(0, size);
     }
 
     public void insertBatch(Collection<T> elements, double weight) {
@@ -40,11 +56,10 @@ class AChao<T> {
     public void insert(T ele, double weight) {
         runningCount += weight;
 
-        if(reservoir.size() < reservoirCapacity) {
-            reservoir.add(ele);
+        if(size < reservoir.length) {
+            reservoir[size++] = ele;
         } else if(random.nextDouble() < weight/ runningCount) {
-            reservoir.remove(random.nextInt(reservoirCapacity));
-            reservoir.add(ele);
+            reservoir[random.nextInt(reservoir.length)] = ele;
         }
     }
 }
@@ -0,0 +1,92 @@
+package macrobase.analysis.sample;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * AChao specialized to primitive doubles (e.g., scores), so the sample
+ * holds no boxed values.
+ */
+class DoubleAChao {
+    private final double[] reservoir;
+    private int size = 0;
+    double runningCount;
+    private final Random random;
+    private PercentileTracker percentileTracker = null;
+
+    public DoubleAChao(int capacity) {
+        this(capacity, new Random());
+    }
+
+    public DoubleAChao(int capacity, long seed) {
+        this(capacity, new Random(seed));
+    }
+
+    private DoubleAChao(int capacity, Random random) {
+        reservoir = new double[capacity];
+        this.random = random;
+    }
+
+    // a copy of the current sample
+    public final double[] getReservoir() {
+        return Arrays.copyOf(reservoir, size);
+    }
+
+    public final int size() {
+        return size;
+    }
+
+    /**
+     * Maintain the threshold for the top percentile (e.g., .01 for the
+     * top 1%) of the sample from now on; see getPercentileThreshold.
+     */
+    public void trackPercentile(double percentile) {
+        percentileTracker = new PercentileTracker(reservoir.length, percentile);
+        for(int i = 0; i < size; ++i) {
+            percentileTracker.set(i, reservoir[i]);
+        }
+    }
+
+    /**
+     * The smallest sampled value in the tracked top percentile (positive
+     * infinity if it holds none), in O(1).
+     */
+    public double getPercentileThreshold() {
+        return percentileTracker.getThreshold();
+    }
+
+    /**
+     * Whether value falls in the tracked top percentile. A value equal to
+     * the threshold is an outlier only if no sampled copy of it is an
+     * inlier, as OutlierDetector.classifyBatchByPercentile splits ties in
+     * favor of the inliers. O(1).
+     */
+    public boolean isPercentileOutlier(double value) {
+        return percentileTracker.isOutlier(value);
+    }
+
+    protected void setRunningCount(double newCount) {
+        runningCount = newCount;
+    }
+
+    protected double getRunningCount() {
+        return runningCount;
+    }
+
+    public void insert(double ele, double weight) {
+        runningCount += weight;
+
+        if(size < reservoir.length) {
+            set(size++, ele);
+        } else if(random.nextDouble() < weight/ runningCount) {
+            set(random.nextInt(reservoir.length), ele);
+        }
+    }
+
+    private void set(int slot, double ele) {
+        reservoir[slot] = ele;
+        if(percentileTracker != null) {
+            percentileTracker.set(slot, ele);
+        }
+    }
+}
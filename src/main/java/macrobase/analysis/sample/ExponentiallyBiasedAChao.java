@@ -13,6 +13,12 @@ public class ExponentiallyBiasedAChao<T> extends AChao<T> {
         this.bias = bias;
     }
 
+    public ExponentiallyBiasedAChao(int capacity, double bias, long seed) {
+        super(capacity, seed);
+        assert(bias > 0 && bias < 1);
+        this.bias = bias;
+    }
+
     public void advancePeriod() {
         advancePeriod(1);
     }
@@ -0,0 +1,31 @@
+package macrobase.analysis.sample;
+
+/**
+ * ExponentiallyBiasedAChao over primitive doubles.
+ */
+public class ExponentiallyBiasedDoubleAChao extends DoubleAChao {
+    private final double bias;
+    public ExponentiallyBiasedDoubleAChao(int capacity, double bias) {
+        super(capacity);
+        assert(bias > 0 && bias < 1);
+        this.bias = bias;
+    }
+
+    public ExponentiallyBiasedDoubleAChao(int capacity, double bias, long seed) {
+        super(capacity, seed);
+        assert(bias > 0 && bias < 1);
+        this.bias = bias;
+    }
+
+    public void advancePeriod() {
+        advancePeriod(1);
+    }
+
+    public void advancePeriod(int numPeriods) {
+        runningCount *= Math.pow(1-bias, numPeriods);
+    }
+
+    public void insert(double ele) {
+        insert(ele, 1);
+    }
+}
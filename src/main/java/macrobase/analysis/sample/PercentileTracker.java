@@ -0,0 +1,169 @@
+package macrobase.analysis.sample;
+
+/**
+ * Maintains the score at the start of the top percentile of a reservoir's
+ * slots as they are filled and overwritten, in O(log capacity) per change.
+ *
+ * The slots are split between a max-heap of the (int)(n - n * percentile)
+ * smallest values and a min-heap of the rest; the threshold is the top of
+ * the latter. Both heaps are indexed by slot so that an overwritten value
+ * can be removed wherever it sits. This is the same split that
+ * OutlierDetector.classifyBatchByPercentile makes over a batch, which
+ * fills the inliers with the earliest of any values tied at the split.
+ */
+class PercentileTracker {
+    private final double percentile;
+    private final double[] values;
+    // position of each slot in its heap
+    private final int[] positions;
+    private final boolean[] inLower;
+    private int count = 0;
+
+    private final IndexedHeap lower;
+    private final IndexedHeap upper;
+
+    private class IndexedHeap {
+        private final int[] slots;
+        private final boolean isMax;
+        private int size = 0;
+
+        IndexedHeap(int capacity, boolean isMax) {
+            slots = new int[capacity];
+            this.isMax = isMax;
+        }
+
+        // true if heap position i belongs above position j
+        private boolean above(int i, int j) {
+            int cmp = Double.compare(values[slots[i]], values[slots[j]]);
+            return isMax ? cmp > 0 : cmp < 0;
+        }
+
+        private void swap(int i, int j) {
+            int tmp = slots[i];
+            slots[i] = slots[j];
+            slots[j] = tmp;
+            positions[slots[i]] = i;
+            positions[slots[j]] = j;
+        }
+
+        private void siftUp(int i) {
+            while(i > 0) {
+                int parent = (i - 1) / 2;
+                if(!above(i, parent)) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while(true) {
+                int top = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if(left < size && above(left, top)) {
+                    top = left;
+                }
+                if(right < size && above(right, top)) {
+                    top = right;
+                }
+                if(top == i) {
+                    return;
+                }
+                swap(i, top);
+                i = top;
+            }
+        }
+
+        double peekValue() {
+            return values[slots[0]];
+        }
+
+        void add(int slot) {
+            slots[size] = slot;
+            positions[slot] = size;
+            inLower[slot] = this == lower;
+            size++;
+            siftUp(size - 1);
+        }
+
+        void remove(int slot) {
+            int i = positions[slot];
+            size--;
+            if(i != size) {
+                swap(i, size);
+                siftDown(i);
+                siftUp(i);
+            }
+        }
+
+        int poll() {
+            int slot = slots[0];
+            remove(slot);
+            return slot;
+        }
+    }
+
+    PercentileTracker(int capacity, double percentile) {
+        this.percentile = percentile;
+        values = new double[capacity];
+        positions = new int[capacity];
+        inLower = new boolean[capacity];
+        lower = new IndexedHeap(capacity, true);
+        upper = new IndexedHeap(capacity, false);
+    }
+
+    /**
+     * Sets slot to value; slots are filled in order (slot == the number
+     * set so far) and may then be overwritten.
+     */
+    void set(int slot, double value) {
+        assert (slot <= count);
+        if(slot == count) {
+            count++;
+        } else if(inLower[slot]) {
+            lower.remove(slot);
+        } else {
+            upper.remove(slot);
+        }
+
+        values[slot] = value;
+        if(upper.size > 0 && Double.compare(value, upper.peekValue()) >= 0) {
+            upper.add(slot);
+        } else {
+            lower.add(slot);
+        }
+
+        int lowerSize = (int) (count - count * percentile);
+        while(lower.size > lowerSize) {
+            upper.add(lower.poll());
+        }
+        while(lower.size < lowerSize) {
+            lower.add(upper.poll());
+        }
+    }
+
+    /**
+     * The smallest value in the top percentile of the slots (positive
+     * infinity if that is empty).
+     */
+    double getThreshold() {
+        return upper.size == 0 ? Double.POSITIVE_INFINITY : upper.peekValue();
+    }
+
+    /**
+     * Whether a new value is classified with the top percentile: if it is
+     * above the threshold, or equal to it while every slot holding that
+     * value is in the top percentile. When ties straddle the split, the
+     * value is an inlier, just as the batch split puts ties in the
+     * inliers first.
+     */
+    boolean isOutlier(double value) {
+        if(upper.size == 0) {
+            return false;
+        }
+        int cmp = Double.compare(value, upper.peekValue());
+        return cmp > 0 || (cmp == 0 && (lower.size == 0 || Double.compare(lower.peekValue(), value) < 0));
+    }
+}
@@ -0,0 +1,170 @@
+package macrobase.analysis.sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An ExponentiallyBiasedAChao that many threads may insert into at once.
+ *
+ * Each inserting thread owns a shard (an ExponentiallyBiasedAChao with its
+ * own capacity-sized sample and running weight), so inserts only take
+ * their shard's uncontended lock. advancePeriod() bumps a global period
+ * counter that shards catch up to lazily on their next insert or read.
+ *
+ * getReservoir() merges the shards into one weighted sample without
+ * replacement (Efraimidis and Spirakis, "Weighted random sampling with a
+ * reservoir", 2006): each element of a shard stands for an equal part of
+ * the shard's running weight and gets the key u^(1 / weight); the
+ * capacity largest keys win.
+ *
+ * With a seed, shard i's sampler is seeded with seed + i, and the merge
+ * keys with a scrambled seed so they don't repeat any shard's sequence;
+ * runs that create shards in the same order (e.g., single-threaded
+ * tests) are deterministic.
+ *
+ * Nothing in the analyzers uses this yet: StreamingAnalyzer's pipeline
+ * samples its input on the single summarizer thread, where an
+ * ExponentiallyBiasedAChao needs no sharding.
+ */
+public class ShardedAChao<T> {
+    private final int capacity;
+    private final double bias;
+    private final long seed;
+    // keys for merging shards
+    private final Random random;
+
+    private final AtomicInteger period = new AtomicInteger();
+    private final AtomicInteger numShards = new AtomicInteger();
+    private final List<Shard<T>> shards = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Shard<T>> localShard = ThreadLocal.withInitial(this::newShard);
+
+    private static class Shard<T> {
+        private final ExponentiallyBiasedAChao<T> sample;
+        private int period;
+
+        Shard(ExponentiallyBiasedAChao<T> sample, int period) {
+            this.sample = sample;
+            this.period = period;
+        }
+
+        // currentPeriod may be stale (read before a concurrent snapshot
+        // caught this shard up further); a shard never decays backwards
+        private void catchUp(int currentPeriod) {
+            if(currentPeriod > period) {
+                sample.advancePeriod(currentPeriod - period);
+                period = currentPeriod;
+            }
+        }
+
+        synchronized void insert(T ele, double weight, int currentPeriod) {
+            catchUp(currentPeriod);
+            sample.insert(ele, weight);
+        }
+
+        // copies the sample into out and returns its running weight
+        synchronized double snapshot(List<T> out, int currentPeriod) {
+            catchUp(currentPeriod);
+            out.addAll(sample.getReservoir());
+            return sample.getRunningCount();
+        }
+    }
+
+    private static class Candidate<T> {
+        private final T element;
+        private final double logKey;
+
+        Candidate(T element, double logKey) {
+            this.element = element;
+            this.logKey = logKey;
+        }
+    }
+
+    public ShardedAChao(int capacity, double bias) {
+        this(capacity, bias, new Random().nextLong());
+    }
+
+    public ShardedAChao(int capacity, double bias, long seed) {
+        assert(bias > 0 && bias < 1);
+        this.capacity = capacity;
+        this.bias = bias;
+        this.random = new Random(mix(seed));
+        this.seed = seed;
+    }
+
+    // the SplitMix64 finalizer, so nearby seeds map far apart
+    private static long mix(long seed) {
+        long z = seed + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private Shard<T> newShard() {
+        long shardSeed = seed + numShards.getAndIncrement();
+        Shard<T> shard = new Shard<>(new ExponentiallyBiasedAChao<>(capacity, bias, shardSeed), period.get());
+        shards.add(shard);
+        return shard;
+    }
+
+    public void insert(T ele) {
+        insert(ele, 1);
+    }
+
+    public void insert(T ele, double weight) {
+        localShard.get().insert(ele, weight, period.get());
+    }
+
+    public void advancePeriod() {
+        advancePeriod(1);
+    }
+
+    public void advancePeriod(int numPeriods) {
+        period.addAndGet(numPeriods);
+    }
+
+    public int getNumShards() {
+        return shards.size();
+    }
+
+    /**
+     * A weighted sample of at most capacity elements across all shards.
+     * Concurrent inserts may or may not be reflected.
+     */
+    public synchronized List<T> getReservoir() {
+        int currentPeriod = period.get();
+
+        // the capacity largest keys, smallest on top
+        PriorityQueue<Candidate<T>> heap = new PriorityQueue<>(capacity + 1,
+                                                               (a, b) -> Double.compare(a.logKey, b.logKey));
+        List<T> shardSample = new ArrayList<>(capacity);
+        for(Shard<T> shard : shards) {
+            shardSample.clear();
+            double shardWeight = shard.snapshot(shardSample, currentPeriod);
+            if(shardSample.isEmpty() || shardWeight <= 0) {
+                continue;
+            }
+
+            double elementWeight = shardWeight / shardSample.size();
+            for(T ele : shardSample) {
+                // log(u^(1/w)), with u in (0, 1]
+                double logKey = Math.log(1 - random.nextDouble()) / elementWeight;
+                if(heap.size() < capacity) {
+                    heap.add(new Candidate<>(ele, logKey));
+                } else if(logKey > heap.peek().logKey) {
+                    heap.poll();
+                    heap.add(new Candidate<>(ele, logKey));
+                }
+            }
+        }
+
+        List<T> ret = new ArrayList<>(heap.size());
+        for(Candidate<T> c : heap) {
+            ret.add(c.element);
+        }
+        return ret;
+    }
+}
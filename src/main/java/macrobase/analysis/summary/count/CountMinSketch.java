@@ -0,0 +1,121 @@
+package macrobase.analysis.summary.count;
+
+/**
+ * Count-Min sketch (Cormode and Muthukrishnan) over depth rows of width
+ * counters, with conservative update (Estan and Varghese): an observe
+ * only raises the counters that are below the new estimate.
+ *
+ * getCount never underestimates. With width = ceil(e / epsilon) and
+ * depth = ceil(ln(1 / delta)), it overestimates by more than epsilon *
+ * totalCount with probability at most delta. Memory is fixed at
+ * width * depth doubles whatever the number of distinct keys, and the
+ * sketch can't list the keys it has seen.
+ *
+ * Keys may be items or 64-bit hashes of anything else (e.g. itemsets);
+ * rows are indexed by double hashing one mix of the key. Decay is lazy,
+ * as in DirectCountWithThreshold: counts are stored divided by scale.
+ */
+public class CountMinSketch implements ItemCountSummary {
+    private static final double RENORMALIZE_BELOW = 1e-100;
+
+    private final int width;
+    private final int depth;
+    // row-major
+    private final double[] counters;
+
+    private double totalCount = 0;
+    // true counts are stored counts * scale
+    private double scale = 1;
+
+    public CountMinSketch(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        counters = new double[width * depth];
+    }
+
+    /**
+     * A sketch whose overestimates exceed epsilon * totalCount with
+     * probability at most delta.
+     */
+    public static CountMinSketch withError(double epsilon, double delta) {
+        return new CountMinSketch((int) Math.ceil(Math.E / epsilon),
+                                  (int) Math.ceil(Math.log(1 / delta)));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    // 64-bit finalizer from MurmurHash3
+    public static long mix(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    // the key's counter in row, given the two halves of its mix
+    private int index(int row, int h1, int h2) {
+        return row * width + Math.floorMod(h1 + row * h2, width);
+    }
+
+    // the smallest of the key's (stored) counters
+    private double minCounter(int h1, int h2) {
+        double min = counters[index(0, h1, h2)];
+        for(int row = 1; row < depth; ++row) {
+            min = Math.min(min, counters[index(row, h1, h2)]);
+        }
+        return min;
+    }
+
+    public void observeKey(long key, double count) {
+        totalCount += count;
+
+        long h = mix(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        double estimate = minCounter(h1, h2) + count / scale;
+        for(int row = 0; row < depth; ++row) {
+            int i = index(row, h1, h2);
+            if(counters[i] < estimate) {
+                counters[i] = estimate;
+            }
+        }
+    }
+
+    public double getKeyCount(long key) {
+        long h = mix(key);
+        return minCounter((int) h, (int) (h >>> 32)) * scale;
+    }
+
+    @Override
+    public void observe(Integer item, double count) {
+        observeKey(item, count);
+    }
+
+    @Override
+    public double getCount(int item) {
+        return getKeyCount(item);
+    }
+
+    @Override
+    public double getTotalCount() {
+        return totalCount;
+    }
+
+    @Override
+    public void multiplyAllCounts(Double by) {
+        totalCount *= by;
+        scale *= by;
+
+        if(scale < RENORMALIZE_BELOW) {
+            for(int i = 0; i < counters.length; ++i) {
+                counters[i] *= scale;
+            }
+            scale = 1;
+        }
+    }
+}
@@ -1,47 +1,70 @@
 package macrobase.analysis.summary.count;
 
+import macrobase.util.collections.IntDoubleHashMap;
+
 import java.util.HashMap;
-import java.util.Map;
 
+/**
+ * Exact counts of the items holding at least threshold*totalCount of the
+ * (decayed) total.
+ *
+ * Decay is lazy: counts are stored divided by scale, multiplyAllCounts
+ * only shrinks scale, and new counts are added divided by it. Items at
+ * or below threshold*totalCount are pruned whenever the map has doubled
+ * since the last prune, so pruning is amortized O(1) per observe and at
+ * most about 2/threshold items are held.
+ */
 public class DirectCountWithThreshold extends ApproximateCount {
-    private HashMap<Integer, Double> counts = new HashMap<>();
+    private static final double RENORMALIZE_BELOW = 1e-100;
+    private static final int MIN_PRUNE_SIZE = 1024;
+
+    private final IntDoubleHashMap counts = new IntDoubleHashMap();
     private double totalCount = 0;
     private final double threshold;
 
+    // true counts are stored counts * scale
+    private double scale = 1;
+    private int pruneAt = MIN_PRUNE_SIZE;
+
     // threshold == totalCount*threshold;
     public DirectCountWithThreshold(double threshold) {
         this.threshold = threshold;
     }
 
-
     @Override
     public void multiplyAllCounts(Double by) {
         totalCount *= by;
+        scale *= by;
 
-        double filterCount = threshold*totalCount;
-
-        for(Map.Entry<Integer, Double> entry : counts.entrySet()) {
-            // TODO: THRESHOLD THIS
-            double newValue = entry.getValue()*by;
-
-            if(newValue > filterCount) {
-                counts.put(entry.getKey(), newValue);
-            }
+        if(scale < RENORMALIZE_BELOW) {
+            counts.multiplyAll(scale);
+            scale = 1;
         }
     }
 
+    private void prune() {
+        double filterCount = threshold*totalCount/scale;
+        counts.retainIf((item, count) -> count > filterCount);
+        pruneAt = Math.max(MIN_PRUNE_SIZE, counts.size() * 2);
+    }
+
     public HashMap<Integer, Double> getCounts() {
-        return counts;
+        HashMap<Integer, Double> ret = new HashMap<>(counts.size() * 2);
+        counts.forEach((item, count) -> ret.put(item, count * scale));
+        return ret;
+    }
+
+    public int getNumTrackedItems() {
+        return counts.size();
     }
 
     @Override
     public void observe(Integer item, double count) {
         totalCount += count;
-        Double curValue = counts.get(item);
-        if (curValue == null) {
-            counts.put(item, count);
-        } else {
-            counts.put(item, curValue + count);
+        counts.addTo(item, count / scale);
+
+        if(counts.size() >= pruneAt) {
+            prune();
         }
     }
 
@@ -52,11 +75,6 @@ public class DirectCountWithThreshold extends ApproximateCount {
 
     @Override
     public double getCount(int item) {
-        Double ret = counts.get(item);
-        if(ret == null) {
-            return 0;
-        }
-
-        return ret;
+        return counts.get(item, 0) * scale;
     }
 }
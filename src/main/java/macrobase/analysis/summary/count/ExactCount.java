@@ -1,25 +1,40 @@
 package macrobase.analysis.summary.count;
 
 import macrobase.analysis.summary.result.DatumWithScore;
+import macrobase.datamodel.DatumBatch;
+import macrobase.util.collections.IntDoubleHashMap;
 
 import java.util.HashMap;
 import java.util.List;
 
 public class ExactCount {
-    private HashMap<Integer, Double> counts = new HashMap<>();
+    private final IntDoubleHashMap counts = new IntDoubleHashMap();
 
     public HashMap<Integer, Double> getCounts() {
-        return counts;
+        HashMap<Integer, Double> ret = new HashMap<>(counts.size() * 2);
+        counts.forEach(ret::put);
+        return ret;
+    }
+
+    public double getCount(int item) {
+        return counts.get(item, 0);
     }
 
     public ExactCount count(List<DatumWithScore> data) {
         for(DatumWithScore d : data) {
             for(int i : d.getDatum().getAttributes()) {
-                Double curVal = counts.get(i);
-                if(curVal == null) {
-                    curVal = 0.;
-                }
-                counts.put(i, curVal+1);
+                counts.addTo(i, 1);
+            }
+        }
+
+        return this;
+    }
+
+    public ExactCount count(DatumBatch data) {
+        for(int c = 0; c < data.getNumAttributes(); ++c) {
+            int[] column = data.getAttributeColumn(c);
+            for(int r = 0; r < data.size(); ++r) {
+                counts.addTo(column[r], 1);
             }
         }
 
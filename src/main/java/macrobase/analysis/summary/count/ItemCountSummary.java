@@ -0,0 +1,28 @@
+package macrobase.analysis.summary.count;
+
+import java.util.Collection;
+
+/**
+ * Decayed, possibly approximate counts of items that can be looked up one
+ * at a time but not necessarily listed. Enough to summarize inliers,
+ * whose counts are only ever read for items already found in outliers.
+ */
+public interface ItemCountSummary {
+    void observe(Integer item, double count);
+
+    double getCount(int item);
+
+    double getTotalCount();
+
+    void multiplyAllCounts(Double by);
+
+    default void observe(Integer item) {
+        observe(item, 1);
+    }
+
+    default void observe(Collection<Integer> items) {
+        for(Integer item : items) {
+            observe(item, 1.0);
+        }
+    }
+}
@@ -1,81 +1,63 @@
 package macrobase.analysis.summary.count;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
+import java.util.stream.IntStream;
+
+import macrobase.util.collections.IntDoubleHashMap;
+import macrobase.util.collections.IntIntHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * SpaceSaving (Metwally et al.) with at most maxSize counters: an
+ * untracked item takes over the smallest counter and inherits its count.
+ *
+ * Counters live in parallel arrays indexed by slot, with an item to slot
+ * index and a 4-ary min-heap of counts, so observe is a hash lookup plus
+ * O(log maxSize) heap repair for any weight, and allocates nothing. (A
+ * replacement sifts past the counters tied at the minimum; the 4-ary
+ * heap keeps that walk short.) Decay is lazy, as in
+ * DirectCountWithThreshold: counts are stored divided by scale.
+ *
+ * A tracked item's count overestimates its true (decayed) count by at
+ * most getMinCount(), which is at most totalCount / maxSize, and every
+ * item whose true count exceeds that is tracked. Both hold for the
+ * combined stream after merge. getCount of an untracked item is that
+ * bound, so, like CountMinSketch, getCount never underestimates.
+ */
 public class SpaceSaving extends ApproximateCount {
     private static final Logger log = LoggerFactory.getLogger(SpaceSaving.class);
 
-    Map<Integer, CounterToken> digest = new HashMap<>();
-    CounterGroup groupHead = null;
-    private final int maxSize;
-    private double totalCount;
-
-    @SuppressWarnings("unused")
-	private void sanityCheck() {
-        CounterGroup curGroup = groupHead;
-
-        HashSet<CounterToken> allTokens = new HashSet<>();
-        HashSet<Integer> allItems = new HashSet<>();
-
-        HashMap<CounterToken, CounterGroup> tokenMap = new HashMap<>();
-
-
-        HashSet<CounterGroup> allGroups = new HashSet<>();
-
-        while(curGroup != null) {
-            if(allGroups.contains(curGroup)) {
-                log.error("Duplicate group detected!");
-            }
-
-            allGroups.add(curGroup);
-
-            CounterToken token = curGroup.tokenList;
-            CounterToken prevToken = null;
-
-            HashSet<CounterToken> groupTokens = new HashSet<>();
-            HashSet<Integer> groupItems = new HashSet<>();
-            while(token != null) {
-                if(token.prev != prevToken) {
-                    log.error("Broken backward pointer!");
-                }
-
-                if(token.group != curGroup) {
-                    log.error("Wrong group!");
-                }
-
-                if(groupTokens.contains(token)) {
-                    log.error("Token ring detected!");
-                }
-                else if(allTokens.contains(token)) {
-                    log.error("Reused token detected!");
-                }
-
-                if(groupItems.contains(token.item)) {
-                    log.error("Item ring detected!");
-                }
-                else if(allItems.contains(token.item)) {
-                    log.error("Reused item detected!");
-                }
+    private static final double RENORMALIZE_BELOW = 1e-100;
+    private static final int NONE = -1;
+    private static final int ARITY = 4;
 
+    private final int maxSize;
 
-                groupTokens.add(token);
-                allTokens.add(token);
-                tokenMap.put(token, curGroup);
+    // per slot
+    private final int[] slotItems;
+    private final int[] heapPositions;
+    private int size = 0;
 
-                groupItems.add(token.item);
-                allItems.add(token.item);
+    // a 4-ary min-heap of (count, slot); counts are kept in heap order so
+    // that sifting doesn't chase slot indexes
+    private final double[] heapCounts;
+    private final int[] heapSlots;
+    private final IntIntHashMap itemSlots;
 
-                prevToken = token;
-                token = token.next;
-            }
+    private double totalCount = 0;
+    // true counts are stored counts * scale
+    private double scale = 1;
 
-            curGroup = curGroup.next;
-        }
+    public SpaceSaving(int maxSize) {
+        this.maxSize = maxSize;
+        slotItems = new int[maxSize];
+        heapPositions = new int[maxSize];
+        heapCounts = new double[maxSize];
+        heapSlots = new int[maxSize];
+        itemSlots = new IntIntHashMap(maxSize);
     }
 
     @Override
@@ -83,338 +65,172 @@ public class SpaceSaving extends ApproximateCount {
         return totalCount;
     }
 
-    private class CounterGroup {
-        private double differential;
-
-        private CounterGroup prev;
-        private CounterGroup next;
-        private CounterToken tokenList;
-
-        private CounterGroup(double differential,
-                             CounterGroup prev,
-                             CounterGroup next,
-                             CounterToken counterToken) {
-            this.differential = differential;
-            this.prev = prev;
-            this.next = next;
-            this.tokenList = counterToken;
-            counterToken.group = this;
-        }
-
-        public void removeIfEmpty() {
-            if(tokenList != null) {
-                return;
-            }
-
-            if(next != null) {
-                next.prev = prev;
-                next.differential += differential;
-            }
-
-            if(prev != null) {
-                prev.next = next;
-            } else {
-                assert(groupHead == this);
-                groupHead = next;
-            }
-        }
-
-        public void addCounter(CounterToken t) {
-            assert(tokenList != null);
-
-            if(tokenList == null) {
-              tokenList = t;
-            } else {
-              t.next = tokenList;
-              t.next.prev = t;
-              t.prev = null;
-
-              tokenList = t;
-            }
-
-            t.group = this;
-        }
-
-        // returns replaced token
-        public CounterToken replaceOneToken(CounterToken newToken) {
-            assert(tokenList != null);
-            CounterToken replaced = tokenList;
-            tokenList = newToken;
-            newToken.prev = null;
-            newToken.next = replaced.next;
-
-            if(newToken.next != null) {
-                newToken.next.prev = newToken;
-            }
-
-            newToken.group = this;
-            return replaced;
-        }
-
-        public void removeToken(CounterToken token) {
-
-
-            if(token.prev != null) {
-                token.prev.next = token.next;
-            }
-
-            if(token.next != null) {
-                // head of list
-                if(tokenList == token) {
-                    assert(token.prev == null);
-                    tokenList = token.next;
-                    token.next.prev = null;
-                } else {
-                    token.next.prev = token.prev;
-                }
-            } else {
-                if(tokenList == token) {
-                    tokenList = null;
-                }
-            }
-
-            token.next = null;
-            token.prev = null;
-            token.group = null;
-
-            removeIfEmpty();
-        }
+    @Override
+    public double getCount(int item) {
+        int slot = itemSlots.get(item, NONE);
+        return slot == NONE ? getMinCount() : heapCounts[heapPositions[slot]] * scale;
     }
 
-    private class CounterToken {
-        private int item;
-        private CounterGroup group;
-        private CounterToken prev;
-        private CounterToken next;
-
-        private CounterToken(int item, CounterGroup group, CounterToken next) {
-            this.item = item;
-            this.group = group;
-            this.next = next;
-        }
+    /**
+     * The most any tracked count can overestimate by (0 until the summary
+     * is full).
+     */
+    public double getMinCount() {
+        return size < maxSize ? 0 : heapCounts[0] * scale;
     }
 
     @Override
-    public double getCount(int item) {
-        CounterToken token = digest.get(item);
-
-        if(token == null) {
-            return 0;
-        }
-
-        CounterGroup group = token.group;
+    public void observe(Integer item, double count) {
+        observeItem(item, count);
+    }
 
-        double ret = 0L;
-        while(group != null) {
-            ret += group.differential;
-            group = group.prev;
+    public void observe(int[] items, double[] weights) {
+        assert (items.length == weights.length);
+        for(int i = 0; i < items.length; ++i) {
+            observeItem(items[i], weights[i]);
         }
-
-        return ret;
     }
 
-    private void incrementCounter(CounterToken token,
-                                  Double by) {
-        CounterGroup currentGroup = token.group;
-
-        // we are at the end of the groups (highest count)
-        if(currentGroup.next == null) {
-
-            // we are the only matching token
-            if(currentGroup.tokenList == token && token.next == null) {
-                currentGroup.differential += by;
-            }
-            // insert a new token at the end
-            else {
-                currentGroup.removeToken(token);
-                CounterGroup newGroup = new CounterGroup(by,
-                                                         currentGroup,
-                                                         null,
-                                                         token);
-                currentGroup.next = newGroup;
+    private void observeItem(int item, double count) {
+        totalCount += count;
+        double stored = count / scale;
 
-            }
+        int slot = itemSlots.get(item, NONE);
+        if(slot != NONE) {
+            int i = heapPositions[slot];
+            siftDown(i, slot, heapCounts[i] + stored);
+            return;
         }
-        // perfect match on next group
-        else if(currentGroup.next.differential == by) {
-            currentGroup.removeToken(token);
-            currentGroup.next.addCounter(token);
-        }
-        // we are between current and current.next; insert a new token
-        else if(currentGroup.next != null && currentGroup.next.differential > by) {
-            currentGroup.next.differential -= by;
-
-            // if this is the only token in the list, just increment
-            if(currentGroup.tokenList == token && token.next == null) {
-                currentGroup.differential += by;
-            } else {
-                currentGroup.removeToken(token);
 
-                CounterGroup newGroup = new CounterGroup(by,
-                                                         currentGroup,
-                                                         currentGroup.next,
-                                                         token);
-                currentGroup.next.prev = newGroup;
-                currentGroup.next = newGroup;
-            }
+        if(size < maxSize) {
+            slot = size++;
+            slotItems[slot] = item;
+            itemSlots.put(item, slot);
+            siftUp(slot, slot, stored);
+            return;
         }
-        // we fall after the next token in line
-        else if(currentGroup.next != null && currentGroup.next.differential < by) {
-            currentGroup.removeToken(token);
 
-            insertNextMatchingGroup(currentGroup, token, by);
-        }
+        // take over the smallest counter
+        slot = heapSlots[0];
+        itemSlots.remove(slotItems[slot]);
+        slotItems[slot] = item;
+        itemSlots.put(item, slot);
+        siftDown(0, slot, heapCounts[0] + stored);
     }
 
-    private void insertNextMatchingGroup(CounterGroup currentGroup,
-                                         CounterToken token,
-                                         double remaining) {
-        // find the group we want to insert ourselves after
-        CounterGroup gteGroup = currentGroup.next;
-        CounterGroup prevGroup = null;
-        while(remaining > 0 && gteGroup != null) {
-            remaining -= gteGroup.differential;
-            prevGroup = gteGroup;
-            gteGroup = gteGroup.next;
-            assert(gteGroup == null || gteGroup.prev == prevGroup);
-        }
-
-        // we should be the new tail node
-        if(remaining > 0) {
-            CounterGroup newGroup = new CounterGroup(remaining,
-                                                     prevGroup,
-                                                     null,
-                                                     token);
-            if(prevGroup != null) {
-                prevGroup.next = newGroup;
-            }
-        }
-        // we matched exactly!
-        else if(remaining == 0) {
-            prevGroup.addCounter(token);
-        }
-        // insert ourselves before the last node we visited
-        else {
-            double delta = -remaining;
-            // insert ourselves before...
-            prevGroup.differential -= delta;
-            CounterGroup newGroup = new CounterGroup(delta,
-                                                     prevGroup.prev,
-                                                     prevGroup,
-                                                     token);
-
-            if(prevGroup == groupHead) {
-                groupHead = newGroup;
-                prevGroup.prev = newGroup;
-            } else {
-                prevGroup.prev.next = newGroup;
-                prevGroup.prev = newGroup;
-            }
+    @Override
+    public Map<Integer, Double> getCounts() {
+        Map<Integer, Double> ret = new HashMap<>(size * 2);
+        for(int i = 0; i < size; ++i) {
+            ret.put(slotItems[heapSlots[i]], heapCounts[i] * scale);
         }
+        return ret;
     }
 
     @Override
-    public void observe(Integer item, double count) {
-        //sanityCheck();
-        totalCount += count;
-
-        CounterToken token = digest.get(item);
-        if(token == null) {
-            token = new CounterToken(item, null, null);
-            digest.put(item, token);
+    public void multiplyAllCounts(Double by) {
+        totalCount *= by;
+        scale *= by;
 
-            if(digest.size() <= maxSize) {
-                // first group in the bunch
-                if (groupHead == null) {
-                    groupHead = new CounterGroup(count,
-                                                 null,
-                                                 null,
-                                                 token);
-                }
-                // insert the token at the appropriate position
-                else {
-                    if(count == groupHead.differential) {
-                        groupHead.addCounter(token);
-                    }
-                    // insert ourselves at the head of the list
-                    else if (count < groupHead.differential){
-                        CounterGroup newGroup = new CounterGroup(count,
-                                                                 null,
-                                                                 groupHead,
-                                                                 token);
-                        groupHead.differential -= count;
-                        groupHead.prev = newGroup;
-                        groupHead = newGroup;
-                    }
-                    else {
-                        insertNextMatchingGroup(groupHead, token, count);
-                    }
-                }
-            } else {
-                CounterToken replaced = groupHead.replaceOneToken(token);
-                incrementCounter(token, 1.0);
-                digest.remove(replaced.item);
+        if(scale < RENORMALIZE_BELOW) {
+            for(int i = 0; i < size; ++i) {
+                heapCounts[i] *= scale;
             }
-        } else {
-            incrementCounter(token, count);
+            scale = 1;
         }
-        //sanityCheck();
     }
 
-    @Override
-    public Map<Integer, Double> getCounts() {
-        Map<Integer, Double> ret = new HashMap<>();
+    /**
+     * Folds other's counters into this summary, which then summarizes both
+     * streams (Cafaro et al.'s parallel SpaceSaving merge): an item missing
+     * from a full summary is credited with that summary's minimum count,
+     * and the maxSize largest combined counts are kept. other is left as is.
+     */
+    public void merge(SpaceSaving other) {
+        double minCount = getMinCount();
+
+        IntDoubleHashMap combined = new IntDoubleHashMap(size + other.size);
+        for(int slot = 0; slot < size; ++slot) {
+            int item = slotItems[slot];
+            combined.put(item, getCount(item) + other.getCount(item));
+        }
+        for(int otherSlot = 0; otherSlot < other.size; ++otherSlot) {
+            int item = other.slotItems[otherSlot];
+            if(!itemSlots.containsKey(item)) {
+                combined.put(item, other.getCount(item) + minCount);
+            }
+        }
+
+        int[] kept = IntStream.of(combined.keys())
+                .boxed()
+                .sorted((a, b) -> Double.compare(combined.get(b, 0), combined.get(a, 0)))
+                .limit(maxSize)
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        itemSlots.clear();
+        scale = 1;
+        size = kept.length;
+        // kept is in descending order, so reversed it is already a heap
+        for(int slot = 0; slot < size; ++slot) {
+            int i = size - 1 - slot;
+            slotItems[slot] = kept[slot];
+            itemSlots.put(kept[slot], slot);
+            heapCounts[i] = combined.get(kept[slot], 0);
+            heapSlots[i] = slot;
+            heapPositions[slot] = i;
+        }
+
+        totalCount += other.totalCount;
+    }
 
-        CounterGroup curGroup = groupHead;
-        Double currentCount = 0.;
+    private void place(int i, int slot, double count) {
+        heapCounts[i] = count;
+        heapSlots[i] = slot;
+        heapPositions[slot] = i;
+    }
 
-        while(curGroup != null) {
-            currentCount += curGroup.differential;
-            CounterToken curToken = curGroup.tokenList;
-            while(curToken != null) {
-                ret.put(curToken.item, currentCount);
-                curToken = curToken.next;
+    // moves the hole at i up to where (slot, count) belongs and fills it
+    private void siftUp(int i, int slot, double count) {
+        while(i > 0) {
+            int parent = (i - 1) / ARITY;
+            if(heapCounts[parent] <= count) {
+                break;
             }
-
-            curGroup = curGroup.next;
+            place(i, heapSlots[parent], heapCounts[parent]);
+            i = parent;
         }
-
-        return ret;
+        place(i, slot, count);
     }
 
-    @Override
-    public void multiplyAllCounts(Double by) {
-        totalCount *= by;
-
-        CounterGroup curGroup = groupHead;
-        while(curGroup != null) {
-            curGroup.differential *= by;
-            curGroup = curGroup.next;
+    // moves the hole at i down to where (slot, count) belongs and fills it
+    private void siftDown(int i, int slot, double count) {
+        while(true) {
+            int first = ARITY * i + 1;
+            if(first >= size) {
+                break;
+            }
+            int child = first;
+            int last = Math.min(first + ARITY, size);
+            for(int c = first + 1; c < last; ++c) {
+                if(heapCounts[c] < heapCounts[child]) {
+                    child = c;
+                }
+            }
+            if(heapCounts[child] >= count) {
+                break;
+            }
+            place(i, heapSlots[child], heapCounts[child]);
+            i = child;
         }
+        place(i, slot, count);
     }
 
     public void debugPrint() {
-        double currentCount = 0;
-        CounterGroup curGroup = groupHead;
         log.debug("****");
-        while(curGroup != null) {
-            currentCount += curGroup.differential;
-            log.debug("at group {}", curGroup);
-            log.debug("differential is {}, so far is {}",
-                      curGroup.differential,
-                      currentCount);
-            CounterToken token = curGroup.tokenList;
-            while(token != null) {
-                log.debug("\t counter: {}", token.item);
-                token = token.next;
-            }
-            curGroup = curGroup.next;
-            log.debug("");
+        for(int i = 0; i < size; ++i) {
+            log.debug("\t counter: {}, count: {}", slotItems[heapSlots[i]], heapCounts[i] * scale);
         }
         log.debug("****");
     }
-
-    public SpaceSaving(int maxSize) {
-        this.maxSize = maxSize;
-    }
 }
@@ -2,6 +2,8 @@ package macrobase.analysis.summary.itemset;
 
 import com.google.common.collect.Lists;
 import macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import macrobase.util.collections.IntHashSet;
+import macrobase.util.collections.IntIntHashMap;
 
 import java.util.*;
 
@@ -25,7 +27,7 @@ public class Apriori {
 
     private List<ItemsetWithCount> filterItems(List<Set<Integer>> transactions,
                                                Set<Set<Integer>> candidates,
-                                               Set<Integer> infrequentIndex,
+                                               IntHashSet infrequentIndex,
                                                int minSupportCount) {
         List<ItemsetWithCount> ret = new ArrayList<>();
 
@@ -73,20 +75,20 @@ public class Apriori {
         int minSupportCount = (int)(support*transactions.size());
 
         // first round candidates are all items; just count them
-        HashMap<Integer, Integer> itemCounts = new HashMap<>();
+        IntIntHashMap itemCounts = new IntIntHashMap();
         for(Set<Integer> t : transactions) {
             for(int i : t) {
-                itemCounts.compute(i, (k, v) -> v == null ? 1 : v+1);
+                itemCounts.addTo(i, 1);
             }
         }
 
-        for(Map.Entry<Integer, Integer> e : itemCounts.entrySet()) {
-            if(e.getValue() >= minSupportCount) {
+        itemCounts.forEach((item, count) -> {
+            if(count >= minSupportCount) {
                 HashSet<Integer> singletonSet = new HashSet<>();
-                singletonSet.add(e.getKey());
-                ret.add(new ItemsetWithCount(singletonSet, e.getValue()));
+                singletonSet.add(item);
+                ret.add(new ItemsetWithCount(singletonSet, count));
             }
-        }
+        });
 
         if(ret.size() == 0) {
             return ret;
@@ -122,7 +124,7 @@ public class Apriori {
         }
 
         List<ItemsetWithCount> prevRoundItemsets = pairItemsets;
-        Set<Integer> infrequentIndex = new HashSet<>();
+        IntHashSet infrequentIndex = new IntHashSet();
 
         int newSize = 3;
         while(true) {
@@ -0,0 +1,386 @@
+package macrobase.analysis.summary.itemset;
+
+import macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import macrobase.util.collections.IntDoubleHashMap;
+import macrobase.util.collections.IntIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * FPTree laid out as parallel primitive arrays indexed by node id instead
+ * of one object (plus a child list) per node. Items are stored by rank
+ * (0 is the most frequent), so transactions are ranked once into an
+ * int[] and sorted without comparator lookups, and insertion walks the
+ * tree iteratively. Mines the same itemsets as FPGrowth.FPTree.
+ *
+ * Children are found through one open-addressing table of node ids keyed
+ * by (parent, rank) rather than by scanning a sibling list: on wide trees
+ * most inserts miss, and a full scan of a linked sibling chain is a
+ * serial pointer chase.
+ */
+class ArrayFPTree {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final int MULTIPLE = -2;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // per rank
+    private final int[] rankToItem;
+    private final double[] rankCounts;
+    // last node created for each rank; older ones follow via nextLink
+    private final int[] headers;
+    private final IntIntHashMap itemToRank;
+
+    // per node
+    private int[] nodeRank = new int[INITIAL_CAPACITY];
+    private double[] nodeCount = new double[INITIAL_CAPACITY];
+    private int[] parent = new int[INITIAL_CAPACITY];
+    // NONE for leaves, MULTIPLE if the node branches; used to find single paths
+    private int[] onlyChild = new int[INITIAL_CAPACITY];
+    private int[] nextLink = new int[INITIAL_CAPACITY];
+    private int numNodes = 0;
+
+    // child ids, hashed by (parent, rank); kept at most half full
+    private int[] childTable = newChildTable(INITIAL_CAPACITY * 2);
+
+    // reused when ranking transactions
+    private int[] scratch = new int[16];
+
+    /**
+     * Keeps the items of itemCounts with at least countRequiredForSupport;
+     * ties are ranked by item id so that tree shape is deterministic.
+     */
+    ArrayFPTree(IntDoubleHashMap itemCounts, double countRequiredForSupport) {
+        rankToItem = IntStream.of(itemCounts.keys())
+                .filter(item -> itemCounts.get(item, 0) >= countRequiredForSupport)
+                .boxed()
+                .sorted((a, b) -> {
+                    double countA = itemCounts.get(a, 0);
+                    double countB = itemCounts.get(b, 0);
+                    return countA == countB ? Integer.compare(a, b) : -Double.compare(countA, countB);
+                })
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        int numRanks = rankToItem.length;
+        rankCounts = new double[numRanks];
+        headers = new int[numRanks];
+        itemToRank = new IntIntHashMap(numRanks);
+        Arrays.fill(headers, NONE);
+        for(int rank = 0; rank < numRanks; ++rank) {
+            rankCounts[rank] = itemCounts.get(rankToItem[rank], 0);
+            itemToRank.put(rankToItem[rank], rank);
+        }
+
+        newNode(NONE, NONE);
+    }
+
+    static ArrayFPTree fromTransactions(List<Set<Integer>> transactions, int countRequiredForSupport) {
+        IntDoubleHashMap itemCounts = new IntDoubleHashMap();
+        for(Set<Integer> t : transactions) {
+            for(int item : t) {
+                itemCounts.addTo(item, 1);
+            }
+        }
+        return new ArrayFPTree(itemCounts, countRequiredForSupport);
+    }
+
+    int getNumNodes() {
+        return numNodes;
+    }
+
+    private int newNode(int rank, int parentNode) {
+        if(numNodes == nodeRank.length) {
+            int capacity = numNodes + (numNodes >> 1);
+            nodeRank = Arrays.copyOf(nodeRank, capacity);
+            nodeCount = Arrays.copyOf(nodeCount, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            onlyChild = Arrays.copyOf(onlyChild, capacity);
+            nextLink = Arrays.copyOf(nextLink, capacity);
+        }
+
+        int node = numNodes++;
+        nodeRank[node] = rank;
+        nodeCount[node] = 0;
+        parent[node] = parentNode;
+        onlyChild[node] = NONE;
+        nextLink[node] = NONE;
+        return node;
+    }
+
+    private static int[] newChildTable(int size) {
+        int[] ret = new int[size];
+        Arrays.fill(ret, NONE);
+        return ret;
+    }
+
+    private static int hash(int parentNode, int rank) {
+        int h = parentNode * 0x9E3779B9 + rank;
+        return h ^ (h >>> 16);
+    }
+
+    // slot holding the child, or the empty slot where it would be inserted
+    private int findSlot(int parentNode, int rank) {
+        int mask = childTable.length - 1;
+        int slot = hash(parentNode, rank) & mask;
+        while(true) {
+            int child = childTable[slot];
+            if(child == NONE || (parent[child] == parentNode && nodeRank[child] == rank)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void growChildTable() {
+        childTable = newChildTable(childTable.length * 2);
+        for(int node = ROOT + 1; node < numNodes; ++node) {
+            childTable[findSlot(parent[node], nodeRank[node])] = node;
+        }
+    }
+
+    // writes the ranks of the frequent items to scratch, sorted; returns how many
+    private int rank(Collection<Integer> items) {
+        if(scratch.length < items.size()) {
+            scratch = new int[items.size()];
+        }
+
+        int n = 0;
+        for(int item : items) {
+            int rank = itemToRank.get(item, NONE);
+            if(rank != NONE) {
+                scratch[n++] = rank;
+            }
+        }
+        Arrays.sort(scratch, 0, n);
+        return n;
+    }
+
+    private void insertRanked(int[] ranks, int n, double count) {
+        int node = ROOT;
+        nodeCount[ROOT] += count;
+        for(int i = 0; i < n; ++i) {
+            int rank = ranks[i];
+
+            int slot = findSlot(node, rank);
+            int child = childTable[slot];
+            if(child == NONE) {
+                child = newNode(rank, node);
+                childTable[slot] = child;
+                onlyChild[node] = onlyChild[node] == NONE ? child : MULTIPLE;
+                nextLink[child] = headers[rank];
+                headers[rank] = child;
+
+                if(numNodes * 2 > childTable.length) {
+                    growChildTable();
+                }
+            }
+
+            nodeCount[child] += count;
+            node = child;
+        }
+    }
+
+    void insert(Collection<Integer> items, double count) {
+        int n = rank(items);
+        if(n > 0) {
+            insertRanked(scratch, n, count);
+        }
+    }
+
+    void insertTransactions(List<Set<Integer>> transactions) {
+        for(Set<Integer> t : transactions) {
+            insert(t, 1);
+        }
+    }
+
+    List<ItemsetWithCount> mineItemsets(int supportCountRequired) {
+        return mineItemsets(supportCountRequired, null);
+    }
+
+    // if pool is non-null, the header items are mined in parallel on it
+    List<ItemsetWithCount> mineItemsets(int supportCountRequired, ForkJoinPool pool) {
+        // mine single-path itemsets first
+        List<Integer> singlePathNodes = new ArrayList<>();
+        int nodeOfBranching = NONE;
+        int curNode = ROOT;
+        while(true) {
+            int child = onlyChild[curNode];
+            if(child == MULTIPLE) {
+                nodeOfBranching = curNode;
+                break;
+            }
+
+            if(curNode != ROOT) {
+                singlePathNodes.add(curNode);
+            }
+
+            if(child == NONE) {
+                break;
+            }
+            curNode = child;
+        }
+
+        List<ItemsetWithCount> singlePathItemsets = new ArrayList<>();
+        int pathLength = singlePathNodes.size();
+        if(pathLength >= Long.SIZE - 1) {
+            throw new IllegalStateException("Single path too long to enumerate: " + pathLength);
+        }
+        for(long subset = 1; subset < (1L << pathLength); ++subset) {
+            Set<Integer> items = new HashSet<>();
+            double minSupportInSubset = -1;
+            for(int i = 0; i < pathLength; ++i) {
+                if((subset & (1L << i)) != 0) {
+                    int node = singlePathNodes.get(i);
+                    items.add(rankToItem[nodeRank[node]]);
+                    if(minSupportInSubset == -1 || nodeCount[node] < minSupportInSubset) {
+                        minSupportInSubset = nodeCount[node];
+                    }
+                }
+            }
+            singlePathItemsets.add(new ItemsetWithCount(items, minSupportInSubset));
+        }
+
+        // the entire tree was a single path...
+        if(nodeOfBranching == NONE) {
+            return singlePathItemsets;
+        }
+
+        // items on the single path have all been mined above
+        boolean[] alreadyMined = new boolean[rankToItem.length];
+        for(int node : singlePathNodes) {
+            alreadyMined[nodeRank[node]] = true;
+        }
+
+        final int stopNode = parent[nodeOfBranching];
+        int[] headerRanks = IntStream.range(0, rankToItem.length)
+                .filter(r -> headers[r] != NONE && !alreadyMined[r])
+                .toArray();
+
+        List<ItemsetWithCount> branchingItemsets;
+        if(pool == null) {
+            branchingItemsets = new ArrayList<>();
+            for(int rank : headerRanks) {
+                branchingItemsets.addAll(mineHeader(rank, stopNode, supportCountRequired));
+            }
+        } else {
+            try {
+                branchingItemsets = pool.submit(
+                        () -> Arrays.stream(headerRanks).parallel()
+                                .mapToObj(r -> mineHeader(r, stopNode, supportCountRequired))
+                                .flatMap(List::stream)
+                                .collect(Collectors.toList())).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        if(singlePathItemsets.isEmpty()) {
+            return branchingItemsets;
+        }
+
+        // take the cross product of the mined itemsets
+        List<ItemsetWithCount> ret = new ArrayList<>();
+
+        ret.addAll(singlePathItemsets);
+        ret.addAll(branchingItemsets);
+
+        for(ItemsetWithCount i : singlePathItemsets) {
+            for(ItemsetWithCount j : branchingItemsets) {
+                Set<Integer> combinedItems = new HashSet<>();
+                combinedItems.addAll(i.getItems());
+                combinedItems.addAll(j.getItems());
+
+                ret.add(new ItemsetWithCount(combinedItems, Math.min(i.getCount(), j.getCount())));
+            }
+        }
+
+        return ret;
+    }
+
+    // mines the itemsets ending in rank's item, including the singleton;
+    // conditional patterns are cut off at stopNode (above the branching node)
+    private List<ItemsetWithCount> mineHeader(int rank, int stopNode, int supportCountRequired) {
+        List<ItemsetWithCount> ret = new ArrayList<>();
+        int item = rankToItem[rank];
+
+        Set<Integer> singleton = new HashSet<>();
+        singleton.add(item);
+        ret.add(new ItemsetWithCount(singleton, rankCounts[rank]));
+
+        // conditional pattern base, as item paths and their leaf supports
+        List<int[]> patterns = new ArrayList<>();
+        List<Double> patternCounts = new ArrayList<>();
+        IntDoubleHashMap itemCounts = new IntDoubleHashMap();
+        for(int node = headers[rank]; node != NONE; node = nextLink[node]) {
+            final double leafSupport = nodeCount[node];
+
+            int length = 0;
+            for(int walk = parent[node]; walk != stopNode && walk != ROOT; walk = parent[walk]) {
+                ++length;
+            }
+            if(length == 0) {
+                continue;
+            }
+
+            int[] pattern = new int[length];
+            int i = 0;
+            for(int walk = parent[node]; walk != stopNode && walk != ROOT; walk = parent[walk]) {
+                int walkItem = rankToItem[nodeRank[walk]];
+                pattern[i++] = walkItem;
+                itemCounts.addTo(walkItem, leafSupport);
+            }
+            patterns.add(pattern);
+            patternCounts.add(leafSupport);
+        }
+
+        if(patterns.isEmpty()) {
+            return ret;
+        }
+
+        // build and mine the conditional tree
+        ArrayFPTree conditionalTree = new ArrayFPTree(itemCounts, supportCountRequired);
+        for(int p = 0; p < patterns.size(); ++p) {
+            int n = conditionalTree.rank(patterns.get(p));
+            if(n > 0) {
+                conditionalTree.insertRanked(conditionalTree.scratch, n, patternCounts.get(p));
+            }
+        }
+
+        for(ItemsetWithCount is : conditionalTree.mineItemsets(supportCountRequired)) {
+            is.getItems().add(item);
+            ret.add(is);
+        }
+
+        return ret;
+    }
+
+    // ranks raw item ids without boxing them into a collection
+    private int rank(int[] items) {
+        if(scratch.length < items.length) {
+            scratch = new int[items.length];
+        }
+
+        int n = 0;
+        for(int item : items) {
+            int rank = itemToRank.get(item, NONE);
+            if(rank != NONE) {
+                scratch[n++] = rank;
+            }
+        }
+        Arrays.sort(scratch, 0, n);
+        return n;
+    }
+}
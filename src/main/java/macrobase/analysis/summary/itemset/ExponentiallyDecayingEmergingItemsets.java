@@ -11,7 +11,10 @@ import java.util.Set;
 
 import macrobase.MacroBase;
 import macrobase.analysis.summary.count.ApproximateCount;
+import macrobase.analysis.summary.count.CountMinSketch;
 import macrobase.analysis.summary.count.DirectCountWithThreshold;
+import macrobase.analysis.summary.count.ItemCountSummary;
+import macrobase.analysis.summary.count.SpaceSaving;
 import macrobase.analysis.summary.itemset.result.ItemsetResult;
 import macrobase.analysis.summary.itemset.result.ItemsetWithCount;
 import macrobase.datamodel.Datum;
@@ -35,34 +38,62 @@ public class ExponentiallyDecayingEmergingItemsets {
             name(ExponentiallyDecayingEmergingItemsets.class, "outlierDecayTime"));
 
 
-    @SuppressWarnings("unused")
-	private final int sizeOutlierSS;
-    @SuppressWarnings("unused")
-	private final int sizeInlierSS;
+    private static final double INLIER_SKETCH_EPSILON_FRACTION = .1;
+    private static final double INLIER_SKETCH_DELTA = .01;
+
+    private final int sizeOutlierSS;
+    private final int sizeInlierSS;
 
     private final double minSupportOutlier;
     private final double minRatio;
     private final double exponentialDecayRate;
 
     private final ApproximateCount outlierCountSummary;
-    private final ApproximateCount inlierCountSummary;
+    // only looked up, never listed, so a sketch will do
+    private final ItemCountSummary inlierCountSummary;
     private final StreamingFPGrowth outlierPatternSummary;
-    private final StreamingFPGrowth inlierPatternSummary = new StreamingFPGrowth(0);
+    // exactly one of these tracks inlier itemsets
+    private final StreamingFPGrowth inlierPatternSummary;
+    private final InlierItemsetSketch inlierItemsetSketch;
 
     public ExponentiallyDecayingEmergingItemsets(int inlierSummarySize,
                                                  int outlierSummarySize,
                                                  double minSupportOutlier,
                                                  double minRatio,
-                                                 double exponentialDecayRate) {
+                                                 double exponentialDecayRate,
+                                                 boolean useSpaceSaving,
+                                                 boolean useInlierSketch) {
         this.sizeOutlierSS = outlierSummarySize;
         this.sizeInlierSS = inlierSummarySize;
         this.minSupportOutlier = minSupportOutlier;
         this.minRatio = minRatio;
         this.exponentialDecayRate = exponentialDecayRate;
 
-        outlierCountSummary = new DirectCountWithThreshold(minSupportOutlier/.1); //new SpaceSaving(sizeOutlierSS);
-        inlierCountSummary = new DirectCountWithThreshold(minSupportOutlier/.1);//new SpaceSaving(sizeInlierSS);
+        if(useSpaceSaving) {
+            // fixed-size summaries; see SpaceSaving for the error bounds
+            outlierCountSummary = new SpaceSaving(sizeOutlierSS);
+        } else {
+            // prune items well below the support an outlier itemset needs
+            outlierCountSummary = new DirectCountWithThreshold(minSupportOutlier*.1);
+        }
         outlierPatternSummary = new StreamingFPGrowth(minSupportOutlier);
+
+        if(useInlierSketch) {
+            // fixed memory whatever the inlier volume: inlier counts (and so
+            // ratio denominators) overestimate by at most
+            // INLIER_SKETCH_EPSILON_FRACTION*minSupportOutlier of the inlier
+            // total, except with probability INLIER_SKETCH_DELTA
+            double epsilon = minSupportOutlier*INLIER_SKETCH_EPSILON_FRACTION;
+            inlierCountSummary = CountMinSketch.withError(epsilon, INLIER_SKETCH_DELTA);
+            inlierItemsetSketch = new InlierItemsetSketch(CountMinSketch.withError(epsilon, INLIER_SKETCH_DELTA));
+            inlierPatternSummary = null;
+        } else {
+            inlierCountSummary = useSpaceSaving ?
+                                 new SpaceSaving(sizeInlierSS) :
+                                 new DirectCountWithThreshold(minSupportOutlier*.1);
+            inlierPatternSummary = new StreamingFPGrowth(0);
+            inlierItemsetSketch = null;
+        }
     }
 
     Map<Integer, Double> interestingItems;
@@ -80,7 +111,6 @@ public class ExponentiallyDecayingEmergingItemsets {
 
     private void updateModels(boolean doDecay) {
         Map<Integer, Double> outlierCounts = this.outlierCountSummary.getCounts();
-        Map<Integer, Double> inlierCounts = this.inlierCountSummary.getCounts();
 
         int supportCountRequired = (int)(this.outlierCountSummary.getTotalCount()*minSupportOutlier);
 
@@ -91,9 +121,9 @@ public class ExponentiallyDecayingEmergingItemsets {
                 continue;
             }
 
-            Double inlierCount = inlierCounts.get(outlierCount.getKey());
+            double inlierCount = inlierCountSummary.getCount(outlierCount.getKey());
 
-            if(inlierCount != null &&
+            if(inlierCount > 0 &&
                ((outlierCount.getValue()/ this.outlierCountSummary.getTotalCount() /
                  (inlierCount/ this.inlierCountSummary.getTotalCount()) < minRatio))) {
                 continue;
@@ -109,7 +139,12 @@ public class ExponentiallyDecayingEmergingItemsets {
         ot.stop();
 
         Timer.Context it = inlierDecayTime.time();
-        inlierPatternSummary.decayAndResetFrequentItems(interestingItems, doDecay ? exponentialDecayRate : 0);
+        if(inlierPatternSummary != null) {
+            inlierPatternSummary.decayAndResetFrequentItems(interestingItems, doDecay ? exponentialDecayRate : 0);
+        } else {
+            inlierItemsetSketch.decayAndResetInterestingItems(interestingItems.keySet(),
+                                                              doDecay ? exponentialDecayRate : 0);
+        }
         it.stop();
     }
 
@@ -125,10 +160,13 @@ public class ExponentiallyDecayingEmergingItemsets {
         outlierPatternSummary.insertTransactionStreamingFalseNegative(outlier.getAttributes());
     }
 
-    // TODO: don't track *all* inliers
     public void markInlier(Datum inlier) {
         inlierCountSummary.observe(inlier.getAttributes());
-        inlierPatternSummary.insertTransactionStreamingFalseNegative(inlier.getAttributes());
+        if(inlierPatternSummary != null) {
+            inlierPatternSummary.insertTransactionStreamingFalseNegative(inlier.getAttributes());
+        } else {
+            inlierItemsetSketch.markInlier(inlier.getAttributes());
+        }
     }
 
     public List<ItemsetResult> getItemsets(DatumEncoder encoder) {
@@ -179,7 +217,9 @@ public class ExponentiallyDecayingEmergingItemsets {
         }
 
         // check the ratios of any itemsets we just marked
-        List<ItemsetWithCount> matchingInlierCounts = inlierPatternSummary.getCounts(ratioSetsToCheck);
+        List<ItemsetWithCount> matchingInlierCounts = inlierPatternSummary != null ?
+                                                      inlierPatternSummary.getCounts(ratioSetsToCheck) :
+                                                      inlierItemsetSketch.getCounts(ratioSetsToCheck);
 
         assert(matchingInlierCounts.size() == ratioSetsToCheck.size());
         for(int i = 0; i < matchingInlierCounts.size(); ++i) {
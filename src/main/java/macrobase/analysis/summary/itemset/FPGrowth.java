@@ -3,20 +3,30 @@ package macrobase.analysis.summary.itemset;
 import com.codahale.metrics.Timer;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 
 import macrobase.MacroBase;
 import macrobase.analysis.summary.result.DatumWithScore;
 import macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import macrobase.datamodel.DatumBatch;
+import macrobase.util.ForkJoinPools;
+import macrobase.util.collections.IntDoubleHashMap;
+import macrobase.util.collections.IntIntHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -27,21 +37,45 @@ public class FPGrowth {
     private final Timer insertTransactions = MacroBase.metrics.timer(name(FPGrowth.class, "insertTransactions"));
     private final Timer fpMine = MacroBase.metrics.timer(name(FPGrowth.class, "fpMine"));
 
+    private int parallelism = 1;
+
+    private boolean useArrayTree = false;
+
+    /**
+     * Mine with up to this many threads (fork-join over the FPTree's header
+     * items); 1 mines on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Build and mine an ArrayFPTree (primitive arrays instead of node
+     * objects) in getItemsets.
+     */
+    public void setUseArrayTree(boolean useArrayTree) {
+        this.useArrayTree = useArrayTree;
+    }
 
     class FPTree {
         private FPTreeNode root = new FPTreeNode(-1, null, 0);
         // used to calculate the order
-        private Map<Integer, Double> frequentItemCounts = new HashMap<>();
+        private final IntDoubleHashMap frequentItemCounts = new IntDoubleHashMap();
 
         // item order -- need canonical to break ties
-        private Map<Integer, Integer> frequentItemOrder = new HashMap<>();
+        private final IntIntHashMap frequentItemOrder = new IntIntHashMap();
 
         protected Map<Integer, FPTreeNode> nodeHeaders = new HashMap<>();
 
+        // the frequent items of the transaction being inserted, highest order
+        // first, and their orders
+        private int[] txnItems = new int[16];
+        private int[] txnOrders = new int[16];
+
         @SuppressWarnings("unused")
 		private void printTreeDebug() {
             log.debug("Frequent Item Counts:");
-            frequentItemCounts.entrySet().forEach(e -> log.debug(String.format("%d: %d", e.getKey(), e.getValue())));
+            frequentItemCounts.forEach((item, count) -> log.debug("{}: {}", item, count));
 
             walkTree(root, 1);
         }
@@ -101,16 +135,17 @@ public class FPGrowth {
 
             // insert the transaction at this node starting with transaction[currentIndex]
             // then find the child that matches
-            public void insertTransaction(List<Integer> fullTransaction,
+            public void insertTransaction(int[] fullTransaction,
+                                          int length,
                                           int currentIndex,
                                           final double transactionCount) {
                 incrementCount(transactionCount);
 
-                if(currentIndex == fullTransaction.size()) {
+                if(currentIndex == length) {
                     return;
                 }
 
-                int currentItem = fullTransaction.get(currentIndex);
+                int currentItem = fullTransaction[currentIndex];
 
                 FPTreeNode matchingChild = null;
 
@@ -140,97 +175,122 @@ public class FPGrowth {
                     children.add(matchingChild);
                 }
 
-                matchingChild.insertTransaction(fullTransaction, currentIndex + 1, transactionCount);
+                matchingChild.insertTransaction(fullTransaction, length, currentIndex + 1, transactionCount);
             }
         }
 
         public void setFrequentCounts(Map<Integer, Double> counts) {
-            frequentItemCounts = counts;
-            List<Map.Entry<Integer, Double>> sortedItemCounts = Lists.newArrayList(frequentItemCounts.entrySet());
-            sortedItemCounts.sort((i1, i2) -> frequentItemCounts.get(i1.getKey())
-                    .compareTo(frequentItemCounts.get(i2.getKey())));
-            for(int i = 0; i < sortedItemCounts.size(); ++i) {
-                frequentItemOrder.put(sortedItemCounts.get(i).getKey(), i);
+            frequentItemCounts.clear();
+            counts.forEach(frequentItemCounts::put);
+            updateFrequentItemOrder();
+        }
+
+        // we have to materialize a canonical order so that items with equal counts
+        // are consistently ordered when they are sorted during transaction insertion
+        private void updateFrequentItemOrder() {
+            List<Integer> sortedItems = Ints.asList(frequentItemCounts.keys());
+            sortedItems.sort(Comparator.comparingDouble(i -> frequentItemCounts.get(i, 0)));
+            frequentItemOrder.clear();
+            for(int i = 0; i < sortedItems.size(); ++i) {
+                frequentItemOrder.put(sortedItems.get(i), i);
             }
         }
 
+        private void setFrequentItems(IntDoubleHashMap itemCounts, int countRequiredForSupport) {
+            itemCounts.forEach((item, count) -> {
+                if(count >= countRequiredForSupport) {
+                    frequentItemCounts.put(item, count);
+                }
+            });
+            updateFrequentItemOrder();
+        }
+
         public void insertFrequentItems(List<Set<Integer>> transactions,
                                         int countRequiredForSupport) {
-
-            Map<Integer, Double> itemCounts = new HashMap<>();
+            IntDoubleHashMap itemCounts = new IntDoubleHashMap();
             for(Set<Integer> t : transactions) {
-                for(Integer item : t) {
-                    itemCounts.compute(item, (k, v) -> v == null ? 1 : v + 1);
-                }
-            }
-
-            for(Map.Entry<Integer, Double> e : itemCounts.entrySet()) {
-                if(e.getValue() >= countRequiredForSupport) {
-                    frequentItemCounts.put(e.getKey(), e.getValue());
+                for(int item : t) {
+                    itemCounts.addTo(item, 1);
                 }
             }
 
-            // we have to materialize a canonical order so that items with equal counts
-            // are consistently ordered when they are sorted during transaction insertion
-            List<Map.Entry<Integer, Double>> sortedItemCounts = Lists.newArrayList(frequentItemCounts.entrySet());
-            sortedItemCounts.sort((i1, i2) -> frequentItemCounts.get(i1.getKey())
-                    .compareTo(frequentItemCounts.get(i2.getKey())));
-            for(int i = 0; i < sortedItemCounts.size(); ++i) {
-                frequentItemOrder.put(sortedItemCounts.get(i).getKey(), i);
-            }
+            setFrequentItems(itemCounts, countRequiredForSupport);
         }
 
         public void insertConditionalFrequentItems(List<ItemsetWithCount> patterns,
                                                    int countRequiredForSupport) {
-            Map<Integer, Double> itemCounts = new HashMap<>();
-
+            IntDoubleHashMap itemCounts = new IntDoubleHashMap();
             for(ItemsetWithCount i : patterns) {
-                for(Integer item : i.getItems()) {
-                    itemCounts.compute(item, (k, v) -> v == null ? i.getCount() : v + i.getCount());
+                for(int item : i.getItems()) {
+                    itemCounts.addTo(item, i.getCount());
                 }
             }
 
-            for(Map.Entry<Integer, Double> e : itemCounts.entrySet()) {
-                if(e.getValue() >= countRequiredForSupport) {
-                    frequentItemCounts.put(e.getKey(), e.getValue());
-                }
+            setFrequentItems(itemCounts, countRequiredForSupport);
+        }
+
+        // adds item to txnItems (which holds n items) if it is frequent,
+        // keeping txnItems sorted; returns the new number of items
+        private int bufferIfFrequent(int item, int n) {
+            int order = frequentItemOrder.get(item, -1);
+            if(order < 0) {
+                return n;
+            }
+
+            if(n == txnItems.length) {
+                txnItems = Arrays.copyOf(txnItems, n * 2);
+                txnOrders = Arrays.copyOf(txnOrders, n * 2);
+            }
+
+            // transactions are short, so insertion sort
+            int i = n;
+            while(i > 0 && txnOrders[i - 1] < order) {
+                txnItems[i] = txnItems[i - 1];
+                txnOrders[i] = txnOrders[i - 1];
+                --i;
             }
+            txnItems[i] = item;
+            txnOrders[i] = order;
+            return n + 1;
+        }
 
-            // we have to materialize a canonical order so that items with equal counts
-            // are consistently ordered when they are sorted during transaction insertion
-            List<Map.Entry<Integer, Double>> sortedItemCounts = Lists.newArrayList(frequentItemCounts.entrySet());
-            sortedItemCounts.sort((i1, i2) -> frequentItemCounts.get(i1.getKey())
-                    .compareTo(frequentItemCounts.get(i2.getKey())));
-            for(int i = 0; i < sortedItemCounts.size(); ++i) {
-                frequentItemOrder.put(sortedItemCounts.get(i).getKey(), i);
+        private int bufferFrequent(Collection<Integer> items) {
+            int n = 0;
+            for(int item : items) {
+                n = bufferIfFrequent(item, n);
             }
+            return n;
         }
 
         public void insertDatum(List<DatumWithScore> datums) {
             for(DatumWithScore d : datums) {
-                List<Integer> filtered = d.getDatum().getAttributes().stream().filter(
-                        i -> frequentItemCounts.containsKey(i)).collect(Collectors.toList());
-                filtered.sort((i1, i2) -> frequentItemOrder.get(i2).compareTo(frequentItemOrder.get(i1)));
-                root.insertTransaction(filtered, 0, 1);
+                int n = bufferFrequent(d.getDatum().getAttributes());
+                root.insertTransaction(txnItems, n, 0, 1);
             }
         }
 
+        public void insertDatum(DatumBatch datums) {
+            for(int r = 0; r < datums.size(); ++r) {
+                int n = 0;
+                for(int c = 0; c < datums.getNumAttributes(); ++c) {
+                    n = bufferIfFrequent(datums.getAttribute(r, c), n);
+                }
+                root.insertTransaction(txnItems, n, 0, 1);
+            }
+        }
 
         public void insertConditionalFrequentPatterns(List<ItemsetWithCount> patterns) {
             for(ItemsetWithCount is : patterns) {
-                List<Integer> filtered = is.getItems().stream().filter(i -> frequentItemCounts.containsKey(i)).collect(Collectors.toList());
-                filtered.sort((i1, i2) -> frequentItemOrder.get(i2).compareTo(frequentItemOrder.get(i1)));
-                root.insertTransaction(filtered, 0, is.getCount());
+                int n = bufferFrequent(is.getItems());
+                root.insertTransaction(txnItems, n, 0, is.getCount());
             }
         }
 
         public void insertTransactions(List<Set<Integer>> transactions) {
             for(Set<Integer> t : transactions) {
-                List<Integer> filtered = t.stream().filter(i -> frequentItemCounts.containsKey(i)).collect(Collectors.toList());
-
-                if(!filtered.isEmpty()) {
-                    filtered.sort((i1, i2) -> frequentItemOrder.get(i2).compareTo(frequentItemOrder.get(i1)));
-                    root.insertTransaction(filtered, 0, 1);
+                int n = bufferFrequent(t);
+                if(n > 0) {
+                    root.insertTransaction(txnItems, n, 0, 1);
                 }
             }
         }
@@ -243,7 +303,7 @@ public class FPGrowth {
             }
 
             List<Integer> plist = Lists.newArrayList(pattern);
-            plist.sort((i1, i2) -> frequentItemOrder.get(i1).compareTo(frequentItemOrder.get(i2)));
+            plist.sort(Comparator.comparingInt(i -> frequentItemOrder.get(i, 0)));
 
             int count = 0;
             FPTreeNode pathHead = nodeHeaders.get(plist.get(0));
@@ -271,7 +331,65 @@ public class FPGrowth {
 
 
 
+        // mines the itemsets ending in header's item, including the singleton
+        private List<ItemsetWithCount> mineHeader(Map.Entry<Integer, FPTreeNode> header,
+                                                  FPTreeNode nodeOfBranching,
+                                                  Integer supportCountRequired) {
+            List<ItemsetWithCount> ret = new ArrayList<>();
+
+            // add the singleton item set
+            ret.add(new ItemsetWithCount(Sets.newHashSet(header.getKey()),
+                                         frequentItemCounts.get(header.getKey(), 0)));
+
+            List<ItemsetWithCount> conditionalPatternBase = new ArrayList<>();
+
+            // walk each "leaf" node
+            FPTreeNode conditionalNode = header.getValue();
+            while (conditionalNode != null) {
+                final double leafSupport = conditionalNode.getCount();
+
+                // walk the tree up to the branch node
+                Set<Integer> conditionalPattern = new HashSet<>();
+                FPTreeNode walkNode = conditionalNode.getParent();
+                while (walkNode != nodeOfBranching.getParent() && walkNode != root) {
+                    conditionalPattern.add(walkNode.getItem());
+                    walkNode = walkNode.getParent();
+                }
+
+                if (conditionalPattern.size() > 0) {
+                    conditionalPatternBase.add(new ItemsetWithCount(conditionalPattern, leafSupport));
+                }
+
+                conditionalNode = conditionalNode.getNextLink();
+            }
+
+            if (conditionalPatternBase.isEmpty()) {
+                return ret;
+            }
+
+            // build and mine the conditional FPTree
+            FPTree conditionalTree = new FPTree();
+            conditionalTree.insertConditionalFrequentItems(conditionalPatternBase, supportCountRequired);
+            conditionalTree.insertConditionalFrequentPatterns(conditionalPatternBase);
+            List<ItemsetWithCount> conditionalFrequentItemsets = conditionalTree.mineItemsets(supportCountRequired);
+
+            if (!conditionalFrequentItemsets.isEmpty()) {
+                for (ItemsetWithCount is : conditionalFrequentItemsets) {
+                    is.getItems().add(header.getKey());
+                }
+
+                ret.addAll(conditionalFrequentItemsets);
+            }
+
+            return ret;
+        }
+
         List<ItemsetWithCount> mineItemsets(Integer supportCountRequired) {
+            return mineItemsets(supportCountRequired, null);
+        }
+
+        // if pool is non-null, the top-level header items are mined in parallel on it
+        List<ItemsetWithCount> mineItemsets(Integer supportCountRequired, ForkJoinPool pool) {
             List<ItemsetWithCount> singlePathItemsets = new ArrayList<>();
             List<ItemsetWithCount> branchingItemsets = new ArrayList<>();
 
@@ -333,53 +451,29 @@ public class FPGrowth {
                 alreadyMinedItems.add(node.getItem());
             }
 
-            for(Map.Entry<Integer, FPTreeNode> header : nodeHeaders.entrySet()) {
-                if (alreadyMinedItems.contains(header.getKey())) {
-                    continue;
-                }
-
-                // add the singleton item set
-                branchingItemsets.add(new ItemsetWithCount(Sets.newHashSet(header.getKey()),
-                                                           frequentItemCounts.get(header.getKey())));
-
-                List<ItemsetWithCount> conditionalPatternBase = new ArrayList<>();
-
-                // walk each "leaf" node
-                FPTreeNode conditionalNode = header.getValue();
-                while (conditionalNode != null) {
-                    final double leafSupport = conditionalNode.getCount();
-
-                    // walk the tree up to the branch node
-                    Set<Integer> conditionalPattern = new HashSet<>();
-                    FPTreeNode walkNode = conditionalNode.getParent();
-                    while (walkNode != nodeOfBranching.getParent() && walkNode != root) {
-                        conditionalPattern.add(walkNode.getItem());
-                        walkNode = walkNode.getParent();
+            if(pool == null) {
+                for(Map.Entry<Integer, FPTreeNode> header : nodeHeaders.entrySet()) {
+                    if (!alreadyMinedItems.contains(header.getKey())) {
+                        branchingItemsets.addAll(mineHeader(header, nodeOfBranching, supportCountRequired));
                     }
-
-                    if (conditionalPattern.size() > 0) {
-                        conditionalPatternBase.add(new ItemsetWithCount(conditionalPattern, leafSupport));
-                    }
-
-                    conditionalNode = conditionalNode.getNextLink();
-                }
-
-                if (conditionalPatternBase.isEmpty()) {
-                    continue;
                 }
-
-                // build and mine the conditional FPTree
-                FPTree conditionalTree = new FPTree();
-                conditionalTree.insertConditionalFrequentItems(conditionalPatternBase, supportCountRequired);
-                conditionalTree.insertConditionalFrequentPatterns(conditionalPatternBase);
-                List<ItemsetWithCount> conditionalFrequentItemsets = conditionalTree.mineItemsets(supportCountRequired);
-
-                if (!conditionalFrequentItemsets.isEmpty()) {
-                    for (ItemsetWithCount is : conditionalFrequentItemsets) {
-                        is.getItems().add(header.getKey());
-                    }
-
-                    branchingItemsets.addAll(conditionalFrequentItemsets);
+            } else {
+                // each header's conditional tree is independent; collecting the
+                // ordered stream keeps the output identical to the serial loop
+                final FPTreeNode branch = nodeOfBranching;
+                List<Map.Entry<Integer, FPTreeNode>> headers = nodeHeaders.entrySet().stream()
+                        .filter(h -> !alreadyMinedItems.contains(h.getKey()))
+                        .collect(Collectors.toList());
+                try {
+                    branchingItemsets = pool.submit(
+                            () -> headers.parallelStream()
+                                    .flatMap(h -> mineHeader(h, branch, supportCountRequired).stream())
+                                    .collect(Collectors.toList())).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    throw new RuntimeException(e.getCause());
                 }
             }
 
@@ -409,10 +503,15 @@ public class FPGrowth {
 
     public List<ItemsetWithCount> getItemsets(List<Set<Integer>> transactions,
                                            Double support) {
-        FPTree fp = new FPTree();
         int countRequiredForSupport = (int)(support*transactions.size());
         log.debug("count required: {}", countRequiredForSupport);
 
+        if(useArrayTree) {
+            return getItemsetsWithArrayTree(transactions, countRequiredForSupport);
+        }
+
+        FPTree fp = new FPTree();
+
         long st = System.currentTimeMillis();
 
         Timer.Context context = singleItemCounts.time();
@@ -429,7 +528,7 @@ public class FPGrowth {
 
         st = System.currentTimeMillis();
         context = fpMine.time();
-        List<ItemsetWithCount> ret = fp.mineItemsets(countRequiredForSupport);
+        List<ItemsetWithCount> ret = fp.mineItemsets(countRequiredForSupport, ForkJoinPools.shared(parallelism));
         context.stop();
         en = System.currentTimeMillis();
 
@@ -438,20 +537,37 @@ public class FPGrowth {
         return ret;
     }
 
-    // ugh, this is a really ugly function sig, but it's efficient
-    public List<ItemsetWithCount> getCounts(
-            List<DatumWithScore> transactions,
-            Map<Integer, Double> initialCounts,
-            Set<Integer> targetItems,
-            List<ItemsetWithCount> toCount) {
+    private List<ItemsetWithCount> getItemsetsWithArrayTree(List<Set<Integer>> transactions,
+                                                            int countRequiredForSupport) {
+        Timer.Context context = singleItemCounts.time();
+        ArrayFPTree fp = ArrayFPTree.fromTransactions(transactions, countRequiredForSupport);
+        context.stop();
+        context = insertTransactions.time();
+        fp.insertTransactions(transactions);
+        context.stop();
+
+        log.debug("ArrayFPTree nodes: {}", fp.getNumNodes());
+
+        context = fpMine.time();
+        List<ItemsetWithCount> ret = fp.mineItemsets(countRequiredForSupport, ForkJoinPools.shared(parallelism));
+        context.stop();
+
+        return ret;
+    }
+
+    private FPTree buildCountTree(Map<Integer, Double> initialCounts,
+                                  Set<Integer> targetItems) {
         FPTree countTree = new FPTree();
         for(Integer i : targetItems) {
             initialCounts.remove(i);
         }
 
         countTree.setFrequentCounts(initialCounts);
-        countTree.insertDatum(transactions);
+        return countTree;
+    }
 
+    private List<ItemsetWithCount> countSupport(FPTree countTree,
+                                                List<ItemsetWithCount> toCount) {
         List<ItemsetWithCount> ret = new ArrayList<>();
         for(ItemsetWithCount c : toCount) {
             ret.add(new ItemsetWithCount(c.getItems(), countTree.getSupport(c.getItems())));
@@ -459,4 +575,25 @@ public class FPGrowth {
 
         return ret;
     }
+
+    // ugh, this is a really ugly function sig, but it's efficient
+    public List<ItemsetWithCount> getCounts(
+            List<DatumWithScore> transactions,
+            Map<Integer, Double> initialCounts,
+            Set<Integer> targetItems,
+            List<ItemsetWithCount> toCount) {
+        FPTree countTree = buildCountTree(initialCounts, targetItems);
+        countTree.insertDatum(transactions);
+        return countSupport(countTree, toCount);
+    }
+
+    public List<ItemsetWithCount> getCounts(
+            DatumBatch transactions,
+            Map<Integer, Double> initialCounts,
+            Set<Integer> targetItems,
+            List<ItemsetWithCount> toCount) {
+        FPTree countTree = buildCountTree(initialCounts, targetItems);
+        countTree.insertDatum(transactions);
+        return countSupport(countTree, toCount);
+    }
 }
@@ -9,6 +9,7 @@ import macrobase.analysis.summary.result.DatumWithScore;
 import macrobase.analysis.summary.count.ExactCount;
 import macrobase.analysis.summary.itemset.result.ItemsetResult;
 import macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import macrobase.datamodel.DatumBatch;
 import macrobase.ingest.DatumEncoder;
 
 import org.slf4j.Logger;
@@ -27,6 +28,55 @@ public class FPGrowthEmerging {
     @SuppressWarnings("unused")
 	private static final Logger log = LoggerFactory.getLogger(FPGrowthEmerging.class);
 
+    private int parallelism = 1;
+
+    private boolean useArrayTree = false;
+
+    // threads used to mine the outlier FPTree
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    // mine the outlier itemsets with an array-backed FPTree
+    public void setUseArrayTree(boolean useArrayTree) {
+        this.useArrayTree = useArrayTree;
+    }
+
+    private interface InlierItemsetCounter {
+        List<ItemsetWithCount> getCounts(Set<Integer> targetItems,
+                                         List<ItemsetWithCount> toCount);
+    }
+
+    // returns txn, allocating it if item is the first emerging item
+    private Set<Integer> addIfEmerging(Set<Integer> txn,
+                                       int item,
+                                       Map<Integer, Double> inlierCounts,
+                                       Map<Integer, Double> outlierCounts,
+                                       int numInliers,
+                                       int numOutliers,
+                                       int supportCountRequired,
+                                       double minRatio) {
+        Number outlierCount = outlierCounts.get(item);
+        if(outlierCount.doubleValue() >= supportCountRequired) {
+            Number inlierCount = inlierCounts.get(item);
+
+            double outlierInlierRatio;
+            if(inlierCount == null || inlierCount.doubleValue() == 0) {
+                outlierInlierRatio = Double.POSITIVE_INFINITY;
+            } else {
+                outlierInlierRatio = (outlierCount.doubleValue()/numOutliers)/(inlierCount.doubleValue()/numInliers);
+            }
+            if(outlierInlierRatio > minRatio) {
+                if(txn == null) {
+                    txn = new HashSet<>();
+                }
+                txn.add(item);
+            }
+        }
+
+        return txn;
+    }
+
     public List<ItemsetResult> getEmergingItemsetsWithMinSupport(List<DatumWithScore> inliers,
                                                                  List<DatumWithScore> outliers,
                                                                  double minSupport,
@@ -46,23 +96,9 @@ public class FPGrowthEmerging {
             Set<Integer> txn = null;
 
             for(int i : d.getDatum().getAttributes()) {
-                Number outlierCount = outlierCounts.get(i);
-                if(outlierCount.doubleValue() >= supportCountRequired) {
-                    Number inlierCount = inlierCounts.get(i);
-
-                    double outlierInlierRatio;
-                    if(inlierCount == null || inlierCount.doubleValue() == 0) {
-                        outlierInlierRatio = Double.POSITIVE_INFINITY;
-                    } else {
-                        outlierInlierRatio = (outlierCount.doubleValue()/outliers.size())/(inlierCount.doubleValue()/inliers.size());
-                    }
-                    if(outlierInlierRatio > minRatio) {
-                        if(txn == null) {
-                            txn = new HashSet<>();
-                        }
-                        txn.add(i);
-                    }
-                }
+                txn = addIfEmerging(txn, i, inlierCounts, outlierCounts,
+                                    inliers.size(), outliers.size(),
+                                    supportCountRequired, minRatio);
             }
 
             if(txn != null) {
@@ -71,8 +107,74 @@ public class FPGrowthEmerging {
         }
         context.stop();
 
-        context = outlierFPGrowth.time();
+        FPGrowth inlierTree = new FPGrowth();
+        return getEmergingItemsets(outlierTransactions,
+                                   inlierCounts,
+                                   inliers.size(),
+                                   outliers.size(),
+                                   minSupport,
+                                   minRatio,
+                                   encoder,
+                                   (targetItems, toCount) -> inlierTree.getCounts(inliers,
+                                                                                  inlierCounts,
+                                                                                  targetItems,
+                                                                                  toCount));
+    }
+
+    public List<ItemsetResult> getEmergingItemsetsWithMinSupport(DatumBatch inliers,
+                                                                 DatumBatch outliers,
+                                                                 double minSupport,
+                                                                 double minRatio,
+                                                                 DatumEncoder encoder) {
+        Context context = singleItemCounts.time();
+        ArrayList<Set<Integer>> outlierTransactions = new ArrayList<>();
+
+        Map<Integer, Double> inlierCounts = new ExactCount().count(inliers).getCounts();
+        Map<Integer, Double> outlierCounts = new ExactCount().count(outliers).getCounts();
+
+        int supportCountRequired = (int)(outliers.size()*minSupport);
+
+        for(int r = 0; r < outliers.size(); ++r) {
+            Set<Integer> txn = null;
+
+            for(int c = 0; c < outliers.getNumAttributes(); ++c) {
+                txn = addIfEmerging(txn, outliers.getAttribute(r, c), inlierCounts, outlierCounts,
+                                    inliers.size(), outliers.size(),
+                                    supportCountRequired, minRatio);
+            }
+
+            if(txn != null) {
+                outlierTransactions.add(txn);
+            }
+        }
+        context.stop();
+
+        FPGrowth inlierTree = new FPGrowth();
+        return getEmergingItemsets(outlierTransactions,
+                                   inlierCounts,
+                                   inliers.size(),
+                                   outliers.size(),
+                                   minSupport,
+                                   minRatio,
+                                   encoder,
+                                   (targetItems, toCount) -> inlierTree.getCounts(inliers,
+                                                                                  inlierCounts,
+                                                                                  targetItems,
+                                                                                  toCount));
+    }
+
+    private List<ItemsetResult> getEmergingItemsets(List<Set<Integer>> outlierTransactions,
+                                                    Map<Integer, Double> inlierCounts,
+                                                    int numInliers,
+                                                    int numOutliers,
+                                                    double minSupport,
+                                                    double minRatio,
+                                                    DatumEncoder encoder,
+                                                    InlierItemsetCounter inlierCounter) {
+        Context context = outlierFPGrowth.time();
         FPGrowth fpg = new FPGrowth();
+        fpg.setParallelism(parallelism);
+        fpg.setUseArrayTree(useArrayTree);
         List<ItemsetWithCount> iwc = fpg.getItemsets(outlierTransactions, minSupport);
         context.stop();
 
@@ -105,12 +207,12 @@ public class FPGrowthEmerging {
                 Number inlierCount = inlierCounts.get(i.getItems().iterator().next());
 
                 if(inlierCount != null && inlierCount.doubleValue() > 0) {
-                    ratio = ((double)i.getCount()/outliers.size())/((double)inlierCount/inliers.size());
+                    ratio = ((double)i.getCount()/numOutliers)/((double)inlierCount/numInliers);
                 } else {
                     ratio = Double.POSITIVE_INFINITY;
                 }
 
-                ret.add(new ItemsetResult(i.getCount()/(double)outliers.size(),
+                ret.add(new ItemsetResult(i.getCount()/(double)numOutliers,
                                           i.getCount(),
                                           ratio,
                                           encoder.getColsFromAttrSet(i.getItems())));
@@ -121,11 +223,8 @@ public class FPGrowthEmerging {
         }
 
         // check the ratios of any itemsets we just marked
-        FPGrowth inlierTree = new FPGrowth();
-        List<ItemsetWithCount> matchingInlierCounts = inlierTree.getCounts(inliers,
-                                                                           inlierCounts,
-                                                                           ratioItemsToCheck,
-                                                                           ratioSetsToCheck);
+        List<ItemsetWithCount> matchingInlierCounts = inlierCounter.getCounts(ratioItemsToCheck,
+                                                                              ratioSetsToCheck);
 
         assert(matchingInlierCounts.size() == ratioSetsToCheck.size());
         for(int i = 0; i < matchingInlierCounts.size(); ++i) {
@@ -134,13 +233,13 @@ public class FPGrowthEmerging {
 
             double ratio;
             if(ic.getCount() > 0) {
-                ratio = (oc.getCount()/outliers.size())/((double)ic.getCount()/inliers.size());
+                ratio = (oc.getCount()/numOutliers)/((double)ic.getCount()/numInliers);
             } else {
                 ratio = Double.POSITIVE_INFINITY;
             }
 
             if(ratio >= minRatio) {
-                ret.add(new ItemsetResult(oc.getCount()/(double)outliers.size(),
+                ret.add(new ItemsetResult(oc.getCount()/(double)numOutliers,
                                           oc.getCount(),
                                           ratio,
                                           encoder.getColsFromAttrSet(oc.getItems())));
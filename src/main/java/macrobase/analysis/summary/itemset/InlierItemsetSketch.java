@@ -0,0 +1,91 @@
+package macrobase.analysis.summary.itemset;
+
+import macrobase.analysis.summary.count.CountMinSketch;
+import macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import macrobase.util.collections.IntHashSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decayed inlier counts of the combinations of currently interesting
+ * items, kept in a CountMinSketch keyed by a hash of each itemset instead
+ * of in a pattern tree over every inlier. Memory is the sketch's, fixed.
+ *
+ * Each inlier adds every combination of two or more of its interesting
+ * items, so the per-tuple cost is exponential in how many it carries;
+ * only the first MAX_ITEMS_PER_TUPLE are combined. As in the
+ * StreamingFPGrowth this replaces, an itemset is only counted while all
+ * of its items are interesting.
+ */
+class InlierItemsetSketch {
+    private static final int MAX_ITEMS_PER_TUPLE = 12;
+
+    private final CountMinSketch itemsets;
+    private IntHashSet interestingItems = new IntHashSet();
+
+    // mixes of the interesting items of the tuple being added
+    private final long[] itemHashes = new long[MAX_ITEMS_PER_TUPLE];
+
+    InlierItemsetSketch(CountMinSketch itemsets) {
+        this.itemsets = itemsets;
+    }
+
+    // order-independent: the sum of the items' mixes
+    private static long itemsetKey(Collection<Integer> items) {
+        long key = 0;
+        for(int item : items) {
+            key += CountMinSketch.mix(item);
+        }
+        return key;
+    }
+
+    void markInlier(Collection<Integer> attributes) {
+        int n = 0;
+        for(int item : attributes) {
+            if(n < MAX_ITEMS_PER_TUPLE && interestingItems.contains(item)) {
+                itemHashes[n++] = CountMinSketch.mix(item);
+            }
+        }
+
+        for(int subset = 1; subset < (1 << n); ++subset) {
+            // single items are counted by the item summary
+            if((subset & (subset - 1)) == 0) {
+                continue;
+            }
+
+            long key = 0;
+            for(int i = 0; i < n; ++i) {
+                if((subset & (1 << i)) != 0) {
+                    key += itemHashes[i];
+                }
+            }
+            itemsets.observeKey(key, 1);
+        }
+    }
+
+    void decayAndResetInterestingItems(Set<Integer> items, double decayRate) {
+        interestingItems = new IntHashSet(items.size());
+        for(int item : items) {
+            interestingItems.add(item);
+        }
+
+        if(decayRate > 0) {
+            itemsets.multiplyAllCounts(1 - decayRate);
+        }
+    }
+
+    List<ItemsetWithCount> getCounts(List<ItemsetWithCount> targets) {
+        List<ItemsetWithCount> ret = new ArrayList<>(targets.size());
+        for(ItemsetWithCount target : targets) {
+            double count = 0;
+            if(target.getItems().stream().allMatch(interestingItems::contains)) {
+                count = itemsets.getKeyCount(itemsetKey(target.getItems()));
+            }
+            ret.add(new ItemsetWithCount(target.getItems(), count));
+        }
+        return ret;
+    }
+}
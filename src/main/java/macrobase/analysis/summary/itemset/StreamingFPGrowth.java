@@ -2,14 +2,16 @@ package macrobase.analysis.summary.itemset;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 
 import macrobase.analysis.summary.itemset.result.ItemsetWithCount;
+import macrobase.util.collections.IntDoubleHashMap;
+import macrobase.util.collections.IntIntHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class StreamingFPGrowth {
     private static final Logger log = LoggerFactory.getLogger(StreamingFPGrowth.class);
@@ -25,13 +27,26 @@ public class StreamingFPGrowth {
         this.support = support;
     }
 
+    // renormalize stored counts once scale falls below this, well before
+    // 1/scale increments could overflow
+    private static final double RENORMALIZE_BELOW = 1e-100;
+
+    /**
+     * Decay is lazy: node counts and frequentItemCounts are stored divided
+     * by scale, decaying only shrinks scale, and new transactions are
+     * inserted with weight 1/scale. Conditional trees built while mining
+     * hold true counts (scale 1).
+     */
     class StreamingFPTree {
         private FPTreeNode root = new FPTreeNode(-1, null, 0);
         // used to calculate the order
-        private Map<Integer, Double> frequentItemCounts = new HashMap<>();
+        private final IntDoubleHashMap frequentItemCounts = new IntDoubleHashMap();
+
+        // true counts are stored counts * scale
+        private double scale = 1;
 
         // item order -- need canonical to break ties
-        private Map<Integer, Integer> frequentItemOrder = new HashMap<>();
+        private final IntIntHashMap frequentItemOrder = new IntIntHashMap();
 
         protected Map<Integer, FPTreeNode> nodeHeaders = new HashMap<>();
 
@@ -39,33 +54,57 @@ public class StreamingFPGrowth {
 
         Set<FPTreeNode> sortedNodes = new HashSet<>();
 
+        // the frequent items of the transaction being inserted, in order,
+        // and their orders
+        private int[] txnItems = new int[16];
+        private int[] txnOrders = new int[16];
+
         @SuppressWarnings("unused")
 		private void printTreeDebug() {
             log.debug("Frequent Item Counts:");
-            frequentItemCounts.entrySet().forEach(e -> log.debug(String.format("%d: %d", e.getKey(), e.getValue())));
+            frequentItemCounts.forEach((item, count) -> log.debug("{}: {}", item, count));
 
             log.debug("Frequent Item Order:");
-            frequentItemOrder.entrySet().forEach(
-                    e -> log.debug(String.format("%d: %d", e.getKey(), e.getValue())));
+            frequentItemOrder.forEach((item, order) -> log.debug("{}: {}", item, order));
 
 
             walkTree(root, 1);
         }
 
-        // todo: make more efficient
-        private void decayWeights(FPTreeNode start, double decayWeight) {
-            for(Integer item : frequentItemCounts.keySet()) {
-                frequentItemCounts.put(item, frequentItemCounts.get(item)*decayWeight);
+        private void decayWeights(double decayWeight) {
+            scale *= decayWeight;
+            if(scale < RENORMALIZE_BELOW) {
+                frequentItemCounts.multiplyAll(scale);
+                scaleCounts(root, scale);
+                scale = 1;
             }
+        }
 
-            start.count *= decayWeight;
+        private void scaleCounts(FPTreeNode start, double by) {
+            start.count *= by;
             if(start.getChildren() != null) {
                 for (FPTreeNode child : start.getChildren()) {
-                    decayWeights(child, decayWeight);
+                    scaleCounts(child, by);
                 }
             }
         }
 
+        private double getCount(FPTreeNode node) {
+            return node.getCount() * scale;
+        }
+
+        private double getItemCount(int item) {
+            return frequentItemCounts.get(item, 0) * scale;
+        }
+
+        // replaces the item counts with (true) counts
+        private void setFrequentItemCounts(Map<Integer, Double> counts) {
+            frequentItemCounts.clear();
+            for(Map.Entry<Integer, Double> e : counts.entrySet()) {
+                frequentItemCounts.put(e.getKey(), e.getValue() / scale);
+            }
+        }
+
 
         private void walkTree(FPTreeNode start, int treeDepth) {
             log.debug("{} node: {}, count: {}, sorted: {}",
@@ -171,7 +210,8 @@ public class StreamingFPGrowth {
 
             // insert the transaction at this node starting with transaction[currentIndex]
             // then find the child that matches
-            public void insertTransaction(List<Integer> fullTransaction,
+            public void insertTransaction(int[] fullTransaction,
+                                          int length,
                                           int currentIndex,
                                           final double itemCount,
                                           boolean streaming) {
@@ -181,11 +221,11 @@ public class StreamingFPGrowth {
 
                 incrementCount(itemCount);
 
-                if(currentIndex == fullTransaction.size()) {
+                if(currentIndex == length) {
                     return;
                 }
 
-                int currentItem = fullTransaction.get(currentIndex);
+                int currentItem = fullTransaction[currentIndex];
 
                 FPTreeNode matchingChild = null;
 
@@ -219,14 +259,14 @@ public class StreamingFPGrowth {
 
                     children.add(matchingChild);
 
-                    if(currentIndex == fullTransaction.size() -1) {
+                    if(currentIndex == length - 1) {
                         leafNodes.add(matchingChild);
                     }
 
                     leafNodes.remove(this);
                 }
 
-                matchingChild.insertTransaction(fullTransaction, currentIndex + 1, itemCount, streaming);
+                matchingChild.insertTransaction(fullTransaction, length, currentIndex + 1, itemCount, streaming);
             }
         }
 
@@ -238,9 +278,9 @@ public class StreamingFPGrowth {
             }
 
             List<Integer> plist = Lists.newArrayList(pattern);
-            plist.sort((i1, i2) -> frequentItemOrder.get(i1).compareTo(frequentItemOrder.get(i2)));
+            plist.sort(Comparator.comparingInt(this::getOrder));
 
-            int count = 0;
+            double count = 0;
             FPTreeNode pathHead = nodeHeaders.get(plist.get(0));
             while(pathHead != null) {
                 FPTreeNode curNode = pathHead;
@@ -253,7 +293,7 @@ public class StreamingFPGrowth {
                     curNode = curNode.getParent();
 
                     if(itemsToFind == 0) {
-                        count += pathHead.count;
+                        count += getCount(pathHead);
                         break;
                     }
 
@@ -263,32 +303,31 @@ public class StreamingFPGrowth {
                 pathHead = pathHead.getNextLink();
             }
 
-            return count;
+            return (int) count;
         }
 
         public void insertFrequentItems(List<Set<Integer>> transactions,
                                         int countRequiredForSupport) {
 
-            Map<Integer, Double> itemCounts = new HashMap<>();
+            IntDoubleHashMap itemCounts = new IntDoubleHashMap();
             for(Set<Integer> t : transactions) {
-                for(Integer item : t) {
-                    itemCounts.compute(item, (k, v) -> v == null ? 1 : v + 1);
+                for(int item : t) {
+                    itemCounts.addTo(item, 1);
                 }
             }
 
-            for(Map.Entry<Integer, Double> e : itemCounts.entrySet()) {
-                if(e.getValue() >= countRequiredForSupport) {
-                    frequentItemCounts.put(e.getKey(), e.getValue());
+            itemCounts.forEach((item, count) -> {
+                if(count >= countRequiredForSupport) {
+                    frequentItemCounts.put(item, count / scale);
                 }
-            }
+            });
 
             // we have to materialize a canonical order so that items with equal counts
             // are consistently ordered when they are sorted during transaction insertion
-            List<Map.Entry<Integer, Double>> sortedItemCounts = Lists.newArrayList(frequentItemCounts.entrySet());
-            sortedItemCounts.sort((i1, i2) -> frequentItemCounts.get(i1.getKey())
-                    .compareTo(frequentItemCounts.get(i2.getKey())));
-            for(int i = 0; i < sortedItemCounts.size(); ++i) {
-                frequentItemOrder.put(sortedItemCounts.get(i).getKey(), i);
+            List<Integer> sortedItems = Ints.asList(frequentItemCounts.keys());
+            sortedItems.sort(Comparator.comparingDouble(i -> frequentItemCounts.get(i, 0)));
+            for(int i = 0; i < sortedItems.size(); ++i) {
+                frequentItemOrder.put(sortedItems.get(i), i);
             }
         }
 
@@ -330,41 +369,64 @@ public class StreamingFPGrowth {
 
             // we have to materialize a canonical order so that items with equal counts
             // are consistently ordered when they are sorted during transaction insertion
-            List<Map.Entry<Integer, Double>> sortedItemCounts = Lists.newArrayList(frequentItemCounts.entrySet());
-            sortedItemCounts.sort((i1, i2) -> frequentItemCounts.get(i2.getKey())
-                    .compareTo(frequentItemCounts.get(i1.getKey())));
-            for(int i = 0; i < sortedItemCounts.size(); ++i) {
-                frequentItemOrder.put(sortedItemCounts.get(i).getKey(), i);
+            List<Integer> sortedItems = Ints.asList(frequentItemCounts.keys());
+            sortedItems.sort((i1, i2) -> Double.compare(frequentItemCounts.get(i2, 0),
+                                                        frequentItemCounts.get(i1, 0)));
+            for(int i = 0; i < sortedItems.size(); ++i) {
+                frequentItemOrder.put(sortedItems.get(i), i);
             }
         }
 
         public void insertConditionalFrequentItems(List<ItemsetWithCount> patterns,
                                                    int countRequiredForSupport) {
-            Map<Integer, Double> itemCounts = new HashMap<>();
+            IntDoubleHashMap itemCounts = new IntDoubleHashMap();
 
             for(ItemsetWithCount i : patterns) {
-                for(Integer item : i.getItems()) {
-                    itemCounts.compute(item, (k, v) -> v == null ? i.getCount() : v + i.getCount());
+                for(int item : i.getItems()) {
+                    itemCounts.addTo(item, i.getCount());
                 }
             }
 
-            for(Map.Entry<Integer, Double> e : itemCounts.entrySet()) {
-                if(e.getValue() >= countRequiredForSupport) {
-                    frequentItemCounts.put(e.getKey(), e.getValue());
+            itemCounts.forEach((item, count) -> {
+                if(count >= countRequiredForSupport) {
+                    frequentItemCounts.put(item, count);
                 }
-            }
+            });
 
             updateFrequentItemOrder();
         }
 
-        private void sortTransaction(List<Integer> txn, boolean isStreaming) {
-            if(!isStreaming) {
-                txn.sort((i1, i2) -> frequentItemOrder.get(i1).compareTo(frequentItemOrder.get(i2)));
-            } else {
-                txn.sort((i1, i2) ->
-                                 frequentItemOrder.compute(i1, (k, v) -> v == null ? -i1 : v)
-                                         .compareTo(frequentItemOrder.compute(i2, (k, v) -> v == null ? -i2 : v)));
+        // items first seen while streaming sort by id until the order is next updated
+        private int getOrder(int item) {
+            return frequentItemOrder.get(item, -item);
+        }
+
+        // writes the items of transaction that have counts to txnItems,
+        // sorted by order; returns how many
+        private int bufferFrequent(Collection<Integer> transaction) {
+            if(txnItems.length < transaction.size()) {
+                txnItems = new int[transaction.size()];
+                txnOrders = new int[transaction.size()];
+            }
+
+            int n = 0;
+            for(int item : transaction) {
+                if(!frequentItemCounts.containsKey(item)) {
+                    continue;
+                }
+
+                // transactions are short, so insertion sort
+                int order = getOrder(item);
+                int i = n++;
+                while(i > 0 && txnOrders[i - 1] > order) {
+                    txnItems[i] = txnItems[i - 1];
+                    txnOrders[i] = txnOrders[i - 1];
+                    --i;
+                }
+                txnItems[i] = item;
+                txnOrders[i] = order;
             }
+            return n;
         }
 
         public void insertConditionalFrequentPatterns(List<ItemsetWithCount> patterns) {
@@ -374,10 +436,8 @@ public class StreamingFPGrowth {
         }
 
         public void reinsertBranch(Set<Integer> pattern, double count, FPTreeNode rootOfBranch) {
-            List<Integer> filtered = pattern.stream().filter(i -> frequentItemCounts.containsKey(i)).collect(
-                    Collectors.toList());
-            sortTransaction(filtered, false);
-            rootOfBranch.insertTransaction(filtered, 0, count, false);
+            int n = bufferFrequent(pattern);
+            rootOfBranch.insertTransaction(txnItems, n, 0, count, false);
         }
 
 
@@ -388,23 +448,25 @@ public class StreamingFPGrowth {
         }
 
         public void insertTransaction(Collection<Integer> transaction, boolean streaming, boolean filterExistingFrequentItemsOnly) {
+            // a weight of one now
+            final double weight = 1 / scale;
+
             if(streaming && !filterExistingFrequentItemsOnly) {
-                for (Integer item : transaction) {
-                    frequentItemCounts.compute(item, (k, v) -> v == null ? 1 : v + 1);
+                for (int item : transaction) {
+                    frequentItemCounts.addTo(item, weight);
                 }
             }
 
-            List<Integer> filtered = transaction.stream().filter(i -> frequentItemCounts.containsKey(i)).collect(Collectors.toList());
+            int n = bufferFrequent(transaction);
 
-            if(!filtered.isEmpty()) {
+            if(n > 0) {
                 if(streaming && filterExistingFrequentItemsOnly) {
-                    for (Integer item : filtered) {
-                        frequentItemCounts.compute(item, (k, v) -> v == null ? 1 : v + 1);
+                    for (int i = 0; i < n; ++i) {
+                        frequentItemCounts.addTo(txnItems[i], weight);
                     }
                 }
 
-                sortTransaction(filtered, streaming);
-                root.insertTransaction(filtered, 0, 1, streaming);
+                root.insertTransaction(txnItems, n, 0, weight, streaming);
             }
         }
 
@@ -417,7 +479,7 @@ public class StreamingFPGrowth {
             FPTreeNode nodeOfBranching = null;
             Set<FPTreeNode> singlePathNodes = new HashSet<>();
             while(true) {
-                if(curNode.count < supportCountRequired) {
+                if(getCount(curNode) < supportCountRequired) {
                     break;
                 }
 
@@ -447,8 +509,8 @@ public class StreamingFPGrowth {
                 for(FPTreeNode n : subset) {
                     items.add(n.getItem());
 
-                    if(minSupportInSubset == -1 || n.getCount() < minSupportInSubset) {
-                        minSupportInSubset = n.getCount();
+                    if(minSupportInSubset == -1 || getCount(n) < minSupportInSubset) {
+                        minSupportInSubset = getCount(n);
                     }
                 }
 
@@ -476,20 +538,20 @@ public class StreamingFPGrowth {
 
             for(Map.Entry<Integer, FPTreeNode> header : nodeHeaders.entrySet()) {
                 if (alreadyMinedItems.contains(header.getKey())
-                    || frequentItemCounts.get(header.getKey()) < supportCountRequired) {
+                    || getItemCount(header.getKey()) < supportCountRequired) {
                     continue;
                 }
 
                 // add the singleton item set
                 branchingItemsets.add(new ItemsetWithCount(Sets.newHashSet(header.getKey()),
-                                                           frequentItemCounts.get(header.getKey())));
+                                                           getItemCount(header.getKey())));
 
                 List<ItemsetWithCount> conditionalPatternBase = new ArrayList<>();
 
                 // walk each "leaf" node
                 FPTreeNode conditionalNode = header.getValue();
                 while (conditionalNode != null) {
-                    final double leafSupport = conditionalNode.getCount();
+                    final double leafSupport = getCount(conditionalNode);
 
                     // walk the tree up to the branch node
                     Set<Integer> conditionalPattern = new HashSet<>();
@@ -584,7 +646,7 @@ public class StreamingFPGrowth {
 
                 removedNodes.add(leaf);
 
-                int curLowestNodeOrder = frequentItemOrder.get(leaf.getItem());
+                int curLowestNodeOrder = getOrder(leaf.getItem());
 
                 FPTreeNode node = leaf.getParent();
                 node.removeChild(leaf);
@@ -593,7 +655,7 @@ public class StreamingFPGrowth {
                         break;
                     }
 
-                    int nodeOrder = frequentItemOrder.get(node.getItem());
+                    int nodeOrder = getOrder(node.getItem());
                     if(sortedNodes.contains(node) && nodeOrder < curLowestNodeOrder) {
                         break;
                     } else if(nodeOrder < curLowestNodeOrder) {
@@ -668,11 +730,18 @@ public class StreamingFPGrowth {
     }
 
     public void decayAndResetFrequentItems(Map<Integer, Double> newFrequentItems, double decayRate) {
-        Set<Integer> toRemove = Sets.difference(fp.frequentItemOrder.keySet(), newFrequentItems.keySet()).immutableCopy();
-        fp.frequentItemCounts = newFrequentItems;
+        // every item in the tree has a count
+        Set<Integer> toRemove = new HashSet<>();
+        for(int item : fp.frequentItemCounts.keys()) {
+            if(!newFrequentItems.containsKey(item)) {
+                toRemove.add(item);
+            }
+        }
+        // copied: the caller keeps its map
+        fp.setFrequentItemCounts(newFrequentItems);
         fp.updateFrequentItemOrder();
         if(decayRate > 0) {
-            fp.decayWeights(fp.root, (1 - decayRate));
+            fp.decayWeights(1 - decayRate);
         }
         restructureTree(toRemove);
     }
@@ -690,6 +759,6 @@ public class StreamingFPGrowth {
             restructureTree(null);
         }
 
-        return fp.mineItemsets((int)(fp.root.getCount()*support));
+        return fp.mineItemsets((int)(fp.getCount(fp.root)*support));
     }
 }
@@ -0,0 +1,271 @@
+package macrobase.analysis.summary.quantile;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable, decayable quantile sketch after Dunning's merging t-digest
+ * (https://github.com/tdunning/t-digest).
+ *
+ * Values are appended to a buffer; when it fills, the buffer is sorted
+ * and merged into the (sorted) centroids, which are then compressed so
+ * that each centroid spans at most one unit of the scale function
+ * k(q) = compression / (2 pi) * asin(2q - 1). Centroids are therefore
+ * small near the tails and large near the median, there are O(compression)
+ * of them, and an insert costs O(log bufferSize) amortized.
+ *
+ * Decay is lazy: decay(f) only multiplies a global scale, and new values
+ * are inserted with weight / scale. Stored weights are renormalized when
+ * the scale gets small.
+ */
+public class TDigest {
+    private static final double DEFAULT_COMPRESSION = 100;
+    private static final double RENORMALIZE_BELOW = 1e-50;
+
+    private final double compression;
+
+    // sorted by mean
+    private double[] means;
+    private double[] weights;
+    private int numCentroids = 0;
+
+    private final double[] bufferValues;
+    private final double[] bufferWeights;
+    private int bufferSize = 0;
+
+    // centroids and buffer merged in order, reused across flushes
+    private double[] mergedMeans = new double[0];
+    private double[] mergedWeights = new double[0];
+
+    // all stored weights are to be multiplied by scale
+    private double scale = 1;
+    private double totalWeight = 0;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public TDigest(double compression) {
+        this.compression = compression;
+
+        int maxCentroids = (int) Math.ceil(compression) * 2 + 10;
+        means = new double[maxCentroids];
+        weights = new double[maxCentroids];
+
+        int capacity = (int) Math.ceil(compression) * 5;
+        bufferValues = new double[capacity];
+        bufferWeights = new double[capacity];
+    }
+
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    public void add(double value, double weight) {
+        if(bufferSize == bufferValues.length) {
+            flush();
+        }
+
+        bufferValues[bufferSize] = value;
+        bufferWeights[bufferSize] = weight / scale;
+        bufferSize++;
+        totalWeight += weight / scale;
+
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds other's (decayed) weight to this sketch.
+     */
+    public void merge(TDigest other) {
+        other.flush();
+        for(int i = 0; i < other.numCentroids; ++i) {
+            add(other.means[i], other.weights[i] * other.scale);
+        }
+    }
+
+    /**
+     * Multiplies the weight of everything seen so far by factor.
+     */
+    public void decay(double factor) {
+        scale *= factor;
+        if(scale < RENORMALIZE_BELOW) {
+            for(int i = 0; i < numCentroids; ++i) {
+                weights[i] *= scale;
+            }
+            for(int i = 0; i < bufferSize; ++i) {
+                bufferWeights[i] *= scale;
+            }
+            totalWeight *= scale;
+            scale = 1;
+        }
+    }
+
+    public double getTotalWeight() {
+        return totalWeight * scale;
+    }
+
+    public int getNumCentroids() {
+        flush();
+        return numCentroids;
+    }
+
+    private double k(double q) {
+        return compression / (2 * Math.PI) * Math.asin(Math.min(1, 2 * q - 1));
+    }
+
+    private double inverseK(double k) {
+        return (Math.sin(Math.min(Math.PI / 2, k * 2 * Math.PI / compression)) + 1) / 2;
+    }
+
+    private void flush() {
+        if(bufferSize == 0) {
+            return;
+        }
+
+        // sort the buffer, then merge it with the centroids
+        sort(bufferValues, bufferWeights, 0, bufferSize - 1);
+
+        int total = numCentroids + bufferSize;
+        if(mergedMeans.length < total) {
+            mergedMeans = new double[total];
+            mergedWeights = new double[total];
+        }
+        int c = 0;
+        int b = 0;
+        for(int i = 0; i < total; ++i) {
+            if(b == bufferSize || (c < numCentroids && means[c] <= bufferValues[b])) {
+                mergedMeans[i] = means[c];
+                mergedWeights[i] = weights[c];
+                c++;
+            } else {
+                mergedMeans[i] = bufferValues[b];
+                mergedWeights[i] = bufferWeights[b];
+                b++;
+            }
+        }
+        bufferSize = 0;
+
+        compress(mergedMeans, mergedWeights, total);
+    }
+
+    // quicksort of values[lo..hi], permuting weights alongside
+    private static void sort(double[] values, double[] weights, int lo, int hi) {
+        while(lo < hi) {
+            double pivot = values[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while(i <= j) {
+                while(values[i] < pivot) {
+                    i++;
+                }
+                while(values[j] > pivot) {
+                    j--;
+                }
+                if(i <= j) {
+                    double tmp = values[i];
+                    values[i] = values[j];
+                    values[j] = tmp;
+                    tmp = weights[i];
+                    weights[i] = weights[j];
+                    weights[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+
+            // recurse into the smaller side to bound the stack depth
+            if(j - lo < hi - i) {
+                sort(values, weights, lo, j);
+                lo = i;
+            } else {
+                sort(values, weights, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    private void compress(double[] inMeans, double[] inWeights, int count) {
+        double weightSoFar = 0;
+        double curMean = inMeans[0];
+        double curWeight = inWeights[0];
+        // the current centroid may grow until k has risen by one from its start
+        double weightLimit = totalWeight * inverseK(k(0) + 1);
+
+        numCentroids = 0;
+        for(int i = 1; i < count; ++i) {
+            double proposed = curWeight + inWeights[i];
+            if(weightSoFar + proposed <= weightLimit) {
+                curMean += (inMeans[i] - curMean) * inWeights[i] / proposed;
+                curWeight = proposed;
+            } else {
+                emit(curMean, curWeight);
+                weightSoFar += curWeight;
+                weightLimit = totalWeight * inverseK(k(weightSoFar / totalWeight) + 1);
+                curMean = inMeans[i];
+                curWeight = inWeights[i];
+            }
+        }
+        emit(curMean, curWeight);
+    }
+
+    private void emit(double mean, double weight) {
+        if(numCentroids == means.length) {
+            means = Arrays.copyOf(means, numCentroids * 2);
+            weights = Arrays.copyOf(weights, numCentroids * 2);
+        }
+        means[numCentroids] = mean;
+        weights[numCentroids] = weight;
+        numCentroids++;
+    }
+
+    /**
+     * Estimated q-quantile, interpolating between centroid centers; NaN if
+     * nothing has been added.
+     */
+    public double quantile(double q) {
+        flush();
+        if(numCentroids == 0) {
+            return Double.NaN;
+        }
+        if(numCentroids == 1) {
+            return means[0];
+        }
+
+        double index = q * totalWeight;
+        double firstHalf = weights[0] / 2;
+        if(index < firstHalf) {
+            return min + (means[0] - min) * index / firstHalf;
+        }
+
+        // cumulative weight up to the center of centroid i
+        double cumulative = firstHalf;
+        for(int i = 0; i < numCentroids - 1; ++i) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if(cumulative + step > index) {
+                return means[i] + (means[i + 1] - means[i]) * (index - cumulative) / step;
+            }
+            cumulative += step;
+        }
+
+        int last = numCentroids - 1;
+        double lastHalf = weights[last] / 2;
+        return means[last] + (max - means[last]) * Math.min(1, (index - cumulative) / lastHalf);
+    }
+
+    /**
+     * A sketch of |x - center| over the values x summarized here, built
+     * from the centroids (so it is only as accurate as they are).
+     */
+    public TDigest deviations(double center) {
+        flush();
+        TDigest ret = new TDigest(compression);
+        for(int i = 0; i < numCentroids; ++i) {
+            ret.add(Math.abs(means[i] - center), weights[i] * scale);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,228 @@
+package macrobase.datamodel;
+
+import org.apache.commons.math3.linear.ArrayRealVector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Columnar alternative to a List<Datum>: each encoded attribute and each
+ * metric is stored in its own primitive array, so a row costs
+ * 4 bytes per attribute and 8 bytes per metric instead of a Datum,
+ * a boxed attribute list and a RealVector.
+ */
+public class DatumBatch {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private final int numAttributes;
+    private final int numMetrics;
+
+    // indexed [column][row]
+    private int[][] attributes;
+    private double[][] metrics;
+
+    private int size = 0;
+
+    /**
+     * Lightweight view of a single row; valid until the batch is modified.
+     */
+    public class Row {
+        private final int index;
+
+        private Row(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getAttribute(int column) {
+            return attributes[column][index];
+        }
+
+        public double getMetric(int column) {
+            return metrics[column][index];
+        }
+    }
+
+    public DatumBatch(int numAttributes, int numMetrics) {
+        this(numAttributes, numMetrics, DEFAULT_CAPACITY);
+    }
+
+    public DatumBatch(int numAttributes, int numMetrics, int initialCapacity) {
+        this.numAttributes = numAttributes;
+        this.numMetrics = numMetrics;
+
+        int capacity = Math.max(initialCapacity, 1);
+        attributes = new int[numAttributes][capacity];
+        metrics = new double[numMetrics][capacity];
+    }
+
+    /**
+     * Wraps existing columns (indexed [column][row]) without copying; each
+     * column must hold at least size entries.
+     */
+    public DatumBatch(int[][] attributes, double[][] metrics, int size) {
+        this.numAttributes = attributes.length;
+        this.numMetrics = metrics.length;
+        this.attributes = attributes;
+        this.metrics = metrics;
+        this.size = size;
+    }
+
+    public static DatumBatch fromDatums(List<Datum> data) {
+        int numAttributes = data.isEmpty() ? 0 : data.get(0).getAttributes().size();
+        int numMetrics = data.isEmpty() ? 0 : data.get(0).getMetrics().getDimension();
+
+        DatumBatch ret = new DatumBatch(numAttributes, numMetrics, data.size());
+        for(Datum d : data) {
+            int row = ret.addRow();
+            for(int i = 0; i < numAttributes; ++i) {
+                ret.setAttribute(row, i, d.getAttributes().get(i));
+            }
+            for(int i = 0; i < numMetrics; ++i) {
+                ret.setMetric(row, i, d.getMetrics().getEntry(i));
+            }
+        }
+
+        return ret;
+    }
+
+    private int capacity() {
+        if(numAttributes > 0) {
+            return attributes[0].length;
+        } else if(numMetrics > 0) {
+            return metrics[0].length;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if(minCapacity <= capacity()) {
+            return;
+        }
+
+        int newCapacity = Math.max(minCapacity, capacity() + (capacity() >> 1));
+        for(int i = 0; i < numAttributes; ++i) {
+            attributes[i] = Arrays.copyOf(attributes[i], newCapacity);
+        }
+        for(int i = 0; i < numMetrics; ++i) {
+            metrics[i] = Arrays.copyOf(metrics[i], newCapacity);
+        }
+    }
+
+    // returns the index of the new (zeroed) row
+    public int addRow() {
+        ensureCapacity(size + 1);
+        return size++;
+    }
+
+    public void append(DatumBatch other) {
+        assert(other.numAttributes == numAttributes && other.numMetrics == numMetrics);
+
+        ensureCapacity(size + other.size);
+        for(int i = 0; i < numAttributes; ++i) {
+            System.arraycopy(other.attributes[i], 0, attributes[i], size, other.size);
+        }
+        for(int i = 0; i < numMetrics; ++i) {
+            System.arraycopy(other.metrics[i], 0, metrics[i], size, other.size);
+        }
+        size += other.size;
+    }
+
+    // copies the given rows, in order, into a new batch
+    public DatumBatch select(int[] rows, int numRows) {
+        DatumBatch ret = new DatumBatch(numAttributes, numMetrics, numRows);
+        for(int i = 0; i < numAttributes; ++i) {
+            int[] src = attributes[i];
+            int[] dst = ret.attributes[i];
+            for(int r = 0; r < numRows; ++r) {
+                dst[r] = src[rows[r]];
+            }
+        }
+        for(int i = 0; i < numMetrics; ++i) {
+            double[] src = metrics[i];
+            double[] dst = ret.metrics[i];
+            for(int r = 0; r < numRows; ++r) {
+                dst[r] = src[rows[r]];
+            }
+        }
+        ret.size = numRows;
+        return ret;
+    }
+
+    public void trimToSize() {
+        for(int i = 0; i < numAttributes; ++i) {
+            attributes[i] = Arrays.copyOf(attributes[i], Math.max(size, 1));
+        }
+        for(int i = 0; i < numMetrics; ++i) {
+            metrics[i] = Arrays.copyOf(metrics[i], Math.max(size, 1));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getNumAttributes() {
+        return numAttributes;
+    }
+
+    public int getNumMetrics() {
+        return numMetrics;
+    }
+
+    public int getAttribute(int row, int column) {
+        return attributes[column][row];
+    }
+
+    public void setAttribute(int row, int column, int value) {
+        attributes[column][row] = value;
+    }
+
+    public double getMetric(int row, int column) {
+        return metrics[column][row];
+    }
+
+    public void setMetric(int row, int column, double value) {
+        metrics[column][row] = value;
+    }
+
+    // backing arrays; only the first size() entries are valid
+    public int[] getAttributeColumn(int column) {
+        return attributes[column];
+    }
+
+    public double[] getMetricColumn(int column) {
+        return metrics[column];
+    }
+
+    public Row getRow(int row) {
+        return new Row(row);
+    }
+
+    // materializes a row; only for callers that still need a Datum
+    public Datum getDatum(int row) {
+        List<Integer> attrList = new ArrayList<>(numAttributes);
+        for(int i = 0; i < numAttributes; ++i) {
+            attrList.add(attributes[i][row]);
+        }
+
+        double[] metricVec = new double[numMetrics];
+        for(int i = 0; i < numMetrics; ++i) {
+            metricVec[i] = metrics[i][row];
+        }
+
+        return new Datum(attrList, new ArrayRealVector(metricVec, false));
+    }
+
+    public List<Datum> toDatums() {
+        List<Datum> ret = new ArrayList<>(size);
+        for(int i = 0; i < size; ++i) {
+            ret.add(getDatum(i));
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,66 @@
+package macrobase.ingest;
+
+import io.dropwizard.db.ManagedDataSource;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * One pooled data source per database url, shared by all requests and
+ * closed with the server. Resources check out a connection per request
+ * via getLoader() instead of building a new data source each time.
+ */
+public class DataSourceRegistry implements Managed {
+    private static final Logger log = LoggerFactory.getLogger(DataSourceRegistry.class);
+
+    private final Supplier<SQLLoader> loaderFactory;
+    private final ConcurrentHashMap<String, ManagedDataSource> sources = new ConcurrentHashMap<>();
+    // data source names must be unique in the metric registry
+    private final AtomicInteger nextSourceId = new AtomicInteger();
+
+    public DataSourceRegistry(Supplier<SQLLoader> loaderFactory) {
+        this.loaderFactory = loaderFactory;
+    }
+
+    public ManagedDataSource getDataSource(String dbUrl) {
+        ManagedDataSource ret = sources.get(dbUrl);
+        if(ret == null) {
+            ret = sources.computeIfAbsent(dbUrl, url -> {
+                log.debug("Creating connection pool for {}", url);
+                return loaderFactory.get().buildDataSource(url, "postgres-" + nextSourceId.getAndIncrement());
+            });
+        }
+        return ret;
+    }
+
+    /**
+     * Returns a new loader holding a pooled connection to dbUrl; the caller
+     * must close it to return the connection.
+     */
+    public SQLLoader getLoader(String dbUrl) throws SQLException {
+        SQLLoader loader = loaderFactory.get();
+        loader.connect(getDataSource(dbUrl), dbUrl);
+        return loader;
+    }
+
+    public int size() {
+        return sources.size();
+    }
+
+    @Override
+    public void start() throws Exception {
+    }
+
+    @Override
+    public void stop() throws Exception {
+        for(ManagedDataSource source : sources.values()) {
+            source.stop();
+        }
+        sources.clear();
+    }
+}
@@ -1,33 +1,90 @@
 package macrobase.ingest;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-import com.google.common.collect.Maps;
-
 import macrobase.ingest.result.ColumnValue;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Encodes (column, value) pairs as dense integer ids. Safe for use by
+ * concurrent loaders: lookups of already-encoded values only touch the
+ * column's ConcurrentHashMap, and the global allocator lock is taken
+ * once per distinct value rather than once per row.
+ *
+ * An encoder can be saved and later re-opened from a memory-mapped file,
+ * in which case previously seen values keep their ids (matched by column
+ * name) and resolve without allocation; new values get fresh ids.
+ */
 public class DatumEncoder {
-    private HashMap<Integer, String> attributeDimensionNameMap = Maps.newHashMap();
-    private HashMap<Integer, HashBiMap<String, Integer>> integerEncoding = new HashMap<>();
-    private HashMap<Integer, Integer> integerToColumn = new HashMap<Integer, Integer>();
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static class ColumnDictionary {
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        // ConcurrentHashMap can't hold null keys
+        private volatile int nullId = -1;
+        // column in the persisted dictionary with the same name, if any
+        private volatile int persistedColumn = -1;
+    }
+
+    private final PersistedDictionary persisted;
+    // ids below this were loaded from the persisted dictionary
+    private final int firstNewKey;
+
+    private final ConcurrentHashMap<Integer, String> attributeDimensionNameMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, ColumnDictionary> integerEncoding = new ConcurrentHashMap<>();
 
-    private Integer nextKey = 0;
+    // reverse lookups for new ids, indexed by id - firstNewKey; guarded by allocationLock
+    private final Object allocationLock = new Object();
+    private int[] integerToColumn = new int[INITIAL_CAPACITY];
+    private String[] integerToValue = new String[INITIAL_CAPACITY];
+    private int nextKey;
+
+    public DatumEncoder() {
+        persisted = null;
+        firstNewKey = 0;
+        nextKey = 0;
+    }
+
+    /**
+     * Opens the dictionary previously saved to file, if it exists.
+     */
+    public DatumEncoder(File file) throws IOException {
+        persisted = file.exists() ? PersistedDictionary.open(file) : null;
+        firstNewKey = persisted == null ? 0 : persisted.getNumIds();
+        nextKey = firstNewKey;
+    }
 
+    // record names before encoding a column so that persisted values are reused
     public void recordAttributeName(int dimension, String attribute) {
         attributeDimensionNameMap.put(dimension, attribute);
+
+        if(persisted != null) {
+            integerEncoding.computeIfAbsent(dimension, key -> new ColumnDictionary())
+                    .persistedColumn = persisted.getColumnOrdinal(attribute);
+        }
     }
 
     public ColumnValue getAttribute(int encodedAttr) {
-        int matchingColumn = integerToColumn.get(encodedAttr);
+        if(encodedAttr < firstNewKey) {
+            int column = persisted.getColumnOfId(encodedAttr);
+            return new ColumnValue(persisted.getColumnName(column), persisted.getValue(encodedAttr));
+        }
 
-        String columnName = attributeDimensionNameMap.get(matchingColumn);
-        String columnValue = integerEncoding.get(matchingColumn).inverse().get(encodedAttr);
+        int matchingColumn;
+        String columnValue;
+        synchronized (allocationLock) {
+            matchingColumn = integerToColumn[encodedAttr - firstNewKey];
+            columnValue = integerToValue[encodedAttr - firstNewKey];
+        }
 
+        String columnName = attributeDimensionNameMap.get(matchingColumn);
         return new ColumnValue(columnName, columnValue);
     }
 
@@ -40,19 +97,94 @@ public class DatumEncoder {
         return ret;
     }
 
+    private int allocateKey(int dimension, String attr) {
+        synchronized (allocationLock) {
+            int idx = nextKey - firstNewKey;
+            if(idx == integerToColumn.length) {
+                integerToColumn = Arrays.copyOf(integerToColumn, idx * 2);
+                integerToValue = Arrays.copyOf(integerToValue, idx * 2);
+            }
+
+            integerToColumn[idx] = dimension;
+            integerToValue[idx] = attr;
+            return nextKey++;
+        }
+    }
+
+    private int getNullEncoding(int dimension, ColumnDictionary dimensionMap) {
+        int ret = dimensionMap.nullId;
+        if(ret < 0) {
+            synchronized (dimensionMap) {
+                if(dimensionMap.nullId < 0) {
+                    dimensionMap.nullId = allocateKey(dimension, null);
+                }
+                ret = dimensionMap.nullId;
+            }
+        }
+        return ret;
+    }
+
     public int getIntegerEncoding(int dimension, String attr) {
-        integerEncoding.computeIfAbsent(dimension, key -> HashBiMap.<String, Integer>create());
+        ColumnDictionary dimensionMap = integerEncoding.get(dimension);
+        if(dimensionMap == null) {
+            dimensionMap = integerEncoding.computeIfAbsent(dimension, key -> new ColumnDictionary());
+        }
 
+        int persistedColumn = dimensionMap.persistedColumn;
+        if(persistedColumn >= 0) {
+            int ret = persisted.lookup(persistedColumn, attr);
+            if(ret >= 0) {
+                return ret;
+            }
+        }
 
-        BiMap<String, Integer> dimensionMap = integerEncoding.get(dimension);
-        Integer ret = dimensionMap.get(attr);
+        if(attr == null) {
+            return getNullEncoding(dimension, dimensionMap);
+        }
+
+        Integer ret = dimensionMap.ids.get(attr);
         if(ret == null) {
-            ret = nextKey;
-            integerToColumn.put(nextKey, dimension);
-            dimensionMap.put(attr, ret);
-            nextKey++;
+            ret = dimensionMap.ids.computeIfAbsent(attr, key -> allocateKey(dimension, key));
         }
 
         return ret;
     }
+
+    /**
+     * Writes every encoding (persisted and new) to file, keyed by column name.
+     */
+    public void save(File file) throws IOException {
+        List<String> columnNames = new ArrayList<>();
+        Map<String, Integer> columnOrdinals = new HashMap<>();
+
+        synchronized (allocationLock) {
+            int[] idColumns = new int[nextKey];
+            String[] idValues = new String[nextKey];
+
+            for(int id = 0; id < nextKey; ++id) {
+                String columnName;
+                if(id < firstNewKey) {
+                    columnName = persisted.getColumnName(persisted.getColumnOfId(id));
+                    idValues[id] = persisted.getValue(id);
+                } else {
+                    int dimension = integerToColumn[id - firstNewKey];
+                    columnName = attributeDimensionNameMap.get(dimension);
+                    if(columnName == null) {
+                        columnName = String.valueOf(dimension);
+                    }
+                    idValues[id] = integerToValue[id - firstNewKey];
+                }
+
+                Integer ordinal = columnOrdinals.get(columnName);
+                if(ordinal == null) {
+                    ordinal = columnNames.size();
+                    columnNames.add(columnName);
+                    columnOrdinals.put(columnName, ordinal);
+                }
+                idColumns[id] = ordinal;
+            }
+
+            PersistedDictionary.write(file, columnNames, idColumns, idValues);
+        }
+    }
 }
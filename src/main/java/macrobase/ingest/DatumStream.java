@@ -0,0 +1,15 @@
+package macrobase.ingest;
+
+import macrobase.datamodel.Datum;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+
+/**
+ * Datums read lazily from an open query. close() releases the query, and
+ * the transaction holding its cursor, whether or not every row was read.
+ */
+public interface DatumStream extends Iterator<Datum>, AutoCloseable {
+    @Override
+    void close() throws SQLException;
+}
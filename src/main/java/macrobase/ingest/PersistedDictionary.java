@@ -0,0 +1,231 @@
+package macrobase.ingest;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped view of a DatumEncoder dictionary.
+ *
+ * Layout (big-endian; strings are stored as UTF-16 chars so they can be
+ * compared against a String without decoding):
+ *
+ *   int magic, int version, int numIds, int numColumns
+ *   per column: int nameLength, char[] name, int nullId, int numValues,
+ *               int[numValues] ids, sorted by value
+ *   per id:     int column, int valueOffset, int valueLength (-1 for null)
+ *   char[] value data
+ */
+class PersistedDictionary {
+    private static final int MAGIC = 0x4d424443;
+    private static final int VERSION = 1;
+
+    private static final int ID_ENTRY_BYTES = 12;
+
+    private final MappedByteBuffer buffer;
+    private final int numIds;
+    private final List<String> columnNames = new ArrayList<>();
+    private final Map<String, Integer> columnOrdinals = new HashMap<>();
+    private final int[] columnNullIds;
+    private final int[] columnNumValues;
+    private final int[] columnSortedIdsPos;
+    private final int idTablePos;
+    private final int valueDataPos;
+
+    private PersistedDictionary(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a dictionary file (or unsupported version)");
+        }
+
+        numIds = buffer.getInt(8);
+        int numColumns = buffer.getInt(12);
+        columnNullIds = new int[numColumns];
+        columnNumValues = new int[numColumns];
+        columnSortedIdsPos = new int[numColumns];
+
+        int pos = 16;
+        for(int c = 0; c < numColumns; ++c) {
+            int nameLength = buffer.getInt(pos);
+            pos += 4;
+            char[] name = new char[nameLength];
+            for(int i = 0; i < nameLength; ++i) {
+                name[i] = buffer.getChar(pos);
+                pos += 2;
+            }
+            columnNames.add(new String(name));
+            columnOrdinals.put(columnNames.get(c), c);
+
+            columnNullIds[c] = buffer.getInt(pos);
+            columnNumValues[c] = buffer.getInt(pos + 4);
+            columnSortedIdsPos[c] = pos + 8;
+            pos += 8 + 4 * columnNumValues[c];
+        }
+
+        idTablePos = pos;
+        valueDataPos = idTablePos + ID_ENTRY_BYTES * numIds;
+    }
+
+    public static PersistedDictionary open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Dictionary file too large to map: " + file);
+            }
+            return new PersistedDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getNumIds() {
+        return numIds;
+    }
+
+    // -1 if the column was not persisted
+    public int getColumnOrdinal(String columnName) {
+        Integer ret = columnOrdinals.get(columnName);
+        return ret == null ? -1 : ret;
+    }
+
+    public String getColumnName(int column) {
+        return columnNames.get(column);
+    }
+
+    public int getColumnOfId(int id) {
+        return buffer.getInt(idTablePos + ID_ENTRY_BYTES * id);
+    }
+
+    public String getValue(int id) {
+        int entry = idTablePos + ID_ENTRY_BYTES * id;
+        int offset = buffer.getInt(entry + 4);
+        int length = buffer.getInt(entry + 8);
+        if(length < 0) {
+            return null;
+        }
+
+        char[] value = new char[length];
+        for(int i = 0; i < length; ++i) {
+            value[i] = buffer.getChar(valueDataPos + 2 * (offset + i));
+        }
+        return new String(value);
+    }
+
+    // same ordering as String.compareTo; does not allocate
+    private int compareValue(int id, String value) {
+        int entry = idTablePos + ID_ENTRY_BYTES * id;
+        int offset = valueDataPos + 2 * buffer.getInt(entry + 4);
+        int length = buffer.getInt(entry + 8);
+
+        int common = Math.min(length, value.length());
+        for(int i = 0; i < common; ++i) {
+            int cmp = buffer.getChar(offset + 2 * i) - value.charAt(i);
+            if(cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - value.length();
+    }
+
+    // returns the persisted id of value in column, or -1 if absent
+    public int lookup(int column, String value) {
+        if(value == null) {
+            return columnNullIds[column];
+        }
+
+        int lo = 0;
+        int hi = columnNumValues[column] - 1;
+        int sortedIdsPos = columnSortedIdsPos[column];
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int id = buffer.getInt(sortedIdsPos + 4 * mid);
+            int cmp = compareValue(id, value);
+            if(cmp < 0) {
+                lo = mid + 1;
+            } else if(cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes ids 0..idColumns.length-1 to file; idColumns holds an index
+     * into columnNames for each id. The file is replaced atomically, so it
+     * is safe to overwrite a dictionary that is currently mapped.
+     */
+    public static void write(File file,
+                             List<String> columnNames,
+                             int[] idColumns,
+                             String[] idValues) throws IOException {
+        int numColumns = columnNames.size();
+        List<List<Integer>> columnIds = new ArrayList<>(numColumns);
+        int[] nullIds = new int[numColumns];
+        Arrays.fill(nullIds, -1);
+        for(int c = 0; c < numColumns; ++c) {
+            columnIds.add(new ArrayList<>());
+        }
+
+        for(int id = 0; id < idColumns.length; ++id) {
+            if(idValues[id] == null) {
+                nullIds[idColumns[id]] = id;
+            } else {
+                columnIds.get(idColumns[id]).add(id);
+            }
+        }
+
+        File tmp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(idColumns.length);
+            out.writeInt(numColumns);
+
+            for(int c = 0; c < numColumns; ++c) {
+                out.writeInt(columnNames.get(c).length());
+                out.writeChars(columnNames.get(c));
+
+                List<Integer> ids = columnIds.get(c);
+                ids.sort((a, b) -> idValues[a].compareTo(idValues[b]));
+                out.writeInt(nullIds[c]);
+                out.writeInt(ids.size());
+                for(int id : ids) {
+                    out.writeInt(id);
+                }
+            }
+
+            int offset = 0;
+            for(int id = 0; id < idColumns.length; ++id) {
+                out.writeInt(idColumns[id]);
+                out.writeInt(offset);
+                if(idValues[id] == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(idValues[id].length());
+                    offset += idValues[id].length();
+                }
+            }
+
+            for(String value : idValues) {
+                if(value != null) {
+                    out.writeChars(value);
+                }
+            }
+        }
+
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
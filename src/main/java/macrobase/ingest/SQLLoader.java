@@ -1,12 +1,15 @@
 package macrobase.ingest;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import io.dropwizard.db.DataSourceFactory;
 import io.dropwizard.db.ManagedDataSource;
 import macrobase.MacroBase;
 import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
 import macrobase.ingest.result.ColumnValue;
 import macrobase.ingest.result.RowSet;
 import macrobase.ingest.result.Schema;
@@ -19,37 +22,131 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.StringJoiner;
 import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 import java.util.stream.StreamSupport;
 
-public abstract class SQLLoader {
+public abstract class SQLLoader implements AutoCloseable {
     abstract public String getDriverClass();
     abstract public String getJDBCUrlPrefix();
 
-    @SuppressWarnings("unused")
-	private static final Logger log = LoggerFactory.getLogger(SQLLoader.class);
+    private static final Logger log = LoggerFactory.getLogger(SQLLoader.class);
+
+    // rows the driver buffers per round trip when streaming results
+    private static final int DEFAULT_FETCH_SIZE = 10000;
+
+    private static final Pattern LIMIT = Pattern.compile("LIMIT\\s\\d+");
+
+    private static final Set<Integer> NUMERIC_TYPES = ImmutableSet.of(
+            Types.TINYINT, Types.SMALLINT, Types.INTEGER, Types.BIGINT,
+            Types.REAL, Types.FLOAT, Types.DOUBLE, Types.NUMERIC, Types.DECIMAL);
+
+    // partition queries from all loaders share these threads; any beyond
+    // them wait for a free one
+    private static final int MAX_PARTITION_THREADS = 16;
+    private static final ThreadPoolExecutor partitionExecutor = createPartitionExecutor();
+
+    private static ThreadPoolExecutor createPartitionExecutor() {
+        ThreadPoolExecutor ret = new ThreadPoolExecutor(
+                MAX_PARTITION_THREADS, MAX_PARTITION_THREADS,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("sqlloader-partition-%d").setDaemon(true).build());
+        ret.allowCoreThreadTimeOut(true);
+        return ret;
+    }
 
     private ManagedDataSource source;
 
     private Connection connection;
 
+    private String dbUrl;
+
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    private String partitionColumn;
+    private int numPartitions = 1;
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Load data batches with numPartitions concurrent range queries over
+     * the (numeric) partitionColumn, each on its own connection. At most
+     * MAX_PARTITION_THREADS queries (across all loaders) run at once.
+     *
+     * Each partition reruns the base query, so a base query with a LIMIT
+     * (which, without an ORDER BY, may pick different rows each time) is
+     * loaded serially instead.
+     */
+    public void setPartitioning(String partitionColumn, int numPartitions) {
+        this.partitionColumn = partitionColumn;
+        this.numPartitions = numPartitions;
+    }
+
     private String removeLimit(String sql) {
-        return sql.replaceAll("LIMIT\\s\\d+", "");
+        return LIMIT.matcher(sql).replaceAll("");
     }
 
     private String removeSqlJunk(String sql) {
         return sql.replaceAll(";", "").replaceAll("'", "''");
     }
 
-    public void connect(String pgUrl) throws SQLException {
+    public ManagedDataSource buildDataSource(String pgUrl, String name) {
         DataSourceFactory factory = new DataSourceFactory();
         factory.setDriverClass(getDriverClass());
         factory.setUrl(getJDBCUrlPrefix()+pgUrl);
-        source = factory.build(MacroBase.metrics, "postgres");
+        return factory.build(MacroBase.metrics, name);
+    }
+
+    public void connect(String pgUrl) throws SQLException {
+        connect(buildDataSource(pgUrl, "postgres"), pgUrl);
+    }
+
+    /**
+     * Checks a connection out of a (shared, pooled) source; it is returned
+     * to the pool by close().
+     */
+    public void connect(ManagedDataSource source, String pgUrl) throws SQLException {
+        close();
+        this.source = source;
         connection = source.getConnection();
+        dbUrl = pgUrl;
+    }
 
+    /**
+     * Returns the connection to the pool, first rolling back any query
+     * still open on it (e.g., an unfinished getDataStream).
+     */
+    @Override
+    public void close() throws SQLException {
+        if(connection != null) {
+            try {
+                if(!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } finally {
+                connection.close();
+                connection = null;
+            }
+        }
+    }
+
+    // the url passed to connect, or null if not yet connected
+    public String getDbUrl() {
+        return dbUrl;
     }
 
     public Schema getSchema(String baseQuery)
@@ -64,6 +161,8 @@ public abstract class SQLLoader {
             columns.add(new Schema.SchemaColumn(rs.getMetaData().getColumnName(i),
                                                 rs.getMetaData().getColumnTypeName(i)));
         }
+        // connections are pooled, so don't leave the statement open
+        stmt.close();
 
         return new Schema(columns);
     }
@@ -103,56 +202,388 @@ public abstract class SQLLoader {
             }
             rows.add(new RowSet.Row(columnValues));
         }
+        stmt.close();
 
         return new RowSet(rows);
     }
 
-    public List<Datum> getData(DatumEncoder encoder,
-                               List<String> attributes,
-                               List<String> lowMetrics,
-                               List<String> highMetrics,
-                               String baseQuery) throws SQLException {
-
+    private String getDataQuery(List<String> attributes,
+                                List<String> lowMetrics,
+                                List<String> highMetrics,
+                                String baseQuery) {
         String targetColumns = StreamSupport.stream(
                 Iterables.concat(attributes, lowMetrics, highMetrics).spliterator(), false)
                 .collect(Collectors.joining(", "));
-        String sql = String.format("SELECT %s FROM (%s) baseQuery",
-                                   targetColumns,
-                                   removeSqlJunk(baseQuery));
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery(sql);
+        return String.format("SELECT %s FROM (%s) baseQuery",
+                             targetColumns,
+                             removeSqlJunk(baseQuery));
+    }
 
+    // Postgres only honors the fetch size (i.e., uses a cursor instead of
+    // buffering the entire result) inside a transaction
+    private Statement createCursorStatement() throws SQLException {
+        return createCursorStatement(connection);
+    }
+
+    private Statement createCursorStatement(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try {
+            Statement stmt = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                                                  ResultSet.CONCUR_READ_ONLY);
+            stmt.setFetchSize(fetchSize);
+            return stmt;
+        } catch (SQLException e) {
+            conn.setAutoCommit(true);
+            throw e;
+        }
+    }
+
+    // connections are pooled, and the pool doesn't reset them, so every
+    // cursor statement ends in one of these two, leaving the connection
+    // back in autocommit
+    private void closeCursorStatement(Statement stmt) throws SQLException {
+        Connection conn = stmt.getConnection();
+        try {
+            stmt.close();
+            conn.commit();
+            conn.setAutoCommit(true);
+        } catch (SQLException e) {
+            abortCursorStatement(stmt);
+            throw e;
+        }
+    }
+
+    // on the error path; logs rather than masking the error that got us here
+    private void abortCursorStatement(Statement stmt) {
+        try {
+            Connection conn = stmt.getConnection();
+            try {
+                stmt.close();
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            log.warn("Failed to roll back cursor query", e);
+        }
+    }
 
+    private void recordAttributeNames(DatumEncoder encoder, ResultSet rs) throws SQLException {
         for(int i = 1; i <= rs.getMetaData().getColumnCount(); ++i) {
             encoder.recordAttributeName(i, rs.getMetaData().getColumnName(i));
         }
+    }
+
+    private Datum readDatum(DatumEncoder encoder,
+                            ResultSet rs,
+                            int numAttributes,
+                            int numLowMetrics,
+                            int numHighMetrics) throws SQLException {
+        List<Integer> attrList = new ArrayList<>(numAttributes);
+
+        int i = 1;
+        for(; i <= numAttributes; ++i) {
+            attrList.add(encoder.getIntegerEncoding(i, rs.getString(i)));
+        }
 
+        RealVector metricVec = new ArrayRealVector(numLowMetrics+numHighMetrics);
+        int vecPos = 0;
+
+        for(; i <= numAttributes+numLowMetrics; ++i) {
+            metricVec.setEntry(vecPos++, Math.pow(Math.max(rs.getDouble(i), 0.1), -1));
+        }
+
+        for(; i <= numAttributes+numLowMetrics+numHighMetrics; ++i) {
+            metricVec.setEntry(vecPos++, rs.getDouble(i));
+        }
+
+        return new Datum(attrList, metricVec);
+    }
+
+    public List<Datum> getData(DatumEncoder encoder,
+                               List<String> attributes,
+                               List<String> lowMetrics,
+                               List<String> highMetrics,
+                               String baseQuery) throws SQLException {
+        String sql = getDataQuery(attributes, lowMetrics, highMetrics, baseQuery);
         List<Datum> ret = Lists.newArrayList();
 
-        while(rs.next()) {
-            List<Integer> attrList = new ArrayList<>(attributes.size());
+        Statement stmt = createCursorStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(sql);
 
-            int i = 1;
-            for(; i <= attributes.size(); ++i) {
-                attrList.add(encoder.getIntegerEncoding(i, rs.getString(i)));
+            recordAttributeNames(encoder, rs);
+
+            while(rs.next()) {
+                ret.add(readDatum(encoder, rs, attributes.size(), lowMetrics.size(), highMetrics.size()));
             }
+        } catch (SQLException | RuntimeException e) {
+            abortCursorStatement(stmt);
+            throw e;
+        }
+        closeCursorStatement(stmt);
+
+        return ret;
+    }
+
+    private void readRow(DatumEncoder encoder,
+                         ResultSet rs,
+                         DatumBatch batch,
+                         int numAttributes,
+                         int numLowMetrics,
+                         int numHighMetrics) throws SQLException {
+        int row = batch.addRow();
+
+        int i = 1;
+        for(; i <= numAttributes; ++i) {
+            batch.setAttribute(row, i-1, encoder.getIntegerEncoding(i, rs.getString(i)));
+        }
+
+        int vecPos = 0;
+
+        for(; i <= numAttributes+numLowMetrics; ++i) {
+            batch.setMetric(row, vecPos++, Math.pow(Math.max(rs.getDouble(i), 0.1), -1));
+        }
 
-            RealVector metricVec = new ArrayRealVector(lowMetrics.size()+highMetrics.size());
-            int vecPos = 0;
+        for(; i <= numAttributes+numLowMetrics+numHighMetrics; ++i) {
+            batch.setMetric(row, vecPos++, rs.getDouble(i));
+        }
+    }
 
-            for(; i <= attributes.size()+lowMetrics.size(); ++i) {
-                metricVec.setEntry(vecPos++, Math.pow(Math.max(rs.getDouble(i), 0.1), -1));
+    /**
+     * Like getData, but stores the encoded attributes and metrics in a
+     * columnar DatumBatch instead of materializing a Datum per row.
+     */
+    public DatumBatch getDataBatch(DatumEncoder encoder,
+                                   List<String> attributes,
+                                   List<String> lowMetrics,
+                                   List<String> highMetrics,
+                                   String baseQuery) throws SQLException {
+        if(partitionColumn != null && numPartitions > 1) {
+            if(!LIMIT.matcher(baseQuery).find()) {
+                return getDataBatchPartitioned(encoder, attributes, lowMetrics, highMetrics, baseQuery);
             }
+            log.warn("Base query has a LIMIT, so partitions could overlap or miss rows; loading serially");
+        }
 
-            for(; i <= attributes.size()+lowMetrics.size()+highMetrics.size(); ++i) {
-                metricVec.setEntry(vecPos++, rs.getDouble(i));
+        String sql = getDataQuery(attributes, lowMetrics, highMetrics, baseQuery);
+        return readBatch(connection, encoder, sql, attributes.size(), lowMetrics.size(), highMetrics.size());
+    }
+
+    private DatumBatch readBatch(Connection conn,
+                                 DatumEncoder encoder,
+                                 String sql,
+                                 int numAttributes,
+                                 int numLowMetrics,
+                                 int numHighMetrics) throws SQLException {
+        DatumBatch ret = new DatumBatch(numAttributes, numLowMetrics + numHighMetrics);
+
+        Statement stmt = createCursorStatement(conn);
+        try {
+            ResultSet rs = stmt.executeQuery(sql);
+
+            recordAttributeNames(encoder, rs);
+
+            while(rs.next()) {
+                readRow(encoder, rs, ret, numAttributes, numLowMetrics, numHighMetrics);
             }
+        } catch (SQLException | RuntimeException e) {
+            abortCursorStatement(stmt);
+            throw e;
+        }
+        closeCursorStatement(stmt);
 
+        return ret;
+    }
 
-            ret.add(new Datum(attrList, metricVec));
+    // each row satisfies exactly one of the returned predicates; the first and
+    // last ranges are open-ended and NULLs are assigned to the last partition
+    private List<String> getPartitionPredicates(String baseQuery) throws SQLException {
+        String sql = String.format("SELECT min(%s), max(%s) FROM (%s) baseQuery",
+                                   partitionColumn,
+                                   partitionColumn,
+                                   removeSqlJunk(baseQuery));
+        double min;
+        double max;
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery(sql);
+            if(!NUMERIC_TYPES.contains(rs.getMetaData().getColumnType(1))) {
+                throw new SQLException(String.format("Partition column %s must be numeric, not %s",
+                                                     partitionColumn,
+                                                     rs.getMetaData().getColumnTypeName(1)));
+            }
+
+            rs.next();
+            min = rs.getDouble(1);
+            boolean noBounds = rs.wasNull();
+            max = rs.getDouble(2);
+            noBounds |= rs.wasNull();
+
+            // no rows, or only NULLs: nothing to split on
+            if(noBounds) {
+                return Collections.singletonList("TRUE");
+            }
+        }
+
+        List<String> ret = new ArrayList<>(numPartitions);
+        double width = (max - min) / numPartitions;
+        for(int i = 0; i < numPartitions; ++i) {
+            List<String> clauses = new ArrayList<>();
+            if(i > 0) {
+                clauses.add(String.format("%s >= %s", partitionColumn, min + i * width));
+            }
+            if(i < numPartitions - 1) {
+                clauses.add(String.format("%s < %s", partitionColumn, min + (i + 1) * width));
+            }
+
+            String pred = clauses.isEmpty() ? "TRUE" : String.join(" AND ", clauses);
+            if(i == numPartitions - 1) {
+                pred = String.format("(%s) OR %s IS NULL", pred, partitionColumn);
+            }
+            ret.add(pred);
         }
 
         return ret;
     }
 
+    private DatumBatch getDataBatchPartitioned(DatumEncoder encoder,
+                                               List<String> attributes,
+                                               List<String> lowMetrics,
+                                               List<String> highMetrics,
+                                               String baseQuery) throws SQLException {
+        String sql = getDataQuery(attributes, lowMetrics, highMetrics, baseQuery);
+        List<String> predicates = getPartitionPredicates(baseQuery);
+
+        List<Future<DatumBatch>> partitions = new ArrayList<>(predicates.size());
+        try {
+            for(String predicate : predicates) {
+                String partitionSql = String.format("%s WHERE %s", sql, predicate);
+                partitions.add(partitionExecutor.submit(() -> {
+                    try (Connection conn = source.getConnection()) {
+                        return readBatch(conn, encoder, partitionSql,
+                                         attributes.size(), lowMetrics.size(), highMetrics.size());
+                    }
+                }));
+            }
+
+            DatumBatch ret = new DatumBatch(attributes.size(), lowMetrics.size() + highMetrics.size());
+            for(Future<DatumBatch> partition : partitions) {
+                ret.append(partition.get());
+            }
+            return ret;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading partitions", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } finally {
+            // no-ops if they all completed
+            for(Future<DatumBatch> partition : partitions) {
+                partition.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Like getData, but reads rows lazily through a server-side cursor
+     * so that at most fetchSize rows are buffered at once. The query holds
+     * the connection until the stream is exhausted or closed, so callers
+     * should close it even if they stop early.
+     */
+    public DatumStream getDataStream(DatumEncoder encoder,
+                                     List<String> attributes,
+                                     List<String> lowMetrics,
+                                     List<String> highMetrics,
+                                     String baseQuery) throws SQLException {
+        String sql = getDataQuery(attributes, lowMetrics, highMetrics, baseQuery);
+        Statement stmt = createCursorStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(sql);
+
+            recordAttributeNames(encoder, rs);
+
+            return new DatumIterator(encoder, stmt, rs, attributes.size(), lowMetrics.size(), highMetrics.size());
+        } catch (SQLException | RuntimeException e) {
+            abortCursorStatement(stmt);
+            throw e;
+        }
+    }
+
+    private class DatumIterator implements DatumStream {
+        private final DatumEncoder encoder;
+        private final Statement stmt;
+        private final ResultSet rs;
+        private final int numAttributes;
+        private final int numLowMetrics;
+        private final int numHighMetrics;
+
+        private Datum next;
+        // the statement is closed once exhausted (or failed)
+        private boolean exhausted = false;
+
+        private DatumIterator(DatumEncoder encoder,
+                              Statement stmt,
+                              ResultSet rs,
+                              int numAttributes,
+                              int numLowMetrics,
+                              int numHighMetrics) {
+            this.encoder = encoder;
+            this.stmt = stmt;
+            this.rs = rs;
+            this.numAttributes = numAttributes;
+            this.numLowMetrics = numLowMetrics;
+            this.numHighMetrics = numHighMetrics;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(next != null) {
+                return true;
+            }
+
+            if(exhausted) {
+                return false;
+            }
+
+            try {
+                if(rs.next()) {
+                    next = readDatum(encoder, rs, numAttributes, numLowMetrics, numHighMetrics);
+                    return true;
+                }
+
+                exhausted = true;
+                closeCursorStatement(stmt);
+                return false;
+            } catch (SQLException e) {
+                if(!exhausted) {
+                    exhausted = true;
+                    abortCursorStatement(stmt);
+                }
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if(!exhausted) {
+                exhausted = true;
+                next = null;
+                abortCursorStatement(stmt);
+            }
+        }
+
+        @Override
+        public Datum next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Datum ret = next;
+            next = null;
+            return ret;
+        }
+    }
 }
@@ -0,0 +1,273 @@
+package macrobase.ingest;
+
+import macrobase.datamodel.DatumBatch;
+import macrobase.util.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local cache of encoded query results, so that repeated analyses of the
+ * same baseQuery skip the database. Each entry is a pair of files named
+ * by a hash of (dbUrl, baseQuery, attributes, metrics):
+ *
+ *   key.dict  the DatumEncoder dictionary the attributes were encoded with
+ *   key.cols  int magic, int version, int numRows, int numAttributes,
+ *             int numMetrics, then each attribute column (int[numRows])
+ *             and each metric column (double[numRows]), big-endian
+ *
+ * Entries are evicted least-recently-used first once the files exceed
+ * maxBytes. Access times survive restarts via the files' mtimes.
+ */
+public class SnapshotCache {
+    private static final Logger log = LoggerFactory.getLogger(SnapshotCache.class);
+
+    private static final int MAGIC = 0x4d424353;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 20;
+
+    private static final String COLUMNS_SUFFIX = ".cols";
+    private static final String DICTIONARY_SUFFIX = ".dict";
+
+    // bytes moved per write, and the largest region mapped at once
+    private static final int WRITE_CHUNK_BYTES = 1 << 20;
+    private static final int MAP_CHUNK_BYTES = 1 << 30;
+
+    public static class Snapshot {
+        private final DatumEncoder encoder;
+        private final DatumBatch batch;
+
+        private Snapshot(DatumEncoder encoder, DatumBatch batch) {
+            this.encoder = encoder;
+            this.batch = batch;
+        }
+
+        public DatumEncoder getEncoder() {
+            return encoder;
+        }
+
+        public DatumBatch getBatch() {
+            return batch;
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+
+    // key -> bytes on disk, least recently used first
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, .75f, true);
+    private long totalBytes = 0;
+
+    public SnapshotCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create snapshot cache directory " + directory);
+        }
+
+        File[] files = directory.listFiles();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for(File f : files) {
+            String name = f.getName();
+            if(name.endsWith(".tmp")) {
+                // left behind by an interrupted put
+                f.delete();
+            } else if(name.endsWith(COLUMNS_SUFFIX)) {
+                String key = name.substring(0, name.length() - COLUMNS_SUFFIX.length());
+                long bytes = f.length() + dictionaryFile(key).length();
+                entries.put(key, bytes);
+                totalBytes += bytes;
+            }
+        }
+    }
+
+    public static String key(String dbUrl,
+                             String baseQuery,
+                             List<String> attributes,
+                             List<String> lowMetrics,
+                             List<String> highMetrics) {
+        return Keys.sha256(dbUrl, baseQuery, attributes, lowMetrics, highMetrics);
+    }
+
+    private File columnsFile(String key) {
+        return new File(directory, key + COLUMNS_SUFFIX);
+    }
+
+    private File dictionaryFile(String key) {
+        return new File(directory, key + DICTIONARY_SUFFIX);
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized boolean contains(String key) {
+        return entries.containsKey(key);
+    }
+
+    // returns null on a miss
+    public synchronized Snapshot get(String key) throws IOException {
+        // get (unlike containsKey) marks the entry as recently used
+        if(entries.get(key) == null) {
+            return null;
+        }
+
+        // e.g. deleted from under us; an encoder opened on a missing
+        // dictionary would silently be empty, so reload instead
+        File columns = columnsFile(key);
+        File dictionary = dictionaryFile(key);
+        if(!columns.isFile() || !dictionary.isFile()) {
+            log.warn("Snapshot {} is missing files; evicting it", key);
+            remove(key);
+            return null;
+        }
+
+        columns.setLastModified(System.currentTimeMillis());
+        return new Snapshot(new DatumEncoder(dictionary), readColumns(columns));
+    }
+
+    public synchronized void put(String key, DatumEncoder encoder, DatumBatch batch) throws IOException {
+        remove(key);
+
+        // the columns file is moved into place last, so its presence marks
+        // a complete entry
+        File columns = columnsFile(key);
+        File dictionary = dictionaryFile(key);
+        File tmp = new File(directory, key + COLUMNS_SUFFIX + ".tmp");
+        encoder.save(dictionary);
+        writeColumns(tmp, batch);
+        Files.move(tmp.toPath(), columns.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        long bytes = columns.length() + dictionary.length();
+        entries.put(key, bytes);
+        totalBytes += bytes;
+
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while(totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            if(eldest.getKey().equals(key)) {
+                log.warn("Snapshot {} ({} bytes) exceeds the cache budget", key, bytes);
+                continue;
+            }
+            log.debug("Evicting snapshot {}", eldest.getKey());
+            deleteFiles(eldest.getKey());
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        Long bytes = entries.remove(key);
+        if(bytes != null) {
+            deleteFiles(key);
+            totalBytes -= bytes;
+        }
+    }
+
+    // readers that already mapped the files are unaffected by the delete
+    private void deleteFiles(String key) {
+        columnsFile(key).delete();
+        dictionaryFile(key).delete();
+    }
+
+    private static void writeColumns(File file, DatumBatch batch) throws IOException {
+        int numRows = batch.size();
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                                    StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(WRITE_CHUNK_BYTES);
+            buf.putInt(MAGIC).putInt(VERSION).putInt(numRows)
+                    .putInt(batch.getNumAttributes()).putInt(batch.getNumMetrics());
+
+            for(int c = 0; c < batch.getNumAttributes(); ++c) {
+                int[] column = batch.getAttributeColumn(c);
+                for(int row = 0; row < numRows; ) {
+                    if(buf.remaining() < Integer.BYTES) {
+                        flush(channel, buf);
+                    }
+                    int n = Math.min(numRows - row, buf.remaining() / Integer.BYTES);
+                    buf.asIntBuffer().put(column, row, n);
+                    buf.position(buf.position() + n * Integer.BYTES);
+                    row += n;
+                }
+            }
+
+            for(int c = 0; c < batch.getNumMetrics(); ++c) {
+                double[] column = batch.getMetricColumn(c);
+                for(int row = 0; row < numRows; ) {
+                    if(buf.remaining() < Double.BYTES) {
+                        flush(channel, buf);
+                    }
+                    int n = Math.min(numRows - row, buf.remaining() / Double.BYTES);
+                    buf.asDoubleBuffer().put(column, row, n);
+                    buf.position(buf.position() + n * Double.BYTES);
+                    row += n;
+                }
+            }
+
+            flush(channel, buf);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while(buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        buf.clear();
+    }
+
+    private static DatumBatch readColumns(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a snapshot file (or unsupported version): " + file);
+            }
+
+            int numRows = header.getInt(8);
+            int[][] attributes = new int[header.getInt(12)][];
+            double[][] metrics = new double[header.getInt(16)][];
+
+            long pos = HEADER_BYTES;
+            for(int c = 0; c < attributes.length; ++c) {
+                attributes[c] = new int[Math.max(numRows, 1)];
+                for(int row = 0; row < numRows; ) {
+                    int n = Math.min(numRows - row, MAP_CHUNK_BYTES / Integer.BYTES);
+                    channel.map(FileChannel.MapMode.READ_ONLY, pos, (long) n * Integer.BYTES)
+                            .asIntBuffer().get(attributes[c], row, n);
+                    pos += (long) n * Integer.BYTES;
+                    row += n;
+                }
+            }
+
+            for(int c = 0; c < metrics.length; ++c) {
+                metrics[c] = new double[Math.max(numRows, 1)];
+                for(int row = 0; row < numRows; ) {
+                    int n = Math.min(numRows - row, MAP_CHUNK_BYTES / Double.BYTES);
+                    channel.map(FileChannel.MapMode.READ_ONLY, pos, (long) n * Double.BYTES)
+                            .asDoubleBuffer().get(metrics[c], row, n);
+                    pos += (long) n * Double.BYTES;
+                    row += n;
+                }
+            }
+
+            return new DatumBatch(attributes, metrics, numRows);
+        }
+    }
+}
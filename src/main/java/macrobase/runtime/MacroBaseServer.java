@@ -4,9 +4,11 @@ import io.dropwizard.Application;
 import io.dropwizard.assets.AssetsBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import macrobase.ingest.DataSourceRegistry;
 import macrobase.ingest.PostgresLoader;
-import macrobase.ingest.SQLLoader;
+import macrobase.ingest.SnapshotCache;
 import macrobase.runtime.healthcheck.TemplateHealthCheck;
+import macrobase.runtime.jobs.AnalysisJobManager;
 import macrobase.runtime.resources.AnalyzeResource;
 import macrobase.runtime.resources.RowSetResource;
 import macrobase.runtime.resources.SchemaResource;
@@ -14,6 +16,8 @@ import macrobase.runtime.resources.HelloResource;
 import macrobase.runtime.standalone.batch.MacroBaseBatchCommand;
 import macrobase.runtime.standalone.streaming.MacroBaseStreamingCommand;
 
+import java.io.File;
+
 public class MacroBaseServer extends Application<ServerConfiguration> {
     public static void main(String[] args) throws Exception {
         new MacroBaseServer().run(args);
@@ -35,16 +39,29 @@ public class MacroBaseServer extends Application<ServerConfiguration> {
     public void run(ServerConfiguration configuration,
                     Environment environment) throws Exception {
 
-        SQLLoader loader = new PostgresLoader();
+        DataSourceRegistry dataSources = new DataSourceRegistry(PostgresLoader::new);
+        environment.lifecycle().manage(dataSources);
 
         final HelloResource resource = new HelloResource(
                 configuration.getTemplate(),
                 configuration.getDefaultName()
         );
         environment.jersey().register(resource);
-        environment.jersey().register(new SchemaResource(loader));
-        environment.jersey().register(new RowSetResource(loader));
-        environment.jersey().register(new AnalyzeResource(loader));
+        environment.jersey().register(new SchemaResource(dataSources));
+        environment.jersey().register(new RowSetResource(dataSources));
+        SnapshotCache snapshotCache = null;
+        if(configuration.getSnapshotCacheDir() != null) {
+            snapshotCache = new SnapshotCache(new File(configuration.getSnapshotCacheDir()),
+                                              configuration.getSnapshotCacheBytes());
+        }
+        AnalysisJobManager jobs = new AnalysisJobManager(configuration.getAnalysisThreads(),
+                                                         configuration.getAnalysisQueueSize(),
+                                                         configuration.getAnalysisResultCacheSize());
+        environment.lifecycle().manage(jobs);
+        environment.jersey().register(new AnalyzeResource(dataSources,
+                                                          snapshotCache,
+                                                          jobs,
+                                                          configuration.getAnalysisSyncTimeoutMillis()));
 
         final TemplateHealthCheck healthCheck =
                 new TemplateHealthCheck(configuration.getTemplate());
@@ -11,6 +11,18 @@ public class ServerConfiguration extends Configuration {
     @NotEmpty
     private String defaultName = "Stranger";
 
+    private String snapshotCacheDir;
+
+    private long snapshotCacheBytes = 10L << 30;
+
+    private int analysisThreads = 2;
+
+    private int analysisQueueSize = 32;
+
+    private int analysisResultCacheSize = 64;
+
+    private long analysisSyncTimeoutMillis = 30000;
+
     @JsonProperty
     public String getTemplate() {
         return template;
@@ -30,4 +42,64 @@ public class ServerConfiguration extends Configuration {
     public void setDefaultName(String name) {
         this.defaultName = name;
     }
-}
\ No newline at end of file
+
+    @JsonProperty
+    public String getSnapshotCacheDir() {
+        return snapshotCacheDir;
+    }
+
+    @JsonProperty
+    public void setSnapshotCacheDir(String snapshotCacheDir) {
+        this.snapshotCacheDir = snapshotCacheDir;
+    }
+
+    @JsonProperty
+    public long getSnapshotCacheBytes() {
+        return snapshotCacheBytes;
+    }
+
+    @JsonProperty
+    public void setSnapshotCacheBytes(long snapshotCacheBytes) {
+        this.snapshotCacheBytes = snapshotCacheBytes;
+    }
+
+    @JsonProperty
+    public int getAnalysisThreads() {
+        return analysisThreads;
+    }
+
+    @JsonProperty
+    public void setAnalysisThreads(int analysisThreads) {
+        this.analysisThreads = analysisThreads;
+    }
+
+    @JsonProperty
+    public int getAnalysisQueueSize() {
+        return analysisQueueSize;
+    }
+
+    @JsonProperty
+    public void setAnalysisQueueSize(int analysisQueueSize) {
+        this.analysisQueueSize = analysisQueueSize;
+    }
+
+    @JsonProperty
+    public int getAnalysisResultCacheSize() {
+        return analysisResultCacheSize;
+    }
+
+    @JsonProperty
+    public void setAnalysisResultCacheSize(int analysisResultCacheSize) {
+        this.analysisResultCacheSize = analysisResultCacheSize;
+    }
+
+    @JsonProperty
+    public long getAnalysisSyncTimeoutMillis() {
+        return analysisSyncTimeoutMillis;
+    }
+
+    @JsonProperty
+    public void setAnalysisSyncTimeoutMillis(long analysisSyncTimeoutMillis) {
+        this.analysisSyncTimeoutMillis = analysisSyncTimeoutMillis;
+    }
+}
@@ -0,0 +1,125 @@
+package macrobase.runtime.jobs;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import macrobase.analysis.result.AnalysisResult;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Status of one submitted analysis; serialized as the response to status
+ * polls. The result itself is fetched separately.
+ */
+public class AnalysisJob {
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+
+    private final String id;
+    private final String requestKey;
+    private final long submitTime;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Status status = Status.QUEUED;
+    private volatile String stage;
+    private volatile long startTime;
+    private volatile long finishTime;
+    private volatile boolean cached = false;
+    private volatile AnalysisResult result;
+    private volatile String error;
+
+    AnalysisJob(String id, String requestKey) {
+        this.id = id;
+        this.requestKey = requestKey;
+        this.submitTime = System.currentTimeMillis();
+    }
+
+    @JsonProperty
+    public String getId() {
+        return id;
+    }
+
+    @JsonIgnore
+    public String getRequestKey() {
+        return requestKey;
+    }
+
+    @JsonProperty
+    public Status getStatus() {
+        return status;
+    }
+
+    @JsonProperty
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    @JsonProperty
+    public long getSubmitTime() {
+        return submitTime;
+    }
+
+    @JsonProperty
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @JsonProperty
+    public long getFinishTime() {
+        return finishTime;
+    }
+
+    // true if the result was served from the cache without running
+    @JsonProperty
+    public boolean isCached() {
+        return cached;
+    }
+
+    @JsonProperty
+    public String getError() {
+        return error;
+    }
+
+    @JsonIgnore
+    public AnalysisResult getResult() {
+        return result;
+    }
+
+    @JsonIgnore
+    public boolean isDone() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    // returns false on timeout
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    void markRunning() {
+        startTime = System.currentTimeMillis();
+        status = Status.RUNNING;
+    }
+
+    void markSucceeded(AnalysisResult result, boolean cached) {
+        this.result = result;
+        this.cached = cached;
+        finishTime = System.currentTimeMillis();
+        status = Status.SUCCEEDED;
+        done.countDown();
+    }
+
+    void markFailed(Throwable t) {
+        error = t.toString();
+        finishTime = System.currentTimeMillis();
+        status = Status.FAILED;
+        done.countDown();
+    }
+}
@@ -0,0 +1,109 @@
+package macrobase.runtime.jobs;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.dropwizard.lifecycle.Managed;
+import macrobase.analysis.result.AnalysisResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs analyses on a bounded pool off the request threads. Completed
+ * results are cached by request key (LRU, at most resultCacheSize), and
+ * a request identical to one already queued or running joins that job
+ * instead of starting another.
+ */
+public class AnalysisJobManager implements Managed {
+    private static final Logger log = LoggerFactory.getLogger(AnalysisJobManager.class);
+
+    // how long finished jobs can still be polled
+    private static final long JOB_RETENTION_MINUTES = 60;
+
+    public interface AnalysisTask {
+        // may report progress via job.setStage
+        AnalysisResult run(AnalysisJob job) throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final Cache<String, AnalysisResult> results;
+    private final Cache<String, AnalysisJob> jobs;
+    // request key -> queued or running job
+    private final ConcurrentHashMap<String, AnalysisJob> inFlight = new ConcurrentHashMap<>();
+
+    public AnalysisJobManager(int numThreads, int queueSize, int resultCacheSize) {
+        executor = new ThreadPoolExecutor(numThreads, numThreads,
+                                          0L, TimeUnit.MILLISECONDS,
+                                          new ArrayBlockingQueue<>(queueSize));
+        results = CacheBuilder.newBuilder().maximumSize(resultCacheSize).build();
+        jobs = CacheBuilder.newBuilder()
+                .expireAfterAccess(JOB_RETENTION_MINUTES, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * Throws RejectedExecutionException if the queue is full.
+     */
+    public AnalysisJob submit(String requestKey, AnalysisTask task) {
+        AnalysisJob job = new AnalysisJob(UUID.randomUUID().toString(), requestKey);
+
+        AnalysisResult cached = results.getIfPresent(requestKey);
+        if(cached != null) {
+            job.markSucceeded(cached, true);
+            jobs.put(job.getId(), job);
+            return job;
+        }
+
+        AnalysisJob existing = inFlight.putIfAbsent(requestKey, job);
+        if(existing != null) {
+            return existing;
+        }
+
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, task));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(requestKey, job);
+            jobs.invalidate(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    private void run(AnalysisJob job, AnalysisTask task) {
+        job.markRunning();
+        // leave inFlight before waking waiters, so a retry after a failure
+        // (or a racing submit after success) doesn't join this job
+        try {
+            AnalysisResult result = task.run(job);
+            results.put(job.getRequestKey(), result);
+            inFlight.remove(job.getRequestKey(), job);
+            job.markSucceeded(result, false);
+        } catch (Throwable t) {
+            // includes Errors (e.g., OOM on a huge query) so pollers don't wait forever
+            log.error("Analysis job {} failed", job.getId(), t);
+            inFlight.remove(job.getRequestKey(), job);
+            job.markFailed(t);
+        }
+    }
+
+    // null if unknown or expired
+    public AnalysisJob getJob(String id) {
+        return jobs.getIfPresent(id);
+    }
+
+    @Override
+    public void start() throws Exception {
+    }
+
+    @Override
+    public void stop() throws Exception {
+        executor.shutdownNow();
+    }
+}
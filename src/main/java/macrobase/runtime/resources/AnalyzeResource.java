@@ -2,14 +2,22 @@ package macrobase.runtime.resources;
 
 import macrobase.MacroBase;
 import macrobase.analysis.BatchAnalyzer;
+import macrobase.ingest.DataSourceRegistry;
 import macrobase.ingest.SQLLoader;
+import macrobase.ingest.SnapshotCache;
 import macrobase.analysis.result.AnalysisResult;
+import macrobase.runtime.jobs.AnalysisJob;
+import macrobase.runtime.jobs.AnalysisJobManager;
+import macrobase.util.Keys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @Path("/analyze")
 @Produces(MediaType.APPLICATION_JSON)
@@ -22,24 +30,40 @@ public class AnalyzeResource {
         public List<String> attributes;
         public List<String> highMetrics;
         public List<String> lowMetrics;
+
+        // identical requests have identical keys
+        String getKey() {
+            return Keys.sha256(pgUrl, baseQuery, attributes, lowMetrics, highMetrics);
+        }
     }
 
-    private SQLLoader loader;
+    private DataSourceRegistry dataSources;
+    private SnapshotCache snapshotCache;
+    private AnalysisJobManager jobs;
+    private long syncTimeoutMillis;
 
-    public AnalyzeResource(SQLLoader _loader) {
-        loader = _loader;
+    public AnalyzeResource(DataSourceRegistry _dataSources,
+                           SnapshotCache _snapshotCache,
+                           AnalysisJobManager _jobs,
+                           long _syncTimeoutMillis) {
+        dataSources = _dataSources;
+        snapshotCache = _snapshotCache;
+        jobs = _jobs;
+        syncTimeoutMillis = _syncTimeoutMillis;
     }
 
-    @POST
-    @Consumes(MediaType.APPLICATION_JSON)
-    public AnalysisResult getAnalysis(AnalysisRequest request) throws Exception {
-        loader.connect(request.pgUrl);
+    private AnalysisResult runAnalysis(AnalysisRequest request, AnalysisJob job) throws Exception {
         BatchAnalyzer analyzer = new BatchAnalyzer();
-        AnalysisResult result = analyzer.analyze(loader,
-                                                 request.attributes,
-                                                 request.lowMetrics,
-                                                 request.highMetrics,
-                                                 request.baseQuery);
+        analyzer.setSnapshotCache(snapshotCache);
+        analyzer.setStageListener(job::setStage);
+        AnalysisResult result;
+        try (SQLLoader loader = dataSources.getLoader(request.pgUrl)) {
+            result = analyzer.analyze(loader,
+                                      request.attributes,
+                                      request.lowMetrics,
+                                      request.highMetrics,
+                                      request.baseQuery);
+        }
         if(result.getItemSets().size() > 1000) {
             log.warn("Very large result set! {}; truncating to 1000", result.getItemSets().size());
             result.setItemSets(result.getItemSets().subList(0, 1000));
@@ -48,4 +72,65 @@ public class AnalyzeResource {
         MacroBase.reporter.report();
         return result;
     }
+
+    private AnalysisJob submit(AnalysisRequest request) {
+        try {
+            return jobs.submit(request.getKey(), job -> runAnalysis(request, job));
+        } catch (RejectedExecutionException e) {
+            throw new WebApplicationException("Too many queued analyses; try again later",
+                                              Response.Status.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private AnalysisJob getJob(String id) {
+        AnalysisJob job = jobs.getJob(id);
+        if(job == null) {
+            throw new WebApplicationException("No such job: " + id, Response.Status.NOT_FOUND);
+        }
+        return job;
+    }
+
+    private AnalysisResult getResult(AnalysisJob job) {
+        if(job.getStatus() == AnalysisJob.Status.FAILED) {
+            throw new WebApplicationException("Analysis failed: " + job.getError(),
+                                              Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        return job.getResult();
+    }
+
+    // synchronous for up to syncTimeoutMillis (still run on, and bounded by,
+    // the analysis pool); after that, 202 with the job to poll, as /jobs does
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response getAnalysis(AnalysisRequest request) throws InterruptedException {
+        AnalysisJob job = submit(request);
+        if(!job.await(syncTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            return Response.status(Response.Status.ACCEPTED).entity(job).build();
+        }
+        return Response.ok(getResult(job)).build();
+    }
+
+    @POST
+    @Path("/jobs")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response submitJob(AnalysisRequest request) {
+        return Response.status(Response.Status.ACCEPTED).entity(submit(request)).build();
+    }
+
+    @GET
+    @Path("/jobs/{id}")
+    public AnalysisJob getJobStatus(@PathParam("id") String id) {
+        return getJob(id);
+    }
+
+    @GET
+    @Path("/jobs/{id}/result")
+    public AnalysisResult getJobResult(@PathParam("id") String id) {
+        AnalysisJob job = getJob(id);
+        if(!job.isDone()) {
+            throw new WebApplicationException("Job " + id + " is " + job.getStatus(),
+                                              Response.Status.CONFLICT);
+        }
+        return getResult(job);
+    }
 }
@@ -1,5 +1,6 @@
 package macrobase.runtime.resources;
 
+import macrobase.ingest.DataSourceRegistry;
 import macrobase.ingest.SQLLoader;
 import macrobase.ingest.result.RowSet;
 
@@ -30,19 +31,20 @@ public class RowSetResource {
         }
     }
 
-    private SQLLoader loader;
+    private DataSourceRegistry dataSources;
 
-    public RowSetResource(SQLLoader _loader) {
-        loader = _loader;
+    public RowSetResource(DataSourceRegistry _dataSources) {
+        dataSources = _dataSources;
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
     public RowSet getRows(RowSetRequest request) throws Exception {
-        loader.connect(request.pgUrl);
-        return loader.getRows(request.baseQuery,
-                              request.columnValues,
-                              request.limit,
-                              request.offset);
+        try (SQLLoader loader = dataSources.getLoader(request.pgUrl)) {
+            return loader.getRows(request.baseQuery,
+                                  request.columnValues,
+                                  request.limit,
+                                  request.offset);
+        }
     }
 }
@@ -1,5 +1,6 @@
 package macrobase.runtime.resources;
 
+import macrobase.ingest.DataSourceRegistry;
 import macrobase.ingest.SQLLoader;
 import macrobase.ingest.result.Schema;
 
@@ -20,16 +21,17 @@ public class SchemaResource {
         public String baseQuery;
     }
 
-    private SQLLoader loader;
+    private DataSourceRegistry dataSources;
 
-    public SchemaResource(SQLLoader _loader) {
-        loader = _loader;
+    public SchemaResource(DataSourceRegistry _dataSources) {
+        dataSources = _dataSources;
     }
 
     @PUT
     @Consumes(MediaType.APPLICATION_JSON)
     public Schema getSchema(SchemaRequest request) throws Exception {
-        loader.connect(request.pgUrl);
-        return loader.getSchema(request.baseQuery);
+        try (SQLLoader loader = dataSources.getLoader(request.pgUrl)) {
+            return loader.getSchema(request.baseQuery);
+        }
     }
 }
@@ -43,6 +43,18 @@ public class BaseStandaloneConfiguration extends Configuration {
     @NotEmpty
     private String baseQuery;
 
+    private Integer fetchSize;
+
+    private String partitionColumn;
+
+    private Integer numPartitions;
+
+    private String encoderDictionaryFile;
+
+    private Boolean useFastMCD;
+
+    private Integer detectorParallelism;
+
     @JsonProperty
     public String getTaskName() {
         return taskName;
@@ -63,6 +75,36 @@ public class BaseStandaloneConfiguration extends Configuration {
         return baseQuery;
     }
 
+    @JsonProperty
+    public Integer getFetchSize() {
+        return fetchSize;
+    }
+
+    @JsonProperty
+    public String getPartitionColumn() {
+        return partitionColumn;
+    }
+
+    @JsonProperty
+    public Integer getNumPartitions() {
+        return numPartitions;
+    }
+
+    @JsonProperty
+    public String getEncoderDictionaryFile() {
+        return encoderDictionaryFile;
+    }
+
+    @JsonProperty
+    public Boolean useFastMCD() {
+        return useFastMCD;
+    }
+
+    @JsonProperty
+    public Integer getDetectorParallelism() {
+        return detectorParallelism;
+    }
+
     @JsonProperty
     public String getDbUrl() {
         return dbUrl;
@@ -1,6 +1,34 @@
 package macrobase.runtime.standalone.batch;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import macrobase.runtime.standalone.BaseStandaloneConfiguration;
 
 public class BatchStandaloneConfiguration extends BaseStandaloneConfiguration {
+    private String snapshotCacheDir;
+
+    private Long snapshotCacheBytes;
+
+    private Integer miningParallelism;
+
+    private Boolean useArrayFPTree;
+
+    @JsonProperty
+    public String getSnapshotCacheDir() {
+        return snapshotCacheDir;
+    }
+
+    @JsonProperty
+    public Long getSnapshotCacheBytes() {
+        return snapshotCacheBytes;
+    }
+
+    @JsonProperty
+    public Integer getMiningParallelism() {
+        return miningParallelism;
+    }
+
+    @JsonProperty
+    public Boolean useArrayFPTree() {
+        return useArrayFPTree;
+    }
 }
@@ -7,13 +7,18 @@ import macrobase.analysis.BatchAnalyzer;
 import macrobase.analysis.result.AnalysisResult;
 import macrobase.ingest.PostgresLoader;
 import macrobase.ingest.SQLLoader;
+import macrobase.ingest.SnapshotCache;
 import net.sourceforge.argparse4j.inf.Namespace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+
 public class MacroBaseBatchCommand extends ConfiguredCommand<BatchStandaloneConfiguration> {
     private static final Logger log = LoggerFactory.getLogger(MacroBaseBatchCommand.class);
 
+    private static final long DEFAULT_SNAPSHOT_CACHE_BYTES = 10L << 30;
+
     public MacroBaseBatchCommand() {
         super("batch", "Run task without starting server.");
     }
@@ -24,6 +29,12 @@ public class MacroBaseBatchCommand extends ConfiguredCommand<BatchStandaloneConf
                        BatchStandaloneConfiguration configuration) throws Exception {
         SQLLoader loader = new PostgresLoader();
         loader.connect(configuration.getDbUrl());
+        if(configuration.getFetchSize() != null) {
+            loader.setFetchSize(configuration.getFetchSize());
+        }
+        if(configuration.getPartitionColumn() != null && configuration.getNumPartitions() != null) {
+            loader.setPartitioning(configuration.getPartitionColumn(), configuration.getNumPartitions());
+        }
 
         BatchAnalyzer analyzer = new BatchAnalyzer();
         analyzer.setMinInlierRatio(configuration.getMinInlierRatio());
@@ -44,6 +55,27 @@ public class MacroBaseBatchCommand extends ConfiguredCommand<BatchStandaloneConf
 
         analyzer.forceUsePercentile(configuration.usePercentile());
         analyzer.forceUseZScore(configuration.useZScore());
+        if(configuration.getEncoderDictionaryFile() != null) {
+            analyzer.setEncoderDictionary(new File(configuration.getEncoderDictionaryFile()));
+        }
+        if(configuration.useFastMCD() != null) {
+            analyzer.setUseFastMCD(configuration.useFastMCD());
+        }
+        if(configuration.getDetectorParallelism() != null) {
+            analyzer.setDetectorParallelism(configuration.getDetectorParallelism());
+        }
+        if(configuration.getMiningParallelism() != null) {
+            analyzer.setMiningParallelism(configuration.getMiningParallelism());
+        }
+        if(configuration.useArrayFPTree() != null) {
+            analyzer.setUseArrayFPTree(configuration.useArrayFPTree());
+        }
+        if(configuration.getSnapshotCacheDir() != null) {
+            long cacheBytes = configuration.getSnapshotCacheBytes() != null ?
+                              configuration.getSnapshotCacheBytes() : DEFAULT_SNAPSHOT_CACHE_BYTES;
+            analyzer.setSnapshotCache(new SnapshotCache(new File(configuration.getSnapshotCacheDir()),
+                                                        cacheBytes));
+        }
 
         AnalysisResult result = analyzer.analyze(loader,
                                                  configuration.getTargetAttributes(),
@@ -11,6 +11,8 @@ import net.sourceforge.argparse4j.inf.Namespace;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+
 public class MacroBaseStreamingCommand extends ConfiguredCommand<StreamingStandaloneConfiguration> {
     private static final Logger log = LoggerFactory.getLogger(MacroBaseStreamingCommand.class);
 
@@ -24,6 +26,9 @@ public class MacroBaseStreamingCommand extends ConfiguredCommand<StreamingStanda
                        StreamingStandaloneConfiguration configuration) throws Exception {
         SQLLoader loader = new PostgresLoader();
         loader.connect(configuration.getDbUrl());
+        if(configuration.getFetchSize() != null) {
+            loader.setFetchSize(configuration.getFetchSize());
+        }
 
         StreamingAnalyzer analyzer = new StreamingAnalyzer();
         analyzer.setMinInlierRatio(configuration.getMinInlierRatio());
@@ -53,6 +58,15 @@ public class MacroBaseStreamingCommand extends ConfiguredCommand<StreamingStanda
 
         analyzer.forceUsePercentile(configuration.usePercentile());
         analyzer.forceUseZScore(configuration.useZScore());
+        if(configuration.getEncoderDictionaryFile() != null) {
+            analyzer.setEncoderDictionary(new File(configuration.getEncoderDictionaryFile()));
+        }
+        if(configuration.useFastMCD() != null) {
+            analyzer.setUseFastMCD(configuration.useFastMCD());
+        }
+        if(configuration.getDetectorParallelism() != null) {
+            analyzer.setDetectorParallelism(configuration.getDetectorParallelism());
+        }
 
         analyzer.setDecayRate(configuration.getDecayRate());
         analyzer.setInputReservoirSize(configuration.getInputReservoirSize());
@@ -66,6 +80,21 @@ public class MacroBaseStreamingCommand extends ConfiguredCommand<StreamingStanda
         analyzer.setOutlierItemSummarySize(configuration.getOutlierItemSummarySize());
         analyzer.setMinSupportOutlier(configuration.getMinSupport());
         analyzer.setMinRatio(configuration.getMinInlierRatio());
+        if(configuration.useStreamingMAD() != null) {
+            analyzer.setUseStreamingMAD(configuration.useStreamingMAD());
+        }
+        if(configuration.getScoringThreads() != null) {
+            analyzer.setScoringThreads(configuration.getScoringThreads());
+        }
+        if(configuration.getBackgroundRetraining() != null) {
+            analyzer.setBackgroundRetraining(configuration.getBackgroundRetraining());
+        }
+        if(configuration.useSpaceSavingItemSummaries() != null) {
+            analyzer.setUseSpaceSavingItemSummaries(configuration.useSpaceSavingItemSummaries());
+        }
+        if(configuration.useInlierSketch() != null) {
+            analyzer.setUseInlierSketch(configuration.useInlierSketch());
+        }
 
         AnalysisResult result = analyzer.analyzeOnePass(loader,
                                                              configuration.getTargetAttributes(),
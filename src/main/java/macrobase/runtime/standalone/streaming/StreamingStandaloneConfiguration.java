@@ -34,6 +34,41 @@ public class StreamingStandaloneConfiguration extends BaseStandaloneConfiguratio
     @NotNull
     private Integer outlierItemSummarySize;
 
+    private Boolean useStreamingMAD;
+
+    private Integer scoringThreads;
+
+    private Boolean backgroundRetraining;
+
+    private Boolean useSpaceSavingItemSummaries;
+
+    private Boolean useInlierSketch;
+
+    @JsonProperty
+    public Boolean useStreamingMAD() {
+        return useStreamingMAD;
+    }
+
+    @JsonProperty
+    public Integer getScoringThreads() {
+        return scoringThreads;
+    }
+
+    @JsonProperty
+    public Boolean getBackgroundRetraining() {
+        return backgroundRetraining;
+    }
+
+    @JsonProperty
+    public Boolean useSpaceSavingItemSummaries() {
+        return useSpaceSavingItemSummaries;
+    }
+
+    @JsonProperty
+    public Boolean useInlierSketch() {
+        return useInlierSketch;
+    }
+
     @JsonProperty
     public Integer getInputReservoirSize() {
         return inputReservoirSize;
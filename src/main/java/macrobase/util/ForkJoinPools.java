@@ -0,0 +1,23 @@
+package macrobase.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Fork-join pools shared by everything that runs parallel work at a given
+ * parallelism (detectors, itemset mining), so concurrent analyses don't
+ * each start and tear down their own threads. Idle workers exit on their
+ * own, so the pools are never shut down.
+ */
+public class ForkJoinPools {
+    private static final Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
+    private ForkJoinPools() {
+    }
+
+    // the pool for this parallelism, or null (run serially) if it is <= 1
+    public static ForkJoinPool shared(int parallelism) {
+        return parallelism > 1 ? pools.computeIfAbsent(parallelism, ForkJoinPool::new) : null;
+    }
+}
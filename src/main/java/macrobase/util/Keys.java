@@ -0,0 +1,26 @@
+package macrobase.util;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Keys for caches and request deduplication: equal parts give equal keys,
+ * and distinct parts practically never collide.
+ */
+public class Keys {
+    private Keys() {
+    }
+
+    // hex SHA-256 of the parts' String.valueOf, each terminated by '\0'
+    // so that adjacent parts can't run together
+    public static String sha256(Object... parts) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for(Object part : parts) {
+            hasher.putString(String.valueOf(part), StandardCharsets.UTF_8);
+            hasher.putChar('\0');
+        }
+        return hasher.hash().toString();
+    }
+}
@@ -0,0 +1,265 @@
+package macrobase.util.collections;
+
+import java.util.Arrays;
+
+/**
+ * An int to double map with open addressing (linear probing) over
+ * parallel primitive arrays, so that lookups and updates neither box nor
+ * allocate. Key 0 marks an empty slot, so its entry is kept aside.
+ */
+public class IntDoubleHashMap {
+    private static final int EMPTY = 0;
+    private static final float LOAD_FACTOR = .5f;
+
+    public interface IntDoubleConsumer {
+        void accept(int key, double value);
+    }
+
+    public interface IntDoublePredicate {
+        boolean test(int key, double value);
+    }
+
+    private int[] keys;
+    private double[] values;
+    private int mask;
+    // entries in the table, excluding key 0
+    private int tableSize = 0;
+    private int resizeAt;
+
+    private boolean hasZeroKey = false;
+    private double zeroValue = 0;
+
+    public IntDoubleHashMap() {
+        this(16);
+    }
+
+    public IntDoubleHashMap(int expectedSize) {
+        allocate(tableCapacity(expectedSize));
+    }
+
+    static int tableCapacity(int expectedSize) {
+        int capacity = 8;
+        while(capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new double[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // the slot holding key, or the empty slot where it would go
+    private int slot(int key) {
+        int i = hash(key) & mask;
+        while(keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    public int size() {
+        return tableSize + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(int key) {
+        if(key == EMPTY) {
+            return hasZeroKey;
+        }
+        return keys[slot(key)] != EMPTY;
+    }
+
+    public double get(int key, double defaultValue) {
+        if(key == EMPTY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int i = slot(key);
+        return keys[i] == EMPTY ? defaultValue : values[i];
+    }
+
+    public void put(int key, double value) {
+        if(key == EMPTY) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+
+        int i = slot(key);
+        if(keys[i] == EMPTY) {
+            insertAt(i, key, value);
+        } else {
+            values[i] = value;
+        }
+    }
+
+    /**
+     * Adds delta to key's value (absent keys count as 0) and returns the
+     * new value.
+     */
+    public double addTo(int key, double delta) {
+        if(key == EMPTY) {
+            zeroValue = hasZeroKey ? zeroValue + delta : delta;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+
+        int i = slot(key);
+        if(keys[i] == EMPTY) {
+            insertAt(i, key, delta);
+            return delta;
+        }
+        values[i] += delta;
+        return values[i];
+    }
+
+    private void insertAt(int i, int key, double value) {
+        if(tableSize + 1 > resizeAt) {
+            rehash(keys.length * 2);
+            i = slot(key);
+        }
+        keys[i] = key;
+        values[i] = value;
+        tableSize++;
+    }
+
+    public boolean remove(int key) {
+        if(key == EMPTY) {
+            boolean had = hasZeroKey;
+            hasZeroKey = false;
+            zeroValue = 0;
+            return had;
+        }
+
+        int i = slot(key);
+        if(keys[i] == EMPTY) {
+            return false;
+        }
+
+        // shift later entries of the probe run back into the gap
+        int gap = i;
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(keys[j] == EMPTY) {
+                break;
+            }
+            int home = hash(keys[j]) & mask;
+            // move j into the gap unless its home lies cyclically in (gap, j]
+            if(gap <= j ? (home <= gap || home > j) : (home <= gap && home > j)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = 0;
+        tableSize--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, 0);
+        tableSize = 0;
+        hasZeroKey = false;
+        zeroValue = 0;
+    }
+
+    public void multiplyAll(double factor) {
+        for(int i = 0; i < keys.length; ++i) {
+            values[i] *= factor;
+        }
+        zeroValue *= factor;
+    }
+
+    public void forEach(IntDoubleConsumer consumer) {
+        if(hasZeroKey) {
+            consumer.accept(EMPTY, zeroValue);
+        }
+        for(int i = 0; i < keys.length; ++i) {
+            if(keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * The keys, in no particular order.
+     */
+    public int[] keys() {
+        return collectKeys(keys, tableSize, hasZeroKey);
+    }
+
+    static int[] collectKeys(int[] table, int tableSize, boolean hasZeroKey) {
+        int[] ret = new int[tableSize + (hasZeroKey ? 1 : 0)];
+        int n = 0;
+        if(hasZeroKey) {
+            ret[n++] = EMPTY;
+        }
+        for(int key : table) {
+            if(key != EMPTY) {
+                ret[n++] = key;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Removes the entries that fail predicate, rebuilding the table at a
+     * size fitting those that remain; O(capacity).
+     */
+    public void retainIf(IntDoublePredicate predicate) {
+        if(hasZeroKey && !predicate.test(EMPTY, zeroValue)) {
+            hasZeroKey = false;
+            zeroValue = 0;
+        }
+
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        int kept = 0;
+        for(int i = 0; i < oldKeys.length; ++i) {
+            if(oldKeys[i] != EMPTY) {
+                if(predicate.test(oldKeys[i], oldValues[i])) {
+                    kept++;
+                } else {
+                    oldKeys[i] = EMPTY;
+                }
+            }
+        }
+
+        allocate(tableCapacity(kept));
+        tableSize = 0;
+        reinsert(oldKeys, oldValues);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        allocate(capacity);
+        tableSize = 0;
+        reinsert(oldKeys, oldValues);
+    }
+
+    private void reinsert(int[] oldKeys, double[] oldValues) {
+        for(int i = 0; i < oldKeys.length; ++i) {
+            if(oldKeys[i] != EMPTY) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+                tableSize++;
+            }
+        }
+    }
+}
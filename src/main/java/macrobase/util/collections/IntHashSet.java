@@ -0,0 +1,137 @@
+package macrobase.util.collections;
+
+import java.util.Arrays;
+
+/**
+ * A set of ints laid out like IntDoubleHashMap: open addressing (linear
+ * probing) over a primitive array, with membership of 0 kept aside.
+ */
+public class IntHashSet {
+    private static final int EMPTY = 0;
+    private static final float LOAD_FACTOR = .5f;
+
+    private int[] keys;
+    private int mask;
+    // members in the table, excluding 0
+    private int tableSize = 0;
+    private int resizeAt;
+
+    private boolean hasZeroKey = false;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int expectedSize) {
+        allocate(IntDoubleHashMap.tableCapacity(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // the slot holding key, or the empty slot where it would go
+    private int slot(int key) {
+        int i = IntDoubleHashMap.hash(key) & mask;
+        while(keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    public int size() {
+        return tableSize + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean contains(int key) {
+        if(key == EMPTY) {
+            return hasZeroKey;
+        }
+        return keys[slot(key)] != EMPTY;
+    }
+
+    /**
+     * Returns false if key was already present.
+     */
+    public boolean add(int key) {
+        if(key == EMPTY) {
+            boolean added = !hasZeroKey;
+            hasZeroKey = true;
+            return added;
+        }
+
+        int i = slot(key);
+        if(keys[i] != EMPTY) {
+            return false;
+        }
+
+        if(tableSize + 1 > resizeAt) {
+            rehash(keys.length * 2);
+            i = slot(key);
+        }
+        keys[i] = key;
+        tableSize++;
+        return true;
+    }
+
+    public boolean remove(int key) {
+        if(key == EMPTY) {
+            boolean had = hasZeroKey;
+            hasZeroKey = false;
+            return had;
+        }
+
+        int i = slot(key);
+        if(keys[i] == EMPTY) {
+            return false;
+        }
+
+        // shift later members of the probe run back into the gap
+        int gap = i;
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(keys[j] == EMPTY) {
+                break;
+            }
+            int home = IntDoubleHashMap.hash(keys[j]) & mask;
+            // move j into the gap unless its home lies cyclically in (gap, j]
+            if(gap <= j ? (home <= gap || home > j) : (home <= gap && home > j)) {
+                keys[gap] = keys[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+        tableSize--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        tableSize = 0;
+        hasZeroKey = false;
+    }
+
+    /**
+     * The members, in no particular order.
+     */
+    public int[] toArray() {
+        return IntDoubleHashMap.collectKeys(keys, tableSize, hasZeroKey);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        allocate(capacity);
+        for(int i = 0; i < oldKeys.length; ++i) {
+            if(oldKeys[i] != EMPTY) {
+                keys[slot(oldKeys[i])] = oldKeys[i];
+            }
+        }
+    }
+}
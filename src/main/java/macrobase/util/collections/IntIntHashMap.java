@@ -0,0 +1,193 @@
+package macrobase.util.collections;
+
+import java.util.Arrays;
+
+/**
+ * An int to int map laid out like IntDoubleHashMap: open addressing
+ * (linear probing) over parallel primitive arrays, with key 0's entry
+ * kept aside.
+ */
+public class IntIntHashMap {
+    private static final int EMPTY = 0;
+    private static final float LOAD_FACTOR = .5f;
+
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    // entries in the table, excluding key 0
+    private int tableSize = 0;
+    private int resizeAt;
+
+    private boolean hasZeroKey = false;
+    private int zeroValue = 0;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    public IntIntHashMap(int expectedSize) {
+        allocate(IntDoubleHashMap.tableCapacity(expectedSize));
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // the slot holding key, or the empty slot where it would go
+    private int slot(int key) {
+        int i = IntDoubleHashMap.hash(key) & mask;
+        while(keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    public int size() {
+        return tableSize + (hasZeroKey ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(int key) {
+        if(key == EMPTY) {
+            return hasZeroKey;
+        }
+        return keys[slot(key)] != EMPTY;
+    }
+
+    public int get(int key, int defaultValue) {
+        if(key == EMPTY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        int i = slot(key);
+        return keys[i] == EMPTY ? defaultValue : values[i];
+    }
+
+    public void put(int key, int value) {
+        if(key == EMPTY) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+
+        int i = slot(key);
+        if(keys[i] == EMPTY) {
+            insertAt(i, key, value);
+        } else {
+            values[i] = value;
+        }
+    }
+
+    /**
+     * Adds delta to key's value (absent keys count as 0) and returns the
+     * new value.
+     */
+    public int addTo(int key, int delta) {
+        if(key == EMPTY) {
+            zeroValue = hasZeroKey ? zeroValue + delta : delta;
+            hasZeroKey = true;
+            return zeroValue;
+        }
+
+        int i = slot(key);
+        if(keys[i] == EMPTY) {
+            insertAt(i, key, delta);
+            return delta;
+        }
+        values[i] += delta;
+        return values[i];
+    }
+
+    private void insertAt(int i, int key, int value) {
+        if(tableSize + 1 > resizeAt) {
+            rehash(keys.length * 2);
+            i = slot(key);
+        }
+        keys[i] = key;
+        values[i] = value;
+        tableSize++;
+    }
+
+    public boolean remove(int key) {
+        if(key == EMPTY) {
+            boolean had = hasZeroKey;
+            hasZeroKey = false;
+            zeroValue = 0;
+            return had;
+        }
+
+        int i = slot(key);
+        if(keys[i] == EMPTY) {
+            return false;
+        }
+
+        // shift later entries of the probe run back into the gap
+        int gap = i;
+        int j = i;
+        while(true) {
+            j = (j + 1) & mask;
+            if(keys[j] == EMPTY) {
+                break;
+            }
+            int home = IntDoubleHashMap.hash(keys[j]) & mask;
+            // move j into the gap unless its home lies cyclically in (gap, j]
+            if(gap <= j ? (home <= gap || home > j) : (home <= gap && home > j)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = 0;
+        tableSize--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, 0);
+        tableSize = 0;
+        hasZeroKey = false;
+        zeroValue = 0;
+    }
+
+    public void forEach(IntIntConsumer consumer) {
+        if(hasZeroKey) {
+            consumer.accept(EMPTY, zeroValue);
+        }
+        for(int i = 0; i < keys.length; ++i) {
+            if(keys[i] != EMPTY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * The keys, in no particular order.
+     */
+    public int[] keys() {
+        return IntDoubleHashMap.collectKeys(keys, tableSize, hasZeroKey);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for(int i = 0; i < oldKeys.length; ++i) {
+            if(oldKeys[i] != EMPTY) {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
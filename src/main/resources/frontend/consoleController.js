@@ -274,10 +274,26 @@ myApp.controller('selectorController', ['$scope', 'configService', function($sco
 }]);
 
 
-myApp.controller('analyzeController', ['$scope', '$http', '$window', 'configService', 'explorerService', function($scope, $http, $window, configService, explorerService) {
+myApp.controller('analyzeController', ['$scope', '$http', '$timeout', '$window', 'configService', 'explorerService', function($scope, $http, $timeout, $window, configService, explorerService) {
 
     var analyzing = false
 
+    // long analyses come back as 202 with the job; poll it until done
+    var awaitResult = function(response) {
+        if(response.status != 202) {
+            return response;
+        }
+
+        var jobUrl = "http://localhost:8080/api/analyze/jobs/" + response.data.id;
+        return $timeout(function() { return $http.get(jobUrl); }, 1000)
+            .then(function(status) {
+                if(status.data.status == "SUCCEEDED" || status.data.status == "FAILED") {
+                    return $http.get(jobUrl + "/result");
+                }
+                return awaitResult({status: 202, data: status.data});
+            });
+    }
+
     $scope.shouldShowAnalysis = function() {
         return configService.hasAnalysis()
     }
@@ -298,6 +314,7 @@ myApp.controller('analyzeController', ['$scope', '$http', '$window', 'configServ
     	        lowMetrics: configService.getLowMetrics(DEFAULT_CONFIG)
     	}, {timeout: 100000000 }
     )
+	    .then(awaitResult)
 	    .then(function(response) {
 	        analyzing = false;
 	        configService.analysisReceived()
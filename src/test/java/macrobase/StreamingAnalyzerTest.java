@@ -0,0 +1,248 @@
+package macrobase;
+
+import macrobase.analysis.StreamingAnalyzer;
+import macrobase.analysis.outlier.MAD;
+import macrobase.analysis.outlier.OutlierDetector;
+import macrobase.analysis.result.AnalysisResult;
+import macrobase.analysis.summary.itemset.result.ItemsetResult;
+import macrobase.datamodel.Datum;
+import macrobase.ingest.DatumEncoder;
+import macrobase.ingest.result.ColumnValue;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingAnalyzerTest {
+    // attribute value "bad" is on 5% of the tuples, always with an extreme metric
+    private static List<Datum> stream(DatumEncoder encoder, int size) {
+        encoder.recordAttributeName(0, "device");
+        Random random = new Random(0);
+        List<Datum> ret = new ArrayList<>(size);
+        for(int i = 0; i < size; ++i) {
+            boolean bad = i % 20 == 0;
+            int attr = encoder.getIntegerEncoding(0, bad ? "bad" : "d" + random.nextInt(50));
+            double metric = bad ? 100 + random.nextGaussian() : random.nextGaussian();
+            ret.add(new Datum(Collections.singletonList(attr), new ArrayRealVector(new double[]{metric})));
+        }
+        return ret;
+    }
+
+    private static StreamingAnalyzer analyzer() {
+        StreamingAnalyzer analyzer = new StreamingAnalyzer();
+        configure(analyzer);
+        return analyzer;
+    }
+
+    private static void configure(StreamingAnalyzer analyzer) {
+        analyzer.forceUseZScore(true);
+        analyzer.setWarmupCount(1000);
+        analyzer.setInputReservoirSize(1000);
+        analyzer.setScoreReservoirSize(1000);
+        analyzer.setSummaryPeriod(10000);
+        analyzer.setModelRefreshPeriod(5000);
+        analyzer.useRealTimeDecay(false);
+        analyzer.useTupleCountDecay(true);
+        analyzer.setDecayRate(.01);
+        analyzer.setMinSupportOutlier(.01);
+        analyzer.setMinRatio(3);
+        analyzer.setInlierItemSummarySize(1000);
+        analyzer.setOutlierItemSummarySize(1000);
+        analyzer.setSeed(0);
+    }
+
+    private static boolean foundBad(AnalysisResult result) {
+        for(ItemsetResult isr : result.getItemSets()) {
+            for(ColumnValue cv : isr.getItems()) {
+                if(cv.getValue().equals("bad")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void singleThreadedTest() {
+        DatumEncoder encoder = new DatumEncoder();
+        List<Datum> data = stream(encoder, 100000);
+        assertTrue(foundBad(analyzer().analyzeStream(data.iterator(), 1, encoder)));
+    }
+
+    private static ItemsetResult badItemset(AnalysisResult result) {
+        for(ItemsetResult isr : result.getItemSets()) {
+            if(isr.getItems().size() == 1 && isr.getItems().get(0).getValue().equals("bad")) {
+                return isr;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void percentileTest() {
+        DatumEncoder encoder = new DatumEncoder();
+        encoder.recordAttributeName(0, "device");
+        Random random = new Random(0);
+        List<Datum> data = new ArrayList<>();
+        for(int i = 0; i < 100000; ++i) {
+            // fewer than the top 1%, so the threshold falls among the ties
+            boolean bad = i % 200 == 0;
+            int attr = encoder.getIntegerEncoding(0, bad ? "bad" : "d" + random.nextInt(50));
+            // the other metrics take three values, so most scores are tied
+            double metric = bad ? 100 + random.nextGaussian() : random.nextInt(3);
+            data.add(new Datum(Collections.singletonList(attr), new ArrayRealVector(new double[]{metric})));
+        }
+
+        StreamingAnalyzer analyzer = analyzer();
+        analyzer.forceUseZScore(false);
+        analyzer.forceUsePercentile(true);
+        analyzer.setTargetPercentile(.01);
+        ItemsetResult bad = badItemset(analyzer.analyzeStream(data.iterator(), 1, encoder));
+
+        // tied scores at the threshold are inliers, so nearly every
+        // outlier is "bad" rather than every tuple tied at the threshold
+        assertTrue(bad != null);
+        assertTrue(bad.getSupport() > .5);
+    }
+
+    private static List<String> printed(AnalysisResult result) {
+        return result.getItemSets().stream().map(ItemsetResult::prettyPrint).collect(Collectors.toList());
+    }
+
+    @Test
+    public void pipelineTest() {
+        DatumEncoder encoder = new DatumEncoder();
+        List<Datum> data = stream(encoder, 100000);
+        AnalysisResult expected = analyzer().analyzeStream(data.iterator(), 1, encoder);
+
+        // retrains every 5000 tuples, so chunks in flight are rescored
+        for(int run = 0; run < 3; ++run) {
+            StreamingAnalyzer analyzer = analyzer();
+            analyzer.setScoringThreads(3);
+
+            long before = MacroBase.metrics.meter("macrobase.analysis.StreamingAnalyzer.summarizedTuples").getCount();
+            AnalysisResult result = analyzer.analyzeStream(data.iterator(), 1, encoder);
+            long after = MacroBase.metrics.meter("macrobase.analysis.StreamingAnalyzer.summarizedTuples").getCount();
+
+            // everything after the warmup tuple went through the pipeline
+            assertEquals(100000 - 1001, after - before);
+            assertTrue(foundBad(result));
+            assertEquals(printed(expected), printed(result));
+        }
+    }
+
+    @Test
+    public void backgroundRetrainingTest() {
+        DatumEncoder encoder = new DatumEncoder();
+        List<Datum> data = stream(encoder, 100000);
+
+        // the threads each detector trained on, in creation order, and
+        // the detectors that scored anything
+        List<Thread> trainedOn = Collections.synchronizedList(new ArrayList<>());
+        Set<OutlierDetector> scoredWith = ConcurrentHashMap.newKeySet();
+        StreamingAnalyzer analyzer = new StreamingAnalyzer() {
+            @Override
+            protected OutlierDetector createDetector(int metricsDimensions) {
+                return new MAD() {
+                    @Override
+                    public void train(List<Datum> data) {
+                        super.train(data);
+                        trainedOn.add(Thread.currentThread());
+                    }
+
+                    @Override
+                    public double score(Datum datum) {
+                        scoredWith.add(this);
+                        return super.score(datum);
+                    }
+                };
+            }
+        };
+        configure(analyzer);
+        analyzer.setBackgroundRetraining(true);
+
+        assertTrue(foundBad(analyzer.analyzeStream(data.iterator(), 1, encoder)));
+
+        // the warmup detector trains inline; every retrain runs elsewhere
+        assertTrue(trainedOn.size() > 1);
+        assertEquals(Thread.currentThread(), trainedOn.get(0));
+        for(Thread thread : trainedOn.subList(1, trainedOn.size())) {
+            assertNotEquals(Thread.currentThread(), thread);
+        }
+        // and retrained detectors were published to the scorers
+        assertTrue(scoredWith.size() > 1);
+    }
+
+    @Test
+    public void spaceSavingTest() {
+        DatumEncoder encoder = new DatumEncoder();
+        List<Datum> data = stream(encoder, 100000);
+        ItemsetResult exact = badItemset(analyzer().analyzeStream(data.iterator(), 1, encoder));
+
+        StreamingAnalyzer analyzer = analyzer();
+        analyzer.setUseSpaceSavingItemSummaries(true);
+        // fewer counters than the 51 distinct items
+        analyzer.setInlierItemSummarySize(20);
+        analyzer.setOutlierItemSummarySize(20);
+        AnalysisResult result = analyzer.analyzeStream(data.iterator(), 1, encoder);
+        ItemsetResult approximate = badItemset(result);
+
+        // nothing else is reported; in particular, the items the inlier
+        // summary dropped aren't mistaken for ones never seen as inliers
+        assertEquals(1, result.getItemSets().size());
+        assertTrue(approximate != null);
+        assertEquals(exact.getSupport(), approximate.getSupport(), 1e-9);
+        assertEquals(exact.getNumRecords(), approximate.getNumRecords(), 1e-9);
+
+        // "bad" is never an inlier, but too rare among them to be tracked,
+        // so its inlier count is SpaceSaving's bound of 1/20 of the total
+        assertEquals(Double.POSITIVE_INFINITY, exact.getRatioToInliers(), 0);
+        assertTrue(approximate.getRatioToInliers() < Double.POSITIVE_INFINITY);
+        assertTrue(approximate.getRatioToInliers() >= 20 * approximate.getSupport());
+    }
+
+    @Test
+    public void inlierSketchTest() {
+        DatumEncoder encoder = new DatumEncoder();
+        encoder.recordAttributeName(0, "device");
+        Random random = new Random(0);
+        List<Datum> data = new ArrayList<>();
+        for(int i = 0; i < 100000; ++i) {
+            // as in stream, but a fifth of the "bad" tuples are inliers,
+            // so its ratio is finite
+            boolean bad = i % 20 == 0;
+            boolean extreme = bad && i % 100 != 0;
+            int attr = encoder.getIntegerEncoding(0, bad ? "bad" : "d" + random.nextInt(50));
+            double metric = extreme ? 100 + random.nextGaussian() : random.nextGaussian();
+            data.add(new Datum(Collections.singletonList(attr), new ArrayRealVector(new double[]{metric})));
+        }
+
+        ItemsetResult exact = badItemset(analyzer().analyzeStream(data.iterator(), 1, encoder));
+        StreamingAnalyzer analyzer = analyzer();
+        analyzer.setUseInlierSketch(true);
+        ItemsetResult sketched = badItemset(analyzer.analyzeStream(data.iterator(), 1, encoder));
+
+        // the outlier side is counted exactly either way
+        assertTrue(sketched != null);
+        assertEquals(exact.getSupport(), sketched.getSupport(), 1e-9);
+        assertEquals(exact.getNumRecords(), sketched.getNumRecords(), 1e-9);
+
+        // the sketch only overestimates the inlier share, by at most
+        // epsilon = minSupportOutlier / 10 (with probability 99%)
+        double epsilon = .01 / 10;
+        double exactRatio = exact.getRatioToInliers();
+        assertTrue(exactRatio < Double.POSITIVE_INFINITY);
+        assertTrue(sketched.getRatioToInliers() <= exactRatio + 1e-9);
+        assertTrue(sketched.getRatioToInliers() >= 1 / (1 / exactRatio + epsilon / exact.getSupport()));
+    }
+}
@@ -0,0 +1,130 @@
+package macrobase.ingest;
+
+import com.google.common.collect.Lists;
+import io.dropwizard.db.ManagedDataSource;
+import macrobase.ingest.result.RowSet;
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DataSourceRegistryTest {
+    @Test
+    public void concurrentTest() throws Exception {
+        final int numThreads = 8;
+        final int numUrls = 3;
+
+        DataSourceRegistry registry = new DataSourceRegistry(PostgresLoader::new);
+
+        // release all threads at once to maximize contention on creation
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<ManagedDataSource[]>> futures = new ArrayList<>();
+        for(int t = 0; t < numThreads; ++t) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ManagedDataSource[] ret = new ManagedDataSource[numUrls];
+                for(int i = 0; i < numUrls; ++i) {
+                    ret[i] = registry.getDataSource("//localhost/db" + i);
+                }
+                return ret;
+            }));
+        }
+        start.countDown();
+
+        ManagedDataSource[] first = futures.get(0).get();
+        for(Future<ManagedDataSource[]> f : futures) {
+            ManagedDataSource[] sources = f.get();
+            for(int i = 0; i < numUrls; ++i) {
+                assertSame(first[i], sources[i]);
+            }
+        }
+        executor.shutdown();
+
+        assertNotSame(first[0], first[1]);
+        assertEquals(numUrls, registry.size());
+
+        registry.stop();
+        assertEquals(0, registry.size());
+    }
+
+    // requests on many threads, each checking a loader (and so a pooled
+    // connection) out of the registry and closing it, some after a failure
+    @Test
+    public void concurrentLoaderTest() throws Exception {
+        final int numThreads = 8;
+        final int cyclesPerThread = 50;
+        final String dbUrl = "mem:registry;DB_CLOSE_DELAY=-1";
+
+        DataSourceRegistry registry = new DataSourceRegistry(H2Loader::new);
+        try (Connection conn = registry.getDataSource(dbUrl).getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE events (userid VARCHAR, latency DOUBLE)");
+            for(int i = 0; i < 10; ++i) {
+                stmt.execute(String.format("INSERT INTO events VALUES ('user%d', %d)", i, i));
+            }
+        }
+        DataSourceProxy pool = (DataSourceProxy) registry.getDataSource(dbUrl);
+
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for(int t = 0; t < numThreads; ++t) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                int maxActive = 0;
+                for(int i = 0; i < cyclesPerThread; ++i) {
+                    try (SQLLoader loader = registry.getLoader(dbUrl)) {
+                        maxActive = Math.max(maxActive, pool.getNumActive());
+                        if(i % 5 == 0) {
+                            try {
+                                loader.getData(new DatumEncoder(),
+                                               Lists.newArrayList("userid"),
+                                               Lists.newArrayList(),
+                                               Lists.newArrayList("nosuchcolumn"),
+                                               "SELECT * FROM events");
+                                fail();
+                            } catch (SQLException e) {
+                                // expected
+                            }
+                        } else {
+                            RowSet rows = loader.getRows("SELECT * FROM events", new ArrayList<>(), 100, 0);
+                            assertEquals(10, rows.getRows().size());
+                        }
+                    }
+                }
+                return maxActive;
+            }));
+        }
+        start.countDown();
+
+        for(Future<Integer> f : futures) {
+            int maxActive = f.get();
+            assertTrue(maxActive >= 1 && maxActive <= numThreads);
+        }
+        executor.shutdown();
+
+        // every connection came back, in autocommit
+        assertEquals(0, pool.getNumActive());
+        assertEquals(pool.getSize(), pool.getNumIdle());
+        try (Connection conn = registry.getDataSource(dbUrl).getConnection()) {
+            assertTrue(conn.getAutoCommit());
+        }
+
+        registry.stop();
+    }
+}
@@ -0,0 +1,121 @@
+package macrobase.ingest;
+
+import macrobase.ingest.result.ColumnValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DatumEncoderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void simpleTest() {
+        DatumEncoder encoder = new DatumEncoder();
+        encoder.recordAttributeName(1, "userid");
+        encoder.recordAttributeName(2, "app_version");
+
+        int a = encoder.getIntegerEncoding(1, "a");
+        int b = encoder.getIntegerEncoding(2, "a");
+        int nullValue = encoder.getIntegerEncoding(1, null);
+
+        assertTrue(a != b);
+        assertEquals(a, encoder.getIntegerEncoding(1, "a"));
+        assertEquals(nullValue, encoder.getIntegerEncoding(1, null));
+
+        ColumnValue cv = encoder.getAttribute(b);
+        assertEquals("app_version", cv.getColumn());
+        assertEquals("a", cv.getValue());
+        assertNull(encoder.getAttribute(nullValue).getValue());
+    }
+
+    @Test
+    public void concurrentTest() throws Exception {
+        final int numThreads = 4;
+        final int numValues = 10000;
+
+        DatumEncoder encoder = new DatumEncoder();
+        encoder.recordAttributeName(1, "userid");
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<int[]>> futures = new ArrayList<>();
+        for(int t = 0; t < numThreads; ++t) {
+            futures.add(executor.submit(() -> {
+                int[] ids = new int[numValues];
+                for(int i = 0; i < numValues; ++i) {
+                    ids[i] = encoder.getIntegerEncoding(1, "user" + i);
+                }
+                return ids;
+            }));
+        }
+
+        int[] first = futures.get(0).get();
+        for(Future<int[]> f : futures) {
+            int[] ids = f.get();
+            for(int i = 0; i < numValues; ++i) {
+                assertEquals(first[i], ids[i]);
+            }
+        }
+        executor.shutdown();
+
+        // ids are dense and decode to the values that produced them
+        Set<Integer> distinct = new HashSet<>();
+        for(int i = 0; i < numValues; ++i) {
+            distinct.add(first[i]);
+            assertTrue(first[i] < numValues);
+            assertEquals("user" + i, encoder.getAttribute(first[i]).getValue());
+        }
+        assertEquals(numValues, distinct.size());
+    }
+
+    @Test
+    public void persistedTest() throws Exception {
+        File file = new File(folder.getRoot(), "dictionary.bin");
+
+        DatumEncoder first = new DatumEncoder(file);
+        first.recordAttributeName(1, "userid");
+        first.recordAttributeName(2, "app_version");
+        int a = first.getIntegerEncoding(1, "a");
+        int b = first.getIntegerEncoding(1, "b");
+        int v = first.getIntegerEncoding(2, "a");
+        int nullValue = first.getIntegerEncoding(2, null);
+        first.save(file);
+
+        // dimensions need not line up across runs; columns are matched by name
+        DatumEncoder second = new DatumEncoder(file);
+        second.recordAttributeName(1, "app_version");
+        second.recordAttributeName(3, "userid");
+        assertEquals(b, second.getIntegerEncoding(3, "b"));
+        assertEquals(a, second.getIntegerEncoding(3, "a"));
+        assertEquals(v, second.getIntegerEncoding(1, "a"));
+        assertEquals(nullValue, second.getIntegerEncoding(1, null));
+
+        int c = second.getIntegerEncoding(3, "c");
+        assertTrue(c > nullValue);
+        assertEquals("userid", second.getAttribute(a).getColumn());
+        assertEquals("b", second.getAttribute(b).getValue());
+        assertNull(second.getAttribute(nullValue).getValue());
+        assertEquals("c", second.getAttribute(c).getValue());
+
+        // new values are appended on the next save
+        second.save(file);
+        DatumEncoder third = new DatumEncoder(file);
+        third.recordAttributeName(1, "userid");
+        assertEquals(c, third.getIntegerEncoding(1, "c"));
+        assertEquals(a, third.getIntegerEncoding(1, "a"));
+        assertEquals("app_version", third.getAttribute(v).getColumn());
+    }
+}
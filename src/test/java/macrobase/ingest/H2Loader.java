@@ -0,0 +1,14 @@
+package macrobase.ingest;
+
+// loads from an embedded H2 database, e.g. "mem:name" or a file path
+class H2Loader extends SQLLoader {
+    @Override
+    public String getDriverClass() {
+        return "org.h2.Driver";
+    }
+
+    @Override
+    public String getJDBCUrlPrefix() {
+        return "jdbc:h2:";
+    }
+}
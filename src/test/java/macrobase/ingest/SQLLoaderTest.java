@@ -0,0 +1,285 @@
+package macrobase.ingest;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Lists;
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.db.ManagedDataSource;
+import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SQLLoaderTest {
+    private static final AtomicInteger nextDb = new AtomicInteger();
+
+    private String dbUrl;
+    private ManagedDataSource source;
+
+    private ManagedDataSource buildSource(int maxSize) {
+        DataSourceFactory factory = new DataSourceFactory();
+        factory.setDriverClass("org.h2.Driver");
+        factory.setUrl("jdbc:h2:" + dbUrl);
+        factory.setInitialSize(1);
+        factory.setMinSize(1);
+        factory.setMaxSize(maxSize);
+        return factory.build(new MetricRegistry(), "h2");
+    }
+
+    // one pooled connection, so a connection left in a transaction is the
+    // one the next checkout gets
+    @Before
+    public void setUp() throws Exception {
+        dbUrl = "mem:loader" + nextDb.getAndIncrement() + ";DB_CLOSE_DELAY=-1";
+        source = buildSource(1);
+
+        try (Connection conn = source.getConnection();
+             Statement stmt = conn.createStatement()) {
+            // every tenth id is NULL
+            stmt.execute("CREATE TABLE events (userid VARCHAR, latency VARCHAR, id INT)");
+            for(int i = 0; i < 100; ++i) {
+                stmt.execute(String.format("INSERT INTO events VALUES ('user%d', '%d', %s)",
+                                           i % 7, i, i % 10 == 0 ? "NULL" : Integer.toString(i)));
+            }
+            // ends with a latency that isn't a number, so reading it fails
+            stmt.execute("CREATE TABLE badevents AS SELECT * FROM events");
+            stmt.execute("INSERT INTO badevents VALUES ('user0', 'bad', 100)");
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        source.stop();
+    }
+
+    private SQLLoader connect() throws SQLException {
+        SQLLoader loader = new H2Loader();
+        loader.connect(source, dbUrl);
+        // small enough that the cursor spans several fetches
+        loader.setFetchSize(10);
+        return loader;
+    }
+
+    // the session state of the loader's connection
+    private static boolean inAutoCommit(SQLLoader loader) throws SQLException {
+        String value = loader.getRows("SELECT AUTOCOMMIT() AS ac", new ArrayList<>(), 1, 0)
+                .getRows().get(0).getColumnValues().get(0).getValue();
+        return Boolean.parseBoolean(value);
+    }
+
+    private void assertConnectionReturned() throws SQLException {
+        try (Connection conn = source.getConnection()) {
+            assertTrue(conn.getAutoCommit());
+        }
+    }
+
+    @Test
+    public void getDataTest() throws Exception {
+        try (SQLLoader loader = connect()) {
+            List<Datum> data = loader.getData(new DatumEncoder(),
+                                              Lists.newArrayList("userid"),
+                                              Lists.newArrayList(),
+                                              Lists.newArrayList("latency"),
+                                              "SELECT * FROM events");
+            assertEquals(100, data.size());
+            assertTrue(inAutoCommit(loader));
+        }
+        assertConnectionReturned();
+    }
+
+    @Test
+    public void failedQueryTest() throws Exception {
+        try (SQLLoader loader = connect()) {
+            try {
+                loader.getData(new DatumEncoder(),
+                               Lists.newArrayList("userid"),
+                               Lists.newArrayList(),
+                               Lists.newArrayList("nosuchcolumn"),
+                               "SELECT * FROM events");
+                fail();
+            } catch (SQLException e) {
+                // expected
+            }
+            assertTrue(inAutoCommit(loader));
+        }
+        assertConnectionReturned();
+    }
+
+    @Test
+    public void failedReadTest() throws Exception {
+        try (SQLLoader loader = connect()) {
+            try {
+                loader.getDataBatch(new DatumEncoder(),
+                                    Lists.newArrayList("userid"),
+                                    Lists.newArrayList(),
+                                    Lists.newArrayList("latency"),
+                                    "SELECT * FROM badevents");
+                fail();
+            } catch (SQLException e) {
+                // expected
+            }
+            assertTrue(inAutoCommit(loader));
+        }
+        assertConnectionReturned();
+    }
+
+    @Test
+    public void failedStreamTest() throws Exception {
+        try (SQLLoader loader = connect()) {
+            int read = 0;
+            try (DatumStream stream = loader.getDataStream(new DatumEncoder(),
+                                                           Lists.newArrayList("userid"),
+                                                           Lists.newArrayList(),
+                                                           Lists.newArrayList("latency"),
+                                                           "SELECT * FROM badevents")) {
+                while(stream.hasNext()) {
+                    stream.next();
+                    ++read;
+                }
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof SQLException);
+            }
+            assertEquals(100, read);
+            assertTrue(inAutoCommit(loader));
+        }
+        assertConnectionReturned();
+    }
+
+    @Test
+    public void abandonedStreamTest() throws Exception {
+        try (SQLLoader loader = connect()) {
+            try (DatumStream stream = loader.getDataStream(new DatumEncoder(),
+                                                           Lists.newArrayList("userid"),
+                                                           Lists.newArrayList(),
+                                                           Lists.newArrayList("latency"),
+                                                           "SELECT * FROM events")) {
+                assertTrue(stream.hasNext());
+                stream.next();
+            }
+            assertTrue(inAutoCommit(loader));
+        }
+        assertConnectionReturned();
+
+        // closing the loader alone also ends the stream's transaction
+        SQLLoader loader = connect();
+        DatumStream stream = loader.getDataStream(new DatumEncoder(),
+                                                  Lists.newArrayList("userid"),
+                                                  Lists.newArrayList(),
+                                                  Lists.newArrayList("latency"),
+                                                  "SELECT * FROM events");
+        stream.next();
+        assertFalse(inAutoCommit(loader));
+        loader.close();
+        assertConnectionReturned();
+    }
+
+    // the latencies loaded, which are 0 to 99 if every row was
+    private static double[] sortedLatencies(DatumBatch batch) {
+        double[] ret = new double[batch.size()];
+        for(int i = 0; i < ret.length; ++i) {
+            ret[i] = batch.getMetric(i, 0);
+        }
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    private DatumBatch loadPartitioned(ManagedDataSource partitionSource,
+                                       String baseQuery,
+                                       int numPartitions) throws SQLException {
+        try (SQLLoader loader = new H2Loader()) {
+            loader.connect(partitionSource, dbUrl);
+            loader.setPartitioning("id", numPartitions);
+            DatumBatch ret = loader.getDataBatch(new DatumEncoder(),
+                                                 Lists.newArrayList("userid"),
+                                                 Lists.newArrayList(),
+                                                 Lists.newArrayList("latency"),
+                                                 baseQuery);
+            assertTrue(inAutoCommit(loader));
+            return ret;
+        }
+    }
+
+    @Test
+    public void partitionedTest() throws Exception {
+        double[] expected = new double[100];
+        for(int i = 0; i < expected.length; ++i) {
+            expected[i] = i;
+        }
+
+        ManagedDataSource partitionSource = buildSource(8);
+        try {
+            for(int numPartitions : new int[] {2, 7, 32}) {
+                DatumBatch batch = loadPartitioned(partitionSource, "SELECT * FROM events", numPartitions);
+                // including the rows with NULL ids
+                assertArrayEquals(expected, sortedLatencies(batch), 0);
+            }
+
+            // no bounds to split on
+            DatumBatch batch = loadPartitioned(partitionSource,
+                                               "SELECT userid, latency, CAST(NULL AS INT) AS id FROM events",
+                                               4);
+            assertArrayEquals(expected, sortedLatencies(batch), 0);
+
+            batch = loadPartitioned(partitionSource, "SELECT * FROM events WHERE id > 1000", 4);
+            assertEquals(0, batch.size());
+
+            assertEquals(0, ((DataSourceProxy) partitionSource).getNumActive());
+        } finally {
+            partitionSource.stop();
+        }
+    }
+
+    @Test
+    public void partitionColumnTypeTest() throws Exception {
+        ManagedDataSource partitionSource = buildSource(8);
+        try (SQLLoader loader = new H2Loader()) {
+            loader.connect(partitionSource, dbUrl);
+            loader.setPartitioning("userid", 4);
+            loader.getDataBatch(new DatumEncoder(),
+                                Lists.newArrayList("userid"),
+                                Lists.newArrayList(),
+                                Lists.newArrayList("latency"),
+                                "SELECT * FROM events");
+            fail();
+        } catch (SQLException e) {
+            assertTrue(e.getMessage().contains("must be numeric"));
+        } finally {
+            partitionSource.stop();
+        }
+    }
+
+    @Test
+    public void partitionedLimitTest() throws Exception {
+        ManagedDataSource partitionSource = buildSource(8);
+        try (SQLLoader loader = new H2Loader()) {
+            loader.connect(partitionSource, dbUrl);
+            // would fail if partitioned, since userid isn't numeric
+            loader.setPartitioning("userid", 4);
+            DatumBatch batch = loader.getDataBatch(new DatumEncoder(),
+                                                   Lists.newArrayList("userid"),
+                                                   Lists.newArrayList(),
+                                                   Lists.newArrayList("latency"),
+                                                   "SELECT * FROM events ORDER BY id LIMIT 50");
+            assertEquals(50, batch.size());
+            assertTrue(inAutoCommit(loader));
+        } finally {
+            partitionSource.stop();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package macrobase.ingest;
+
+import com.google.common.collect.Lists;
+import macrobase.datamodel.DatumBatch;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static DatumBatch makeBatch(DatumEncoder encoder, int numRows) {
+        encoder.recordAttributeName(1, "userid");
+        DatumBatch batch = new DatumBatch(1, 2);
+        for(int i = 0; i < numRows; ++i) {
+            int row = batch.addRow();
+            batch.setAttribute(row, 0, encoder.getIntegerEncoding(1, "user" + i % 7));
+            batch.setMetric(row, 0, i);
+            batch.setMetric(row, 1, -i / 2.0);
+        }
+        return batch;
+    }
+
+    @Test
+    public void simpleTest() throws Exception {
+        List<String> attrs = Lists.newArrayList("userid");
+        List<String> low = Lists.newArrayList("latency");
+        List<String> high = Lists.newArrayList();
+        String key = SnapshotCache.key("postgres", "SELECT * FROM t", attrs, low, high);
+        assertEquals(key, SnapshotCache.key("postgres", "SELECT * FROM t", attrs, low, high));
+        assertNotEquals(key, SnapshotCache.key("postgres", "SELECT * FROM u", attrs, low, high));
+        assertNotEquals(key, SnapshotCache.key("postgres", "SELECT * FROM t", attrs, high, low));
+
+        File dir = folder.newFolder();
+        SnapshotCache cache = new SnapshotCache(dir, 1 << 20);
+        assertNull(cache.get(key));
+
+        DatumEncoder encoder = new DatumEncoder();
+        DatumBatch batch = makeBatch(encoder, 1000);
+        cache.put(key, encoder, batch);
+
+        // entries survive a restart
+        SnapshotCache.Snapshot snapshot = new SnapshotCache(dir, 1 << 20).get(key);
+        DatumBatch cached = snapshot.getBatch();
+        assertEquals(batch.size(), cached.size());
+        for(int i = 0; i < batch.size(); ++i) {
+            assertEquals(batch.getMetric(i, 0), cached.getMetric(i, 0), 0);
+            assertEquals(batch.getMetric(i, 1), cached.getMetric(i, 1), 0);
+            int attr = cached.getAttribute(i, 0);
+            assertEquals(batch.getAttribute(i, 0), attr);
+            assertEquals(encoder.getAttribute(attr).getValue(),
+                         snapshot.getEncoder().getAttribute(attr).getValue());
+        }
+        assertEquals("userid", snapshot.getEncoder().getAttribute(cached.getAttribute(0, 0)).getColumn());
+    }
+
+    @Test
+    public void evictionTest() throws Exception {
+        File dir = folder.newFolder();
+        DatumEncoder encoder = new DatumEncoder();
+        DatumBatch batch = makeBatch(encoder, 10000);
+
+        SnapshotCache sizer = new SnapshotCache(folder.newFolder(), Long.MAX_VALUE);
+        sizer.put("a", encoder, batch);
+        long entryBytes = sizer.getTotalBytes();
+
+        // room for two entries
+        SnapshotCache cache = new SnapshotCache(dir, entryBytes * 2 + entryBytes / 2);
+        cache.put("a", encoder, batch);
+        cache.put("b", encoder, batch);
+        assertNotNull(cache.get("a"));
+        cache.put("c", encoder, batch);
+
+        // b was least recently used
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertEquals(entryBytes * 2, cache.getTotalBytes());
+        assertFalse(new File(dir, "b.cols").exists());
+    }
+
+    @Test
+    public void missingDictionaryTest() throws Exception {
+        File dir = folder.newFolder();
+        DatumEncoder encoder = new DatumEncoder();
+        SnapshotCache cache = new SnapshotCache(dir, Long.MAX_VALUE);
+        cache.put("a", encoder, makeBatch(encoder, 100));
+        cache.put("b", encoder, makeBatch(encoder, 100));
+        long entryBytes = cache.getTotalBytes() / 2;
+
+        assertTrue(new File(dir, "a.dict").delete());
+        assertNull(cache.get("a"));
+        assertFalse(cache.contains("a"));
+        assertFalse(new File(dir, "a.cols").exists());
+        assertEquals(entryBytes, cache.getTotalBytes());
+
+        // likewise for an entry found at startup
+        assertTrue(new File(dir, "b.dict").delete());
+        cache = new SnapshotCache(dir, Long.MAX_VALUE);
+        assertNull(cache.get("b"));
+        assertEquals(0, cache.getTotalBytes());
+    }
+}
@@ -0,0 +1,138 @@
+package macrobase.outlier;
+
+import macrobase.analysis.outlier.MinCovDet;
+import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MinCovDetTest {
+    // sqrt((vec-mean)^T S^-1 (vec-mean)), computed with full matrix algebra
+    private static double referenceMahalanobis(RealVector mean, RealMatrix cov, RealVector vec) {
+        RealMatrix diff = new Array2DRowRealMatrix(vec.subtract(mean).toArray());
+        RealMatrix inverse = new LUDecomposition(cov).getSolver().getInverse();
+        return Math.sqrt(diff.transpose().multiply(inverse).multiply(diff).getEntry(0, 0));
+    }
+
+    @Test
+    public void mahalanobisTest() {
+        RealVector mean = new ArrayRealVector(new double[]{1, 2, 3});
+        RealMatrix cov = new Array2DRowRealMatrix(new double[][]{
+                {4, 1, 0},
+                {1, 3, .5},
+                {0, .5, 2}
+        });
+
+        Random random = new Random(0);
+        for(int i = 0; i < 100; ++i) {
+            RealVector vec = new ArrayRealVector(new double[]{
+                    random.nextGaussian(), random.nextGaussian(), random.nextGaussian()
+            });
+            assertEquals(referenceMahalanobis(mean, cov, vec),
+                         MinCovDet.getMahalanobis(mean, cov, vec),
+                         1e-9);
+        }
+
+        // identity covariance reduces to Euclidean distance
+        RealMatrix identity = new Array2DRowRealMatrix(new double[][]{{1, 0}, {0, 1}});
+        assertEquals(5, MinCovDet.getMahalanobis(new ArrayRealVector(2),
+                                                 identity,
+                                                 new ArrayRealVector(new double[]{3, 4})), 1e-12);
+    }
+
+    @Test
+    public void scoreTest() {
+        int dim = 4;
+        Random random = new Random(0);
+        List<Datum> data = new ArrayList<>();
+        for(int i = 0; i < 2000; ++i) {
+            double[] metrics = new double[dim];
+            for(int j = 0; j < dim; ++j) {
+                metrics[j] = random.nextGaussian() * (j + 1);
+            }
+            data.add(new Datum(new ArrayList<>(), new ArrayRealVector(metrics)));
+        }
+        Datum outlier = new Datum(new ArrayList<>(), new ArrayRealVector(new double[]{50, 50, 50, 50}));
+        data.add(outlier);
+
+        MinCovDet mcd = new MinCovDet(dim);
+        mcd.train(data);
+
+        DatumBatch batch = DatumBatch.fromDatums(data);
+        double maxInlierScore = 0;
+        for(int i = 0; i < data.size(); ++i) {
+            double score = mcd.score(data.get(i));
+            assertEquals(score, mcd.score(batch, i), 1e-9);
+            if(data.get(i) != outlier) {
+                maxInlierScore = Math.max(maxInlierScore, score);
+            }
+        }
+        assertTrue(mcd.score(outlier) > maxInlierScore);
+    }
+
+    // 80% N(0, I) plus a tight cluster of 20% far away
+    private static List<Datum> contaminated(int n, int dim, Random random) {
+        List<Datum> data = new ArrayList<>();
+        for(int i = 0; i < n; ++i) {
+            double[] metrics = new double[dim];
+            for(int j = 0; j < dim; ++j) {
+                metrics[j] = i % 5 == 0 ? 20 + random.nextGaussian() * .1 : random.nextGaussian();
+            }
+            data.add(new Datum(new ArrayList<>(), new ArrayRealVector(metrics)));
+        }
+        return data;
+    }
+
+    @Test
+    public void fastMCDTest() {
+        int dim = 3;
+        List<Datum> data = contaminated(20000, dim, new Random(0));
+        DatumBatch batch = DatumBatch.fromDatums(data);
+
+        MinCovDet serial = new MinCovDet(dim);
+        serial.setUseFastMCD(true);
+        serial.setSeed(0);
+        serial.train(data);
+
+        // the estimate ignores the contaminating cluster
+        double[] origin = new double[dim];
+        double[] cluster = new double[dim];
+        Arrays.fill(cluster, 20);
+        Datum center = new Datum(new ArrayList<>(), new ArrayRealVector(origin));
+        Datum far = new Datum(new ArrayList<>(), new ArrayRealVector(cluster));
+        assertTrue(serial.score(center) < 1);
+        assertTrue(serial.score(far) > 10);
+
+        // seeded training is deterministic, and independent of parallelism
+        // and of the input representation
+        MinCovDet parallel = new MinCovDet(dim);
+        parallel.setUseFastMCD(true);
+        parallel.setSeed(0);
+        parallel.setParallelism(4);
+        parallel.train(batch);
+
+        for(int i = 0; i < 1000; ++i) {
+            assertEquals(serial.score(data.get(i)), parallel.score(data.get(i)), 1e-9);
+        }
+
+        // small inputs are not subsampled
+        MinCovDet small = new MinCovDet(dim);
+        small.setUseFastMCD(true);
+        small.setSeed(0);
+        small.train(data.subList(0, 500));
+        assertTrue(small.score(center) < 1);
+        assertTrue(small.score(far) > 10);
+    }
+}
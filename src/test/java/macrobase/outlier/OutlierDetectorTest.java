@@ -0,0 +1,137 @@
+package macrobase.outlier;
+
+import macrobase.analysis.outlier.OutlierDetector;
+import macrobase.analysis.summary.result.DatumWithScore;
+import macrobase.datamodel.Datum;
+import macrobase.datamodel.DatumBatch;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class OutlierDetectorTest {
+    // scores each datum by its metric, so tests control ties and NaNs
+    private static class MetricDetector extends OutlierDetector {
+        @Override
+        public void train(List<Datum> data) {
+        }
+
+        @Override
+        public void train(DatumBatch data) {
+        }
+
+        @Override
+        public double score(Datum datum) {
+            return datum.getMetrics().getEntry(0);
+        }
+
+        @Override
+        public double getZScoreEquivalent(double zscore) {
+            return zscore;
+        }
+    }
+
+    private static List<Datum> makeData(int n, Random random) {
+        double[] special = {Double.NaN, -0.0, 0.0, Double.POSITIVE_INFINITY};
+        List<Datum> ret = new ArrayList<>();
+        for(int i = 0; i < n; ++i) {
+            double metric = random.nextInt(10) == 0 ? special[random.nextInt(special.length)] : random.nextInt(50);
+            // the attribute records the row, so rows can be recovered from results
+            ret.add(new Datum(Arrays.asList(i), new ArrayRealVector(new double[]{metric})));
+        }
+        return ret;
+    }
+
+    private static List<Integer> rows(List<DatumWithScore> data) {
+        return data.stream().map(d -> d.getDatum().getAttributes().get(0)).collect(Collectors.toList());
+    }
+
+    private static List<Integer> rows(DatumBatch data) {
+        return IntStream.range(0, data.size()).map(i -> data.getAttribute(i, 0)).boxed().collect(Collectors.toList());
+    }
+
+    @Test
+    public void percentileTest() {
+        Random random = new Random(0);
+        for(int parallelism : new int[]{1, 4}) {
+            for(int n : new int[]{1, 10, 1000, 100000}) {
+                List<Datum> data = makeData(n, random);
+                for(double percentile : new double[]{0, .01, .1, .5}) {
+                    // reference: stable sort by score, split at the percentile
+                    List<Datum> sorted = new ArrayList<>(data);
+                    sorted.sort(Comparator.comparing(d -> d.getMetrics().getEntry(0)));
+                    int splitPoint = (int) (n - n * percentile);
+                    List<Integer> expectedInliers = sorted.subList(0, splitPoint).stream()
+                            .map(d -> d.getAttributes().get(0)).sorted().collect(Collectors.toList());
+                    List<Integer> expectedOutliers = sorted.subList(splitPoint, n).stream()
+                            .map(d -> d.getAttributes().get(0)).collect(Collectors.toList());
+
+                    OutlierDetector detector = new MetricDetector();
+                    detector.setParallelism(parallelism);
+
+                    OutlierDetector.BatchResult result = detector.classifyBatchByPercentile(data, percentile);
+                    assertEquals(expectedInliers, rows(result.getInliers()));
+                    assertEquals(expectedOutliers, rows(result.getOutliers()));
+
+                    OutlierDetector.ColumnarBatchResult columnar =
+                            detector.classifyBatchByPercentile(DatumBatch.fromDatums(data), percentile);
+                    assertEquals(expectedInliers, rows(columnar.getInliers()));
+                    expectedOutliers.sort(Integer::compare);
+                    assertEquals(expectedOutliers, rows(columnar.getOutliers()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void zScoreTest() {
+        List<Datum> data = makeData(100000, new Random(0));
+        List<Integer> expectedOutliers = data.stream()
+                .filter(d -> d.getMetrics().getEntry(0) >= 40)
+                .map(d -> d.getAttributes().get(0))
+                .collect(Collectors.toList());
+
+        OutlierDetector detector = new MetricDetector();
+        detector.setParallelism(4);
+        OutlierDetector.BatchResult result = detector.classifyBatchByZScoreEquivalent(data, 40);
+        assertEquals(expectedOutliers, rows(result.getOutliers()));
+        assertEquals(data.size() - expectedOutliers.size(), result.getInliers().size());
+
+        OutlierDetector.ColumnarBatchResult columnar =
+                detector.classifyBatchByZScoreEquivalent(DatumBatch.fromDatums(data), 40);
+        assertEquals(expectedOutliers, rows(columnar.getOutliers()));
+        assertEquals(data.size() - expectedOutliers.size(), columnar.getInliers().size());
+    }
+
+    @Test
+    public void sharedPoolTest() {
+        List<Datum> data = makeData(100000, new Random(0));
+        // the pool of each thread that scored, from names like ForkJoinPool-3-worker-1
+        Set<String> pools = ConcurrentHashMap.newKeySet();
+        for(int i = 0; i < 10; ++i) {
+            OutlierDetector detector = new MetricDetector() {
+                @Override
+                public double score(Datum datum) {
+                    String name = Thread.currentThread().getName();
+                    if(name.contains("-worker-")) {
+                        pools.add(name.substring(0, name.indexOf("-worker-")));
+                    }
+                    return super.score(datum);
+                }
+            };
+            detector.setParallelism(4);
+            detector.classifyBatchByPercentile(data, .01);
+        }
+        assertEquals(1, pools.size());
+    }
+}
@@ -0,0 +1,62 @@
+package macrobase.outlier;
+
+import macrobase.analysis.outlier.MAD;
+import macrobase.analysis.outlier.StreamingMAD;
+import macrobase.datamodel.Datum;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingMADTest {
+    private static Datum datum(double metric) {
+        return new Datum(new ArrayList<>(), new ArrayRealVector(new double[]{metric}));
+    }
+
+    @Test
+    public void simpleTest() {
+        Random random = new Random(0);
+        List<Datum> data = new ArrayList<>();
+        for(int i = 0; i < 10000; ++i) {
+            data.add(datum(random.nextGaussian() * 2 + 5));
+        }
+
+        MAD mad = new MAD();
+        mad.train(data);
+        StreamingMAD streaming = new StreamingMAD(.01);
+        streaming.train(data);
+
+        for(double metric : new double[]{-10, 0, 5, 7, 20}) {
+            assertEquals(mad.score(datum(metric)), streaming.score(datum(metric)), .05 * mad.score(datum(metric)) + .01);
+        }
+    }
+
+    @Test
+    public void updateTest() {
+        StreamingMAD streaming = new StreamingMAD(.5);
+        Random random = new Random(0);
+        List<Datum> warmup = new ArrayList<>();
+        for(int i = 0; i < 1000; ++i) {
+            warmup.add(datum(random.nextGaussian()));
+        }
+        streaming.train(warmup);
+        assertTrue(streaming.score(datum(100)) > 50);
+
+        // the distribution shifts; updates are only visible after updateModel
+        for(int period = 0; period < 20; ++period) {
+            for(int i = 0; i < 1000; ++i) {
+                streaming.update(datum(100 + random.nextGaussian()));
+            }
+            streaming.advancePeriod();
+        }
+        assertTrue(streaming.score(datum(100)) > 50);
+        streaming.updateModel();
+        assertTrue(streaming.score(datum(100)) < 1);
+        assertTrue(streaming.score(datum(0)) > 50);
+    }
+}
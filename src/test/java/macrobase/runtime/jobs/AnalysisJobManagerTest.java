@@ -0,0 +1,97 @@
+package macrobase.runtime.jobs;
+
+import macrobase.analysis.result.AnalysisResult;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AnalysisJobManagerTest {
+    private static AnalysisResult makeResult() {
+        return new AnalysisResult(1, 2, 0, 0, 0, new ArrayList<>());
+    }
+
+    @Test
+    public void cachingTest() throws Exception {
+        AnalysisJobManager manager = new AnalysisJobManager(1, 4, 2);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        AnalysisJob first = manager.submit("a", job -> {
+            job.setStage("loading");
+            release.await();
+            runs.incrementAndGet();
+            return makeResult();
+        });
+        // identical request while the first is in flight joins it
+        AnalysisJob joined = manager.submit("a", job -> {
+            runs.incrementAndGet();
+            return makeResult();
+        });
+        assertSame(first, joined);
+        assertFalse(first.isDone());
+
+        release.countDown();
+        assertTrue(first.await(10, TimeUnit.SECONDS));
+        assertEquals(AnalysisJob.Status.SUCCEEDED, first.getStatus());
+        assertSame(first, manager.getJob(first.getId()));
+
+        // completed requests are served from the cache
+        AnalysisJob cached = manager.submit("a", job -> {
+            runs.incrementAndGet();
+            return makeResult();
+        });
+        assertTrue(cached.isDone());
+        assertTrue(cached.isCached());
+        assertSame(first.getResult(), cached.getResult());
+        assertEquals(1, runs.get());
+
+        assertNull(manager.getJob("missing"));
+        manager.stop();
+    }
+
+    @Test
+    public void failureTest() throws Exception {
+        AnalysisJobManager manager = new AnalysisJobManager(1, 1, 2);
+
+        AnalysisJob failed = manager.submit("a", job -> {
+            throw new IllegalStateException("boom");
+        });
+        assertTrue(failed.await(10, TimeUnit.SECONDS));
+        assertEquals(AnalysisJob.Status.FAILED, failed.getStatus());
+        assertTrue(failed.getError().contains("boom"));
+
+        // failures are not cached
+        AnalysisJob retried = manager.submit("a", job -> makeResult());
+        assertTrue(retried.await(10, TimeUnit.SECONDS));
+        assertEquals(AnalysisJob.Status.SUCCEEDED, retried.getStatus());
+
+        // one running and one queued job fill the pool
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        manager.submit("b", job -> {
+            started.countDown();
+            release.await();
+            return makeResult();
+        });
+        started.await();
+        manager.submit("c", job -> makeResult());
+        try {
+            manager.submit("d", job -> makeResult());
+            fail("expected the full queue to reject the job");
+        } catch (RejectedExecutionException e) {
+        }
+        release.countDown();
+        manager.stop();
+    }
+}
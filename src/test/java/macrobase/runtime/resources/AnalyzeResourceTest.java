@@ -0,0 +1,103 @@
+package macrobase.runtime.resources;
+
+import com.google.common.collect.Lists;
+import macrobase.analysis.result.AnalysisResult;
+import macrobase.ingest.DataSourceRegistry;
+import macrobase.ingest.SQLLoader;
+import macrobase.runtime.jobs.AnalysisJob;
+import macrobase.runtime.jobs.AnalysisJobManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.Response;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AnalyzeResourceTest {
+    private static final String DB_URL = "mem:analyze;DB_CLOSE_DELAY=-1";
+
+    private DataSourceRegistry dataSources;
+    private AnalysisJobManager jobs;
+
+    @Before
+    public void setUp() throws Exception {
+        dataSources = new DataSourceRegistry(() -> new SQLLoader() {
+            @Override
+            public String getDriverClass() {
+                return "org.h2.Driver";
+            }
+
+            @Override
+            public String getJDBCUrlPrefix() {
+                return "jdbc:h2:";
+            }
+        });
+        try (Connection conn = dataSources.getDataSource(DB_URL).getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS events");
+            stmt.execute("CREATE TABLE events (userid VARCHAR, latency DOUBLE)");
+            for(int i = 0; i < 1000; ++i) {
+                stmt.execute(String.format("INSERT INTO events VALUES ('user%d', %d)",
+                                           i % 10, i % 10 == 0 ? 1000 : i % 7));
+            }
+        }
+
+        // one analysis at a time
+        jobs = new AnalysisJobManager(1, 4, 4);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        jobs.stop();
+        dataSources.stop();
+    }
+
+    private static AnalyzeResource.AnalysisRequest request() {
+        AnalyzeResource.AnalysisRequest ret = new AnalyzeResource.AnalysisRequest();
+        ret.pgUrl = DB_URL;
+        ret.baseQuery = "SELECT * FROM events";
+        ret.attributes = Lists.newArrayList("userid");
+        ret.lowMetrics = Lists.newArrayList();
+        ret.highMetrics = Lists.newArrayList("latency");
+        return ret;
+    }
+
+    @Test
+    public void synchronousTest() throws Exception {
+        AnalyzeResource resource = new AnalyzeResource(dataSources, null, jobs, 60000);
+        Response response = resource.getAnalysis(request());
+        assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        assertEquals(1000, ((AnalysisResult) response.getEntity()).getNumInliers() +
+                           ((AnalysisResult) response.getEntity()).getNumOutliers(), 0);
+    }
+
+    @Test
+    public void timeoutTest() throws Exception {
+        AnalyzeResource resource = new AnalyzeResource(dataSources, null, jobs, 10);
+
+        // hold the only analysis thread so the request stays queued
+        CountDownLatch release = new CountDownLatch(1);
+        jobs.submit("blocker", job -> {
+            release.await();
+            return new AnalysisResult(0, 0, 0, 0, 0, new ArrayList<>());
+        });
+
+        Response response = resource.getAnalysis(request());
+        assertEquals(Response.Status.ACCEPTED.getStatusCode(), response.getStatus());
+        AnalysisJob job = (AnalysisJob) response.getEntity();
+        assertEquals(AnalysisJob.Status.QUEUED, resource.getJobStatus(job.getId()).getStatus());
+
+        release.countDown();
+        assertTrue(job.await(60, TimeUnit.SECONDS));
+        assertEquals(AnalysisJob.Status.SUCCEEDED, job.getStatus());
+        assertEquals(1000, resource.getJobResult(job.getId()).getNumInliers() +
+                           resource.getJobResult(job.getId()).getNumOutliers(), 0);
+    }
+}
@@ -0,0 +1,72 @@
+package macrobase.sample;
+
+import macrobase.analysis.sample.ExponentiallyBiasedAChao;
+import macrobase.analysis.sample.ExponentiallyBiasedDoubleAChao;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExponentiallyBiasedAChaoTest {
+    @Test
+    public void fillAndReplaceTest() {
+        ExponentiallyBiasedAChao<Integer> reservoir = new ExponentiallyBiasedAChao<>(100, .5);
+        for(int i = 0; i < 50; ++i) {
+            reservoir.insert(i);
+        }
+        assertEquals(50, reservoir.getReservoir().size());
+
+        for(int i = 50; i < 10000; ++i) {
+            reservoir.insert(i);
+            reservoir.advancePeriod();
+        }
+
+        List<Integer> sample = reservoir.getReservoir();
+        assertEquals(100, sample.size());
+        // heavily biased toward recent elements
+        int recent = 0;
+        for(int i : sample) {
+            if(i >= 9000) {
+                recent++;
+            }
+        }
+        assertTrue(recent > 90);
+        assertEquals(100, new HashSet<>(sample).size());
+    }
+
+    @Test
+    public void doubleTest() {
+        ExponentiallyBiasedDoubleAChao reservoir = new ExponentiallyBiasedDoubleAChao(100, .5);
+        for(int i = 0; i < 50; ++i) {
+            reservoir.insert(i);
+        }
+        assertEquals(50, reservoir.size());
+        assertEquals(50, reservoir.getReservoir().length);
+
+        for(int i = 50; i < 10000; ++i) {
+            reservoir.insert(i);
+            reservoir.advancePeriod();
+        }
+
+        double[] sample = reservoir.getReservoir();
+        assertEquals(100, sample.length);
+        Set<Double> distinct = new HashSet<>();
+        int recent = 0;
+        for(double d : sample) {
+            distinct.add(d);
+            if(d >= 9000) {
+                recent++;
+            }
+        }
+        assertTrue(recent > 90);
+        assertEquals(100, distinct.size());
+
+        // the sample is a copy
+        sample[0] = -1;
+        assertTrue(reservoir.getReservoir()[0] != -1);
+    }
+}
@@ -0,0 +1,71 @@
+package macrobase.sample;
+
+import macrobase.analysis.sample.ExponentiallyBiasedDoubleAChao;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PercentileTrackingTest {
+    private static double sortedThreshold(double[] sample, double percentile) {
+        Arrays.sort(sample);
+        int splitPoint = (int) (sample.length - sample.length * percentile);
+        return splitPoint >= sample.length ? Double.POSITIVE_INFINITY : sample[splitPoint];
+    }
+
+    @Test
+    public void matchesSortTest() {
+        Random random = new Random(0);
+        for(double percentile : new double[]{.01, .1, .5}) {
+            ExponentiallyBiasedDoubleAChao reservoir = new ExponentiallyBiasedDoubleAChao(200, .3, 0);
+            reservoir.trackPercentile(percentile);
+            for(int i = 0; i < 5000; ++i) {
+                // include plenty of ties
+                reservoir.insert(random.nextInt(4) == 0 ? 1 : random.nextGaussian());
+                if(i % 10 == 0) {
+                    reservoir.advancePeriod();
+                }
+
+                assertEquals(sortedThreshold(reservoir.getReservoir(), percentile),
+                             reservoir.getPercentileThreshold(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void trackExistingTest() {
+        ExponentiallyBiasedDoubleAChao reservoir = new ExponentiallyBiasedDoubleAChao(100, .3, 0);
+        for(int i = 0; i < 100; ++i) {
+            reservoir.insert(i);
+        }
+        reservoir.trackPercentile(.1);
+        assertEquals(90, reservoir.getPercentileThreshold(), 0);
+    }
+
+    @Test
+    public void tiesTest() {
+        // 90 zeros and 10 ones; the top 5% are five of the ones
+        ExponentiallyBiasedDoubleAChao reservoir = new ExponentiallyBiasedDoubleAChao(100, .3, 0);
+        reservoir.trackPercentile(.05);
+        for(int i = 0; i < 100; ++i) {
+            reservoir.insert(i < 90 ? 0 : 1);
+        }
+        assertEquals(1, reservoir.getPercentileThreshold(), 0);
+        // the ones straddle the split, so like the batch split, a one is an inlier
+        assertFalse(reservoir.isPercentileOutlier(1));
+        assertTrue(reservoir.isPercentileOutlier(1.5));
+
+        // every one is in the top 10%, so a one is an outlier
+        reservoir.trackPercentile(.1);
+        assertEquals(1, reservoir.getPercentileThreshold(), 0);
+        assertTrue(reservoir.isPercentileOutlier(1));
+        assertFalse(reservoir.isPercentileOutlier(.5));
+
+        reservoir.trackPercentile(0);
+        assertFalse(reservoir.isPercentileOutlier(Double.POSITIVE_INFINITY));
+    }
+}
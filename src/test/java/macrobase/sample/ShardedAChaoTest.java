@@ -0,0 +1,81 @@
+package macrobase.sample;
+
+import macrobase.analysis.sample.ShardedAChao;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedAChaoTest {
+    @Test
+    public void seededTest() {
+        List<List<Integer>> samples = new ArrayList<>();
+        for(int run = 0; run < 2; ++run) {
+            ShardedAChao<Integer> reservoir = new ShardedAChao<>(100, .1, 42);
+            for(int i = 0; i < 10000; ++i) {
+                reservoir.insert(i);
+                if(i % 100 == 0) {
+                    reservoir.advancePeriod();
+                }
+            }
+            samples.add(reservoir.getReservoir());
+        }
+
+        assertEquals(100, samples.get(0).size());
+        assertEquals(samples.get(0), samples.get(1));
+    }
+
+    // thread t inserts values in [t * 1000000, (t + 1) * 1000000)
+    private static int[] countsByThread(ShardedAChao<Integer> reservoir,
+                                        int numThreads,
+                                        double[] weights) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < numThreads; ++t) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                for(int i = 0; i < 20000; ++i) {
+                    reservoir.insert(thread * 1000000 + i, weights[thread]);
+                }
+            }));
+        }
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+
+        int[] counts = new int[numThreads];
+        for(int i : reservoir.getReservoir()) {
+            counts[i / 1000000]++;
+        }
+        return counts;
+    }
+
+    @Test
+    public void mergeTest() throws InterruptedException {
+        ShardedAChao<Integer> reservoir = new ShardedAChao<>(1000, .1, 0);
+        int[] counts = countsByThread(reservoir, 4, new double[]{1, 1, 1, 1});
+
+        assertEquals(4, reservoir.getNumShards());
+        int total = 0;
+        for(int count : counts) {
+            assertTrue(count > 150 && count < 350);
+            total += count;
+        }
+        assertEquals(1000, total);
+    }
+
+    @Test
+    public void weightedMergeTest() throws InterruptedException {
+        ShardedAChao<Integer> reservoir = new ShardedAChao<>(1000, .1, 0);
+        int[] counts = countsByThread(reservoir, 2, new double[]{1, 3});
+
+        // the second shard carries 3/4 of the weight
+        assertEquals(1000, counts[0] + counts[1]);
+        assertTrue(counts[1] > 650 && counts[1] < 850);
+    }
+}
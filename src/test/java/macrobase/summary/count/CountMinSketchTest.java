@@ -0,0 +1,81 @@
+package macrobase.summary.count;
+
+import macrobase.analysis.summary.count.CountMinSketch;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CountMinSketchTest {
+
+    @Test
+    public void simpleTest() {
+        CountMinSketch cms = new CountMinSketch(1000, 5);
+        cms.observe(1);
+        cms.observe(1);
+        cms.observe(2);
+        cms.observe(1, 2.5);
+
+        assertEquals(4.5, cms.getCount(1), 0);
+        assertEquals(1, cms.getCount(2), 0);
+        assertEquals(0, cms.getCount(3), 0);
+        assertEquals(5.5, cms.getTotalCount(), 0);
+    }
+
+    @Test
+    public void errorBoundTest() {
+        double epsilon = .001;
+        CountMinSketch cms = CountMinSketch.withError(epsilon, .01);
+        assertEquals(2719, cms.getWidth());
+        assertEquals(5, cms.getDepth());
+
+        Map<Integer, Double> exact = new HashMap<>();
+        Random random = new Random(0);
+        for(int i = 0; i < 100000; ++i) {
+            double u = random.nextDouble();
+            int item = (int) (100000 * u * u * u);
+            cms.observe(item);
+            exact.merge(item, 1., Double::sum);
+        }
+
+        double maxError = epsilon * cms.getTotalCount();
+        for(Map.Entry<Integer, Double> e : exact.entrySet()) {
+            double estimate = cms.getCount(e.getKey());
+            assertTrue(estimate >= e.getValue());
+            assertTrue(estimate - e.getValue() <= maxError);
+        }
+    }
+
+    @Test
+    public void hashedKeyTest() {
+        CountMinSketch cms = new CountMinSketch(1000, 5);
+        long key = CountMinSketch.mix(1) + CountMinSketch.mix(2);
+        cms.observeKey(key, 3);
+
+        assertEquals(3, cms.getKeyCount(key), 0);
+        assertEquals(0, cms.getCount(1), 0);
+    }
+
+    @Test
+    public void decayTest() {
+        CountMinSketch cms = new CountMinSketch(1000, 5);
+        cms.observe(1, 8);
+        cms.multiplyAllCounts(.5);
+        cms.observe(1, 1);
+        assertEquals(5, cms.getCount(1), 1e-9);
+        assertEquals(5, cms.getTotalCount(), 1e-9);
+
+        // enough decay to renormalize the stored counts
+        cms.observe(2, 1e200);
+        for(int i = 0; i < 40; ++i) {
+            cms.multiplyAllCounts(1e-10);
+        }
+        cms.observe(3, 1);
+        assertEquals(1e-200, cms.getCount(2), 1e-210);
+        assertEquals(1, cms.getCount(3), 1e-9);
+    }
+}
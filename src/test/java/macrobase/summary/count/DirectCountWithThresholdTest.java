@@ -0,0 +1,50 @@
+package macrobase.summary.count;
+
+import macrobase.analysis.summary.count.DirectCountWithThreshold;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DirectCountWithThresholdTest {
+    @Test
+    public void decayTest() {
+        DirectCountWithThreshold counter = new DirectCountWithThreshold(.01);
+        counter.observe(1, 10);
+        counter.observe(2, 30);
+        counter.multiplyAllCounts(.5);
+        counter.observe(1, 5);
+
+        assertEquals(10, counter.getCount(1), 1e-9);
+        assertEquals(15, counter.getCount(2), 1e-9);
+        assertEquals(25, counter.getTotalCount(), 1e-9);
+
+        // many more periods than a double's exponent range
+        for(int i = 0; i < 2000; ++i) {
+            counter.multiplyAllCounts(.5);
+            counter.observe(1, 1);
+        }
+        assertEquals(2, counter.getCount(1), 1e-9);
+        Map<Integer, Double> counts = counter.getCounts();
+        assertEquals(2, counts.get(1), 1e-9);
+    }
+
+    @Test
+    public void pruneTest() {
+        double threshold = .001;
+        DirectCountWithThreshold counter = new DirectCountWithThreshold(threshold);
+        Random random = new Random(0);
+        for(int i = 0; i < 1000000; ++i) {
+            // a few heavy items amid a long tail of one-offs
+            counter.observe(i % 2 == 0 ? random.nextInt(10) : 100 + i, 1);
+            assertTrue(counter.getNumTrackedItems() <= 2 / threshold + 1024);
+        }
+
+        for(int item = 0; item < 10; ++item) {
+            assertEquals(50000, counter.getCount(item), 2000);
+        }
+    }
+}
@@ -7,7 +7,12 @@ package macrobase.summary.count;
 import macrobase.analysis.summary.count.SpaceSaving;
 import org.junit.Test;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class SpaceSavingTest {
 
@@ -43,4 +48,98 @@ public class SpaceSavingTest {
         ss.observe(10);
         assertEquals(2, ss.getCount(10), 0);
     }
+
+    // a skewed stream over 10000 items
+    private static int[] skewedItems(long seed, int count) {
+        Random random = new Random(seed);
+        int[] ret = new int[count];
+        for(int i = 0; i < count; ++i) {
+            double u = random.nextDouble();
+            ret[i] = (int) (10000 * u * u * u);
+        }
+        return ret;
+    }
+
+    private static void assertWithinBounds(Map<Integer, Double> exact, SpaceSaving ss, int maxSize) {
+        double maxError = ss.getTotalCount() / maxSize;
+        assertTrue(ss.getMinCount() <= maxError);
+        Map<Integer, Double> tracked = ss.getCounts();
+        for(Map.Entry<Integer, Double> e : exact.entrySet()) {
+            double count = ss.getCount(e.getKey());
+            assertTrue(count >= e.getValue() - 1e-9);
+            if(tracked.containsKey(e.getKey())) {
+                assertTrue(count - e.getValue() <= ss.getMinCount() + 1e-9);
+            } else {
+                // only items below the error bound may go untracked, and
+                // they are counted at the bound
+                assertTrue(e.getValue() <= maxError);
+                assertEquals(ss.getMinCount(), count, 0);
+            }
+        }
+    }
+
+    @Test
+    public void errorBoundTest() {
+        int maxSize = 100;
+        SpaceSaving ss = new SpaceSaving(maxSize);
+        Map<Integer, Double> exact = new HashMap<>();
+        for(int item : skewedItems(0, 100000)) {
+            ss.observe(item, 1);
+            exact.merge(item, 1., Double::sum);
+        }
+
+        assertEquals(100000, ss.getTotalCount(), 0);
+        assertEquals(maxSize, ss.getCounts().size());
+        assertWithinBounds(exact, ss, maxSize);
+    }
+
+    @Test
+    public void batchObserveAndDecayTest() {
+        int[] items = skewedItems(1, 10000);
+        double[] weights = new double[items.length];
+        for(int i = 0; i < weights.length; ++i) {
+            weights[i] = 1 + i % 3;
+        }
+
+        SpaceSaving batched = new SpaceSaving(50);
+        SpaceSaving single = new SpaceSaving(50);
+        batched.observe(items, weights);
+        for(int i = 0; i < items.length; ++i) {
+            single.observe(items[i], weights[i]);
+        }
+        assertEquals(single.getCounts(), batched.getCounts());
+
+        Map<Integer, Double> before = batched.getCounts();
+        // many more periods than a double's exponent range
+        for(int i = 0; i < 2000; ++i) {
+            batched.multiplyAllCounts(.5);
+        }
+        for(Map.Entry<Integer, Double> e : before.entrySet()) {
+            assertEquals(e.getValue() * Math.pow(.5, 2000), batched.getCount(e.getKey()), 0);
+        }
+
+        batched.observe(items[0], 1);
+        assertEquals(1, batched.getCount(items[0]), 1e-9);
+        assertEquals(1, batched.getTotalCount(), 1e-9);
+    }
+
+    @Test
+    public void mergeTest() {
+        int maxSize = 100;
+        Map<Integer, Double> exact = new HashMap<>();
+        SpaceSaving merged = new SpaceSaving(maxSize);
+        for(int partition = 0; partition < 4; ++partition) {
+            SpaceSaving ss = new SpaceSaving(maxSize);
+            // partitions see differently skewed streams
+            for(int item : skewedItems(partition, 25000)) {
+                item = (item + partition * 10) % 10000;
+                ss.observe(item, 1);
+                exact.merge(item, 1., Double::sum);
+            }
+            merged.merge(ss);
+        }
+
+        assertEquals(100000, merged.getTotalCount(), 0);
+        assertWithinBounds(exact, merged, maxSize);
+    }
 }
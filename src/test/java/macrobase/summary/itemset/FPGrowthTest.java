@@ -141,4 +141,72 @@ public class FPGrowthTest {
 
         assertEquals(dupdetector.size(), itemsets.size());
     }
+
+    @Test
+    public void parallelTest()
+    {
+        Random r = new Random(0);
+        List<Set<Integer>> txns = new ArrayList<>();
+        for(int i = 0; i < 2000; ++i) {
+            Set<Integer> txn = new HashSet<>();
+            for(int j = 0; j < 6; ++j) {
+                // skewed so that there are many frequent items and branches
+                txn.add((int) Math.abs(r.nextGaussian() * 15));
+            }
+            txns.add(txn);
+        }
+
+        FPGrowth serial = new FPGrowth();
+        List<ItemsetWithCount> serialItemsets = serial.getItemsets(txns, .01);
+
+        FPGrowth parallel = new FPGrowth();
+        parallel.setParallelism(4);
+        List<ItemsetWithCount> parallelItemsets = parallel.getItemsets(txns, .01);
+
+        assertTrue(serialItemsets.size() > 100);
+        assertEquals(serialItemsets.size(), parallelItemsets.size());
+        for(int i = 0; i < serialItemsets.size(); ++i) {
+            assertEquals(serialItemsets.get(i).getItems(), parallelItemsets.get(i).getItems());
+            assertEquals(serialItemsets.get(i).getCount(), parallelItemsets.get(i).getCount(), 0);
+        }
+    }
+
+    private Map<Set<Integer>, Double> toMap(List<ItemsetWithCount> itemsets) {
+        Map<Set<Integer>, Double> ret = new HashMap<>();
+        for(ItemsetWithCount i : itemsets) {
+            assertNull(ret.put(i.getItems(), i.getCount()));
+        }
+        return ret;
+    }
+
+    @Test
+    public void arrayTreeTest()
+    {
+        List<Set<Integer>> txns = new ArrayList<>();
+        txns.add(intIfy("f, a, c, d, g, i, m, p"));
+        txns.add(intIfy("a, b, c, f, l, m, o"));
+        txns.add(intIfy("b, f, h, j, o"));
+        txns.add(intIfy("b, c, k, s, p"));
+        txns.add(intIfy("a, f, c, e, l, p, m, n"));
+
+        FPGrowth fp = new FPGrowth();
+        fp.setUseArrayTree(true);
+        assertEquals(18, fp.getItemsets(txns, .6).size());
+
+        Random r = new Random(0);
+        txns.clear();
+        for(int i = 0; i < 2000; ++i) {
+            Set<Integer> txn = new HashSet<>();
+            for(int j = 0; j < 6; ++j) {
+                txn.add((int) Math.abs(r.nextGaussian() * 15));
+            }
+            txns.add(txn);
+        }
+
+        Map<Set<Integer>, Double> expected = toMap(new FPGrowth().getItemsets(txns, .01));
+        assertEquals(expected, toMap(fp.getItemsets(txns, .01)));
+
+        fp.setParallelism(4);
+        assertEquals(expected, toMap(fp.getItemsets(txns, .01)));
+    }
 }
@@ -140,4 +140,64 @@ public class StreamingFPGrowthTest {
 
         assertEquals(apItemsets.size(), itemsets.size());
     }
+
+    private Map<Set<Integer>, Double> countsByItemset(List<ItemsetWithCount> itemsets) {
+        Map<Set<Integer>, Double> ret = new HashMap<>();
+        for(ItemsetWithCount i : itemsets) {
+            ret.put(i.getItems(), i.getCount());
+        }
+        return ret;
+    }
+
+    @Test
+    public void decayTest() {
+        StreamingFPGrowth fp = new StreamingFPGrowth(.5);
+        for(int i = 0; i < 10; ++i) {
+            fp.insertTransactionStreamingExact(intIfy("a, b"));
+            fp.insertTransactionStreamingExact(intIfy("a"));
+        }
+
+        Map<Integer, Double> frequentItems = new HashMap<>();
+        frequentItems.put((int) 'a', 20.);
+        frequentItems.put((int) 'b', 10.);
+        fp.decayAndResetFrequentItems(frequentItems, .5);
+        // the caller's counts are left alone
+        assertEquals(20., frequentItems.get((int) 'a'), 0);
+
+        for(int i = 0; i < 4; ++i) {
+            fp.insertTransactionStreamingExact(intIfy("a, b"));
+        }
+
+        Map<Set<Integer>, Double> counts = countsByItemset(fp.getItemsets());
+        assertEquals(3, counts.size());
+        assertEquals(14, counts.get(intIfy("a")), 1e-9);
+        assertEquals(9, counts.get(intIfy("b")), 1e-9);
+        assertEquals(9, counts.get(intIfy("a, b")), 1e-9);
+    }
+
+    @Test
+    public void manyDecaysTest() {
+        // enough periods to renormalize the stored counts a few times
+        StreamingFPGrowth fp = new StreamingFPGrowth(.5);
+        double a = 0;
+        double b = 0;
+        for(int period = 0; period < 500; ++period) {
+            fp.insertTransactionStreamingExact(intIfy("a, b"));
+            fp.insertTransactionStreamingExact(intIfy("a"));
+            a += 2;
+            b += 1;
+
+            Map<Integer, Double> frequentItems = new HashMap<>();
+            frequentItems.put((int) 'a', a);
+            frequentItems.put((int) 'b', b);
+            fp.decayAndResetFrequentItems(frequentItems, .9);
+            a *= .1;
+            b *= .1;
+        }
+
+        Map<Set<Integer>, Double> counts = countsByItemset(fp.getItemsets());
+        assertEquals(a, counts.get(intIfy("a")), 1e-9);
+        assertEquals(b, counts.get(intIfy("b")), 1e-9);
+        assertEquals(b, counts.get(intIfy("a, b")), 1e-9);
+    }
 }
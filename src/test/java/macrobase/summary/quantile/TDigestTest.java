@@ -0,0 +1,89 @@
+package macrobase.summary.quantile;
+
+import macrobase.analysis.summary.quantile.TDigest;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TDigestTest {
+    private static final int N = 100000;
+
+    private static double exactQuantile(double[] sorted, double q) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(q * sorted.length))];
+    }
+
+    @Test
+    public void quantileTest() {
+        Random random = new Random(0);
+        TDigest digest = new TDigest();
+        double[] values = new double[N];
+        for(int i = 0; i < N; ++i) {
+            // skewed, so the median and the tails differ in scale
+            values[i] = Math.exp(random.nextGaussian());
+            digest.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertTrue(digest.getNumCentroids() < 250);
+        assertEquals(N, digest.getTotalWeight(), 1e-6);
+        for(double q : new double[]{.001, .01, .1, .25, .5, .75, .9, .99, .999}) {
+            // error is measured in rank, which t-digest bounds tightly near the tails
+            double estimate = digest.quantile(q);
+            int rank = Math.abs(Arrays.binarySearch(values, estimate));
+            assertEquals(q, (double) rank / N, .005);
+        }
+        assertEquals(values[0], digest.quantile(0), 1e-12);
+        assertEquals(values[N - 1], digest.quantile(1), 1e-12);
+    }
+
+    @Test
+    public void mergeTest() {
+        Random random = new Random(0);
+        TDigest whole = new TDigest();
+        TDigest low = new TDigest();
+        TDigest high = new TDigest();
+        double[] values = new double[N];
+        for(int i = 0; i < N; ++i) {
+            values[i] = random.nextDouble();
+            whole.add(values[i]);
+            (values[i] < .3 ? low : high).add(values[i]);
+        }
+
+        low.merge(high);
+        assertEquals(N, low.getTotalWeight(), 1e-6);
+        for(double q : new double[]{.1, .3, .5, .9}) {
+            assertEquals(q, low.quantile(q), .01);
+            assertEquals(whole.quantile(q), low.quantile(q), .01);
+        }
+    }
+
+    @Test
+    public void decayTest() {
+        TDigest digest = new TDigest();
+        for(int i = 0; i < 1000; ++i) {
+            digest.add(0);
+        }
+
+        // after heavy decay, new values dominate
+        for(int period = 0; period < 100; ++period) {
+            digest.decay(.5);
+        }
+        assertEquals(1000 * Math.pow(.5, 100), digest.getTotalWeight(), 1e-30);
+        for(int i = 0; i < 1000; ++i) {
+            digest.add(10);
+        }
+        assertEquals(10, digest.quantile(.5), 1e-9);
+        assertEquals(1000, digest.getTotalWeight(), 1e-6);
+
+        // deviations from the median of a symmetric sample
+        TDigest uniform = new TDigest();
+        for(int i = 0; i <= 1000; ++i) {
+            uniform.add(i);
+        }
+        assertEquals(250, uniform.deviations(uniform.quantile(.5)).quantile(.5), 5);
+    }
+}
@@ -0,0 +1,75 @@
+package macrobase.util.collections;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntDoubleHashMapTest {
+    private static void assertSameEntries(Map<Integer, Double> expected, IntDoubleHashMap actual) {
+        assertEquals(expected.size(), actual.size());
+        for(Map.Entry<Integer, Double> e : expected.entrySet()) {
+            assertTrue(actual.containsKey(e.getKey()));
+            assertEquals(e.getValue(), actual.get(e.getKey(), Double.NaN), 0);
+        }
+        Map<Integer, Double> seen = new HashMap<>();
+        actual.forEach(seen::put);
+        assertEquals(expected, seen);
+    }
+
+    @Test
+    public void randomOperationsTest() {
+        Random random = new Random(0);
+        Map<Integer, Double> expected = new HashMap<>();
+        IntDoubleHashMap map = new IntDoubleHashMap();
+
+        for(int i = 0; i < 100000; ++i) {
+            // a small key range (including 0 and negatives) forces collisions and reuse
+            int key = random.nextInt(2000) - 1000;
+            int op = random.nextInt(4);
+            if(op == 0) {
+                double value = random.nextDouble();
+                expected.put(key, value);
+                map.put(key, value);
+            } else if(op == 1) {
+                double sum = expected.merge(key, 1., Double::sum);
+                assertEquals(sum, map.addTo(key, 1), 0);
+            } else if(op == 2) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+        }
+
+        assertSameEntries(expected, map);
+    }
+
+    @Test
+    public void retainAndMultiplyTest() {
+        IntDoubleHashMap map = new IntDoubleHashMap();
+        Map<Integer, Double> expected = new HashMap<>();
+        for(int i = 0; i < 10000; ++i) {
+            map.put(i, i);
+            expected.put(i, (double) i);
+        }
+
+        map.retainIf((key, value) -> value >= 9000 || key == 0);
+        expected.keySet().removeIf(key -> key < 9000 && key != 0);
+        assertSameEntries(expected, map);
+
+        map.multiplyAll(.5);
+        expected.replaceAll((key, value) -> value * .5);
+        assertSameEntries(expected, map);
+
+        assertFalse(map.containsKey(1));
+        assertEquals(-1, map.get(1, -1), 0);
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+}
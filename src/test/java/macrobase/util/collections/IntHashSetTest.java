@@ -0,0 +1,42 @@
+package macrobase.util.collections;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntHashSetTest {
+    @Test
+    public void randomOperationsTest() {
+        Random random = new Random(0);
+        Set<Integer> expected = new HashSet<>();
+        IntHashSet set = new IntHashSet();
+
+        for(int i = 0; i < 100000; ++i) {
+            // a small key range (including 0 and negatives) forces collisions and reuse
+            int key = random.nextInt(2000) - 1000;
+            int op = random.nextInt(3);
+            if(op == 0) {
+                assertEquals(expected.add(key), set.add(key));
+            } else if(op == 1) {
+                assertEquals(expected.remove(key), set.remove(key));
+            } else {
+                assertEquals(expected.contains(key), set.contains(key));
+            }
+        }
+
+        assertEquals(expected.size(), set.size());
+        Set<Integer> seen = new HashSet<>();
+        for(int key : set.toArray()) {
+            seen.add(key);
+        }
+        assertEquals(expected, seen);
+
+        set.clear();
+        assertTrue(set.isEmpty());
+    }
+}
@@ -0,0 +1,51 @@
+package macrobase.util.collections;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IntIntHashMapTest {
+    @Test
+    public void randomOperationsTest() {
+        Random random = new Random(0);
+        Map<Integer, Integer> expected = new HashMap<>();
+        IntIntHashMap map = new IntIntHashMap();
+
+        for(int i = 0; i < 100000; ++i) {
+            // a small key range (including 0 and negatives) forces collisions and reuse
+            int key = random.nextInt(2000) - 1000;
+            int op = random.nextInt(4);
+            if(op == 0) {
+                int value = random.nextInt();
+                expected.put(key, value);
+                map.put(key, value);
+            } else if(op == 1) {
+                int sum = expected.merge(key, 1, Integer::sum);
+                assertEquals(sum, map.addTo(key, 1));
+            } else if(op == 2) {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            } else {
+                assertEquals(expected.getOrDefault(key, -1).intValue(), map.get(key, -1));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        Map<Integer, Integer> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(expected, seen);
+
+        int[] keys = map.keys();
+        assertEquals(expected.size(), keys.length);
+        for(int key : keys) {
+            assertTrue(expected.containsKey(key));
+        }
+
+        map.clear();
+        assertTrue(map.isEmpty());
+    }
+}